@@ -0,0 +1,108 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * The pages a benchmark thread accesses, as indexes into a run of pages:
+ * uniform over the run, Zipfian with a few hot pages taking most accesses, or
+ * sequential, each thread scanning the run round robin from its own starting
+ * point. The hot pages of the Zipfian pattern are scattered over the run
+ * rather than adjacent, so that they do not sit in a few runs on disk.
+ */
+final class AccessPattern {
+
+    /** the names of the patterns, as taken by the distribution parameter of the benchmarks */
+    static final String UNIFORM = "uniform";
+    static final String ZIPFIAN = "zipfian";
+    static final String SEQUENTIAL = "sequential";
+
+    /** THETA: the skew of the Zipfian pattern, as in YCSB; the hottest page gets about 1/ln(n) of accesses */
+    private static final double THETA = 0.99;
+
+    /** SCATTER: a prime larger than any run, multiplying Zipfian ranks into pages */
+    private static final long SCATTER = 2654435761L;
+
+    private final String name;
+    private final int pages;
+    private final SplittableRandom random;
+
+    /** cursor: the next page of the sequential pattern */
+    private int cursor;
+
+    /** zetan, alpha and eta: the constants of Gray et al.'s Zipfian generator for the run */
+    private double zetan;
+    private double alpha;
+    private double eta;
+
+    /**
+     * Makes the pattern of one thread.
+     *
+     * @param name
+     *            UNIFORM, ZIPFIAN or SEQUENTIAL
+     * @param pages
+     *            the length of the run accessed
+     * @param thread
+     *            the index of the thread, seeding its random numbers and
+     *            placing its sequential scan
+     * @param threads
+     *            the number of threads accessing the run
+     * @throws IllegalArgumentException if the pattern is unknown or the run empty
+     */
+    AccessPattern(String name, int pages, int thread, int threads) {
+        if (pages < 1) {
+            throw new IllegalArgumentException("AccessPattern: the run is empty");
+        }
+        this.name = name;
+        this.pages = pages;
+        this.random = new SplittableRandom(0x5DEECE66DL * (thread + 1));
+        switch (name) {
+        case UNIFORM:
+            break;
+        case ZIPFIAN:
+            double zeta2 = 1 + Math.pow(0.5, THETA);
+            zetan = 0;
+            for (int i = 1; i <= pages; i++) {
+                zetan += 1 / Math.pow(i, THETA);
+            }
+            alpha = 1 / (1 - THETA);
+            eta = (1 - Math.pow(2.0 / pages, 1 - THETA)) / (1 - zeta2 / zetan);
+            break;
+        case SEQUENTIAL:
+            cursor = (int) ((long) pages * thread / Math.max(1, threads));
+            break;
+        default:
+            throw new IllegalArgumentException("AccessPattern: unknown pattern " + name);
+        }
+    }
+
+    /**
+     * Returns the index of the next page accessed.
+     */
+    int next() {
+        switch (name) {
+        case UNIFORM:
+            return random.nextInt(pages);
+        case ZIPFIAN:
+            return (int) ((zipfRank() * SCATTER) % pages);
+        default:
+            int page = cursor;
+            cursor = cursor + 1 == pages ? 0 : cursor + 1;
+            return page;
+        }
+    }
+
+    /**
+     * Draws a rank from the Zipfian distribution, 0 for the hottest page.
+     */
+    private long zipfRank() {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1) {
+            return 0;
+        }
+        if (uz < 1 + Math.pow(0.5, THETA)) {
+            return 1;
+        }
+        return Math.min(pages - 1, (long) (pages * Math.pow(eta * u - eta + 1, alpha)));
+    }
+}
@@ -0,0 +1,95 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * newPage and freePage churn, as of temporary files: each thread keeps LIVE
+ * pages allocated and over and over frees one of them and allocates a new
+ * page in its place, which it fills and unpins dirty. The access pattern
+ * picks the page freed, so the sequential pattern frees the oldest page and
+ * the Zipfian one mostly the same few, leaving the others in the pool. This
+ * measures the disk manager's space map along with the buffer manager.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocBenchmark implements GlobalConst {
+
+    /** LIVE: the pages each thread keeps allocated */
+    static final int LIVE = 64;
+
+    /** DB_PAGES: room in the database for the pages of up to 1024 threads */
+    static final int DB_PAGES = 1024 * LIVE;
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({ "64", "1024", "8192" })
+        public int poolSize;
+
+        @Param({ AccessPattern.UNIFORM, AccessPattern.ZIPFIAN, AccessPattern.SEQUENTIAL })
+        public String distribution;
+
+        @Param({ "LRU" })
+        public String policy;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            Database.create("alloc", 0, DB_PAGES, poolSize, policy);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Throwable {
+            Database.destroy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+
+        AccessPattern pattern;
+        final PageId[] live = new PageId[LIVE];
+        final Page page = new Page();
+
+        @Setup(Level.Trial)
+        public void setUp(Pool pool, ThreadParams thread) throws Throwable {
+            pattern = new AccessPattern(pool.distribution, LIVE, thread.getThreadIndex(), thread.getThreadCount());
+            for (int i = 0; i < LIVE; i++) {
+                live[i] = Minibase.BufferManager.newPage(page, 1);
+                Minibase.BufferManager.unpinPage(live[i], UNPIN_DIRTY);
+            }
+        }
+    }
+
+    @Benchmark
+    public void freeAndAllocate(Worker worker) throws Throwable {
+        int slot = worker.pattern.next();
+        Minibase.BufferManager.freePage(worker.live[slot]);
+        PageId pid = Minibase.BufferManager.newPage(worker.page, 1);
+        worker.page.getpage()[0] = (byte) slot;
+        Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+        worker.live[slot] = pid;
+    }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Sets up and tears down the Minibase database each benchmark trial runs on.
+ * The database lives in the temporary directory and is deleted after the
+ * trial; each trial runs in a JVM of its own, so Minibase's single buffer
+ * manager and disk manager belong to one benchmark at a time.
+ */
+final class Database implements GlobalConst {
+
+    /** SPARE_PAGES: pages beyond the ones a benchmark asks for, for the space map and the directory */
+    private static final int SPARE_PAGES = 64;
+
+    private Database() {
+    }
+
+    /**
+     * Creates a database and a buffer pool with no read-ahead, so that every
+     * miss is one read of one page, and allocates a run of pages in it.
+     *
+     * @param name
+     *            names the database file
+     * @param pages
+     *            the length of the run, 0 for none
+     * @param dbPages
+     *            the pages of the database besides the run, for benchmarks that allocate their own
+     * @param poolSize
+     *            the frames of the buffer pool
+     * @param policy
+     *            the replacement policy
+     * @return the first page of the run, which is not pinned; null if there is none
+     */
+    static PageId create(String name, int pages, int dbPages, int poolSize, String policy) throws Throwable {
+        String dbpath = System.getProperty("java.io.tmpdir") + "/" + System.getProperty("user.name")
+                + ".minibase-bench-" + name + "-db";
+        new Minibase(dbpath, pages + dbPages + SPARE_PAGES, poolSize, 0, policy, false);
+        if (pages == 0) {
+            return null;
+        }
+        PageId first = Minibase.BufferManager.newPage(new Page(), pages);
+        Minibase.BufferManager.unpinPage(first, UNPIN_CLEAN);
+        return first;
+    }
+
+    /**
+     * Prints what the buffer manager counted over the trial, such as its hit
+     * ratio, and deletes the database.
+     */
+    static void destroy() throws Throwable {
+        System.out.println();
+        System.out.println("bufmgr metrics: " + Minibase.BufferManager.getMetrics().snapshot());
+        Minibase.DiskManager.DBDestroy();
+    }
+
+    /**
+     * Pins every page of a run once, so that as many as fit are in the pool
+     * before the benchmark starts.
+     */
+    static void warm(PageId first, int pages) throws Throwable {
+        Page page = new Page();
+        PageId pid = new PageId();
+        for (int i = 0; i < pages; i++) {
+            pid.pid = first.pid + i;
+            Minibase.BufferManager.pinPage(pid, page, PIN_DISKIO);
+            Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * flushAllPages on a full pool of which about half the pages were dirtied
+ * since the last flush, picked by the access pattern: the sequential pattern
+ * dirties runs of adjacent pages, which are written a run at a time, the
+ * uniform one scattered pages and the Zipfian one fewer, hot pages. With more
+ * than one thread, each dirties its share and flushes the pool, so flushes
+ * overlap. The pages are dirtied before each call, outside the time measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlushBenchmark implements GlobalConst {
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({ "64", "1024", "8192" })
+        public int poolSize;
+
+        @Param({ AccessPattern.UNIFORM, AccessPattern.ZIPFIAN, AccessPattern.SEQUENTIAL })
+        public String distribution;
+
+        @Param({ "LRU" })
+        public String policy;
+
+        /** first: the run of pages filling the pool */
+        PageId first;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            first = Database.create("flush", poolSize, 0, poolSize, policy);
+            Database.warm(first, poolSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Throwable {
+            Database.destroy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+
+        AccessPattern pattern;
+        final PageId pid = new PageId();
+        final Page page = new Page();
+
+        /** dirtied: the pages this thread dirties before each flush */
+        int dirtied;
+
+        @Setup(Level.Trial)
+        public void setUp(Pool pool, ThreadParams thread) {
+            pattern = new AccessPattern(pool.distribution, pool.poolSize, thread.getThreadIndex(),
+                    thread.getThreadCount());
+            dirtied = Math.max(1, pool.poolSize / 2 / thread.getThreadCount());
+        }
+
+        @Setup(Level.Invocation)
+        public void dirtyPages(Pool pool) throws Throwable {
+            for (int i = 0; i < dirtied; i++) {
+                pid.pid = pool.first.pid + pattern.next();
+                Minibase.BufferManager.pinPage(pid, page, PIN_DISKIO);
+                Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+            }
+        }
+    }
+
+    @Benchmark
+    public void flushAllPages(Worker worker) throws Throwable {
+        Minibase.BufferManager.flushAllPages();
+    }
+}
@@ -0,0 +1,86 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import global.GlobalConst;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * The hit path of pinPage and unpinPage: the pages accessed take half the
+ * pool and are all in it, so no pin reads or evicts anything and the cost
+ * measured is the page table, the frame's pin count and the replacer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PinHitBenchmark implements GlobalConst {
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({ "64", "1024", "8192" })
+        public int poolSize;
+
+        @Param({ AccessPattern.UNIFORM, AccessPattern.ZIPFIAN, AccessPattern.SEQUENTIAL })
+        public String distribution;
+
+        @Param({ "LRU" })
+        public String policy;
+
+        /** first and pages: the run of pages accessed */
+        PageId first;
+        int pages;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            pages = poolSize / 2;
+            first = Database.create("pinhit", pages, 0, poolSize, policy);
+            Database.warm(first, pages);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Throwable {
+            Database.destroy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+
+        AccessPattern pattern;
+        final PageId pid = new PageId();
+        final Page page = new Page();
+
+        @Setup(Level.Trial)
+        public void setUp(Pool pool, ThreadParams thread) {
+            pattern = new AccessPattern(pool.distribution, pool.pages, thread.getThreadIndex(),
+                    thread.getThreadCount());
+        }
+    }
+
+    @Benchmark
+    public void pinUnpin(Pool pool, Worker worker) throws Throwable {
+        worker.pid.pid = pool.first.pid + worker.pattern.next();
+        Minibase.BufferManager.pinPage(worker.pid, worker.page, PIN_DISKIO);
+        Minibase.BufferManager.unpinPage(worker.pid, UNPIN_CLEAN);
+    }
+}
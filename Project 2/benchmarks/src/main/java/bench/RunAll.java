@@ -0,0 +1,37 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks at each of several thread counts, which JMH takes one at
+ * a time, writing the results of each count to bench-results-t&lt;threads&gt;.json
+ * as the baseline to compare replacement policy and concurrency changes to.
+ * <p>
+ * Usage: java -cp target/benchmarks.jar bench.RunAll [threads [regexp [policies]]],
+ * e.g. bench.RunAll 1,4,16 PinMiss LRU,Clock,ARC. By default all benchmarks
+ * run with 1, 4 and 16 threads and the LRU policy.
+ */
+public class RunAll {
+
+    public static void main(String[] args) throws RunnerException {
+        String[] threads = (args.length > 0 ? args[0] : "1,4,16").split(",");
+        String include = args.length > 1 ? args[1] : "bench\\..*Benchmark";
+        String[] policies = args.length > 2 ? args[2].split(",") : null;
+        for (String t : threads) {
+            int n = Integer.parseInt(t.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(n)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("bench-results-t" + n + ".json");
+            if (policies != null) {
+                options.param("policy", policies);
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package bufmgr;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha). Resident frames are split
+ * between T1, holding pages referenced once since they were read in, and T2,
+ * holding pages referenced again. The ghost lists B1 and B2 remember the page
+ * numbers recently evicted from T1 and T2. A miss on a page in B1 means T1 was
+ * too small, so the target size p of T1 grows; a miss on a page in B2 shrinks
+ * it. Victims come from T1 while it is larger than p, and from T2 otherwise.
+ * <p>
+ * All four lists are kept in LRU order with the least recently used entry
+ * first. Pinned frames are skipped when looking for a victim, and if the list
+ * the policy prefers has no unpinned frame the other one is used.
+ * <p>
+ * Frames unpinned with a HATE hint leave T1 and T2 for a list of their own,
+ * which is evicted first and leaves no ghosts, so that pages nobody wants back
+ * do not move p. A frame unpinned with a LOVE hint that would be evicted is
+ * moved to the MRU end of T2 instead, once.
+ */
+public class ARCReplacer implements Replacer {
+
+    /** c: the number of frames in the pool */
+    private int c;
+
+    /** p: the target size of T1 */
+    private int p = 0;
+
+    /** t1, t2: resident frames referenced once and more than once */
+    private FrameList t1;
+    private FrameList t2;
+
+    /** hated: unpinned frames to evict first, the one hated first at the head */
+    private FrameList hated;
+
+    /** b1, b2: page numbers recently evicted from T1 and T2 */
+    private LinkedHashSet<Integer> b1 = new LinkedHashSet<>();
+    private LinkedHashSet<Integer> b2 = new LinkedHashSet<>();
+
+    /** framePage: the page held by each frame in T1 or T2, -1 otherwise */
+    private int[] framePage;
+
+    /** pinned: whether each resident frame is currently pinned */
+    private boolean[] pinned;
+
+    /** loved: whether each frame is to be passed over once */
+    private boolean[] loved;
+
+    /** adaptedFor: the page whose ghost hit already adapted p in pickVictim, -1 if none */
+    private int adaptedFor = -1;
+
+    /** Number of misses on pages found in B1 and in B2. */
+    private long b1Hits = 0;
+    private long b2Hits = 0;
+
+    ARCReplacer(int numbufs) {
+        c = numbufs;
+        t1 = new FrameList(numbufs);
+        t2 = new FrameList(numbufs);
+        hated = new FrameList(numbufs);
+        framePage = new int[numbufs];
+        pinned = new boolean[numbufs];
+        loved = new boolean[numbufs];
+        for (int i = 0; i < numbufs; i++) {
+            framePage[i] = -1;
+        }
+    }
+
+    @Override
+    public void pin(int frameNo, int pageno) {
+        pinned[frameNo] = true;
+        loved[frameNo] = false;
+
+        //a hit: the page has now been referenced more than once
+        if (framePage[frameNo] == pageno
+                && (t1.contains(frameNo) || t2.contains(frameNo) || hated.contains(frameNo))) {
+            t1.remove(frameNo);
+            t2.remove(frameNo);
+            hated.remove(frameNo);
+            t2.addLast(frameNo);
+            return;
+        }
+
+        //a miss: the page was just read in
+        framePage[frameNo] = pageno;
+        if (b1.contains(pageno) || b2.contains(pageno)) {
+            if (adaptedFor != pageno) {
+                adapt(pageno);
+            }
+            b1.remove(pageno);
+            b2.remove(pageno);
+            t2.addLast(frameNo);
+        } else {
+            t1.addLast(frameNo);
+        }
+        adaptedFor = -1;
+        trimGhosts();
+    }
+
+    @Override
+    public void unpin(int frameNo) {
+        pinned[frameNo] = false;
+    }
+
+    @Override
+    public void unpin(int frameNo, UnpinHint hint) {
+        pinned[frameNo] = false;
+        if (hint == UnpinHint.HATE) {
+            t1.remove(frameNo);
+            t2.remove(frameNo);
+            hated.addLast(frameNo);
+        } else {
+            loved[frameNo] = hint == UnpinHint.LOVE;
+        }
+    }
+
+    @Override
+    public int pickVictim(int pageno) {
+        int f = hated.removeFirst();
+        if (f != FrameList.NIL) {
+            framePage[f] = -1;
+            return f;
+        }
+
+        boolean inB2 = b2.contains(pageno);
+        if (inB2 || b1.contains(pageno)) {
+            adapt(pageno);
+            adaptedFor = pageno;
+        }
+
+        //evict from T1 while it is over its target, from T2 otherwise
+        boolean fromT1;
+        int victim;
+        while (true) {
+            fromT1 = !t1.isEmpty() && (t1.size() > p || (inB2 && t1.size() == p));
+            victim = fromT1 ? lruUnpinned(t1) : lruUnpinned(t2);
+            if (victim == FrameList.NIL) {
+                fromT1 = !fromT1;
+                victim = fromT1 ? lruUnpinned(t1) : lruUnpinned(t2);
+            }
+            if (victim == FrameList.NIL) {
+                return FrameList.NIL;
+            }
+            if (!loved[victim]) {
+                break;
+            }
+            //spare a loved frame as if it had been referenced again
+            loved[victim] = false;
+            t1.remove(victim);
+            t2.remove(victim);
+            t2.addLast(victim);
+        }
+
+        //remember the evicted page in the matching ghost list
+        if (fromT1) {
+            t1.remove(victim);
+            b1.add(framePage[victim]);
+        } else {
+            t2.remove(victim);
+            b2.add(framePage[victim]);
+        }
+        framePage[victim] = -1;
+        trimGhosts();
+        return victim;
+    }
+
+    /**
+     * Puts the frame back at the LRU end of the list it was evicted from,
+     * which its ghost entry tells, and drops the ghost entry.
+     */
+    @Override
+    public void reinstate(int frameNo, int pageno) {
+        framePage[frameNo] = pageno;
+        if (b1.remove(pageno)) {
+            t1.addFirst(frameNo);
+        } else if (b2.remove(pageno)) {
+            t2.addFirst(frameNo);
+        } else {
+            //a hated frame, or one whose ghost was trimmed already
+            hated.addFirst(frameNo);
+        }
+    }
+
+    @Override
+    public void free(int frameNo) {
+        t1.remove(frameNo);
+        t2.remove(frameNo);
+        hated.remove(frameNo);
+        framePage[frameNo] = -1;
+        pinned[frameNo] = false;
+        loved[frameNo] = false;
+    }
+
+    /**
+     * Drops the page from the ghost lists, so that reading a page allocated
+     * under its number does not count as a ghost hit.
+     */
+    @Override
+    public void pageFreed(int pageno) {
+        b1.remove(pageno);
+        b2.remove(pageno);
+    }
+
+    /**
+     * Takes the new pool size as c, keeping p and the ghost lists within it.
+     */
+    @Override
+    public void resize(int numbufs) {
+        if (numbufs > framePage.length) {
+            int old = framePage.length;
+            t1.ensureCapacity(numbufs);
+            t2.ensureCapacity(numbufs);
+            hated.ensureCapacity(numbufs);
+            framePage = Arrays.copyOf(framePage, numbufs);
+            pinned = Arrays.copyOf(pinned, numbufs);
+            loved = Arrays.copyOf(loved, numbufs);
+            Arrays.fill(framePage, old, numbufs, -1);
+        }
+        c = numbufs;
+        p = Math.min(p, c);
+        trimGhosts();
+    }
+
+    @Override
+    public String getName() {
+        return "ARC";
+    }
+
+    /**
+     * Returns the current target size of T1, in frames.
+     */
+    public int getTargetT1Size() {
+        return p;
+    }
+
+    /**
+     * Returns how many misses found the page in the ghost list B1.
+     */
+    public long getB1Hits() {
+        return b1Hits;
+    }
+
+    /**
+     * Returns how many misses found the page in the ghost list B2.
+     */
+    public long getB2Hits() {
+        return b2Hits;
+    }
+
+    /**
+     * Moves the target size of T1 after a miss on a page in one of the ghost
+     * lists: towards recency for B1, towards frequency for B2.
+     */
+    private void adapt(int pageno) {
+        if (b1.contains(pageno)) {
+            b1Hits++;
+            int delta = Math.max(b2.size() / b1.size(), 1);
+            p = Math.min(c, p + delta);
+        } else {
+            b2Hits++;
+            int delta = Math.max(b1.size() / b2.size(), 1);
+            p = Math.max(0, p - delta);
+        }
+    }
+
+    /**
+     * Keeps the directory within ARC's bounds: |T1| + |B1| <= c and
+     * |T1| + |T2| + |B1| + |B2| <= 2c, dropping the oldest ghosts first.
+     */
+    private void trimGhosts() {
+        while (!b1.isEmpty() && t1.size() + b1.size() > c) {
+            removeEldest(b1);
+        }
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * c) {
+            removeEldest(b2.isEmpty() ? b1 : b2);
+        }
+    }
+
+    private static void removeEldest(LinkedHashSet<Integer> ghosts) {
+        Iterator<Integer> it = ghosts.iterator();
+        it.next();
+        it.remove();
+    }
+
+    /**
+     * Returns the least recently used unpinned frame of a list, or NIL.
+     */
+    private int lruUnpinned(FrameList list) {
+        for (int f = list.first(); f != FrameList.NIL; f = list.next(f)) {
+            if (!pinned[f]) {
+                return f;
+            }
+        }
+        return FrameList.NIL;
+    }
+}
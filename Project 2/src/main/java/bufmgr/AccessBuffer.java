@@ -0,0 +1,172 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * Pins and unpins of pages in the pool that have yet to be reported to the
+ * replacers, so that a hit does not take the replacer's monitor (BP-Wrapper,
+ * Ding et al.). The buffer manager keeps one buffer per page table partition
+ * and adds to it under the partition's lock, so the accesses of a frame are in
+ * the order they happened. Whoever holds the replacer's monitor takes them out
+ * in batches, before the replacers are asked or told anything else.
+ * <p>
+ * A buffer is a ring written by one thread at a time, the holder of the
+ * partition lock, and read by one thread at a time, the holder of the
+ * replacer's monitor, so it needs no lock of its own: each side only moves its
+ * own index, which the other reads.
+ */
+class AccessBuffer {
+
+    /** What is done to the replacer; an unpin is UNPIN plus the ordinal of its hint. */
+    static final int PIN = 0;
+    static final int UNPIN = 1;
+
+    /** CAPACITY: accesses a buffer holds before the thread adding one reports them itself; a power of two */
+    static final int CAPACITY = 64;
+
+    /**
+     * Receives the accesses taken out of the buffers.
+     */
+    interface Sink {
+
+        /**
+         * Reports an access to the replacer of the frame.
+         */
+        void apply(int frameNo, int pageno, int op);
+    }
+
+    /** records: each access as its page number in the high word and its frame and op in the low one */
+    private final long[] records = new long[CAPACITY];
+
+    /** stamps: the per-thread sequence number of each access, for merging the buffers */
+    private final long[] stamps = new long[CAPACITY];
+
+    /** head: the next access to take out, moved by the reader only */
+    private volatile int head = 0;
+
+    /** tail: where the next access goes, moved by the writer only */
+    private volatile int tail = 0;
+
+    /**
+     * Adds an access, returning false if the buffer is full. The caller holds
+     * the lock of the page table partition the buffer belongs to.
+     *
+     * @param stamp
+     *            the access's place among those of the calling thread
+     */
+    boolean add(int frameNo, int pageno, int op, long stamp) {
+        int t = tail;
+        if (t - head == CAPACITY) {
+            return false;
+        }
+        int i = t & (CAPACITY - 1);
+        records[i] = ((long) pageno << 32) | (((frameNo << 2) | op) & 0xFFFFFFFFL);
+        stamps[i] = stamp;
+        //publishes the access to the reader
+        tail = t + 1;
+        return true;
+    }
+
+    private boolean isEmpty() {
+        return head == tail;
+    }
+
+    private long firstStamp() {
+        return stamps[head & (CAPACITY - 1)];
+    }
+
+    /**
+     * Takes the first access out and hands it to the sink.
+     */
+    private void takeFirst(Sink sink) {
+        int h = head;
+        long record = records[h & (CAPACITY - 1)];
+        head = h + 1;
+        int low = (int) record;
+        sink.apply(low >>> 2, (int) (record >>> 32), low & 3);
+    }
+
+    /**
+     * Empties the buffers into the sink. The accesses of each buffer keep their
+     * order, and of the accesses at the heads of the buffers the one with the
+     * lowest stamp goes first, so the accesses of one thread reach the sink in
+     * the order it made them; those of different threads are interleaved about
+     * as they happened. The caller holds the replacer's monitor.
+     *
+     * @param heap
+     *            room to order the buffers in, as long as buffers
+     */
+    static void drain(AccessBuffer[] buffers, AccessBuffer[] heap, Sink sink) {
+        int n = 0;
+        AccessBuffer only = null;
+        for (AccessBuffer b : buffers) {
+            if (!b.isEmpty()) {
+                only = b;
+                n++;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        if (n == 1) {
+            while (!only.isEmpty()) {
+                only.takeFirst(sink);
+            }
+            return;
+        }
+
+        //a binary min-heap of the non-empty buffers by the stamp of their first access; more of
+        //them may have filled since they were counted
+        n = 0;
+        for (AccessBuffer b : buffers) {
+            if (!b.isEmpty()) {
+                heap[n] = b;
+                siftUp(heap, n++);
+            }
+        }
+        while (n > 0) {
+            AccessBuffer b = heap[0];
+            b.takeFirst(sink);
+            if (b.isEmpty()) {
+                heap[0] = heap[--n];
+            }
+            siftDown(heap, n);
+        }
+        Arrays.fill(heap, null);
+    }
+
+    private static void siftUp(AccessBuffer[] heap, int i) {
+        AccessBuffer b = heap[i];
+        long stamp = b.firstStamp();
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent].firstStamp() <= stamp) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = b;
+    }
+
+    private static void siftDown(AccessBuffer[] heap, int n) {
+        if (n == 0) {
+            return;
+        }
+        AccessBuffer b = heap[0];
+        long stamp = b.firstStamp();
+        int i = 0;
+        while (2 * i + 1 < n) {
+            int child = 2 * i + 1;
+            if (child + 1 < n && heap[child + 1].firstStamp() < heap[child].firstStamp()) {
+                child++;
+            }
+            if (heap[child].firstStamp() >= stamp) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = b;
+    }
+}
@@ -1,11 +1,30 @@
 package bufmgr;
 
-import java.util.*;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import diskmgr.DiskMgrException;
 import global.Minibase;
 import global.Page;
 import global.PageId;
+import logmgr.LogMgr;
 
 /**
  * <h3>Minibase Buffer Manager</h3>
@@ -14,6 +33,27 @@ import global.PageId;
  * for this purpose is called the buffer pool. This is just an array of Page
  * objects. The buffer manager is used by access methods, heap files, and
  * relational operators to read, write, allocate, and de-allocate pages.
+ * <p>
+ * All public methods may be called from several threads at once. Three kinds
+ * of locks are used, always acquired in this order and never the other way
+ * round:
+ * <ol>
+ * <li>a frame's I/O latch, held while a page is read into the frame or the
+ * frame's page is written out;</li>
+ * <li>the lock of a page table partition, guarding the entries of its pages and
+ * every change of pin count to or from zero of the frames holding them;</li>
+ * <li>the replacer's monitor, guarding the replacer of every partition of the
+ * pool, the frames each partition holds and the free frame list.</li>
+ * </ol>
+ * Hits do not take the replacer's monitor: their pins and unpins are buffered
+ * per page table partition and reported to the replacers in batches, by the
+ * next thread that needs them for a victim or finds a buffer full.
+ * <p>
+ * No lock but a frame's I/O latch is held during disk I/O, so two threads that
+ * miss on different pages read them in parallel, while two threads that miss
+ * on the same page share a single read. No thread waits for a latch while
+ * holding another, except resize, which takes all of them in frame order
+ * while holding nothing else when it has to move the pool to larger arrays.
  */
 
 public class BufMgr {
@@ -23,25 +63,112 @@ public class BufMgr {
     // DO NOT CHANGE THE BELOW INSTANCE VARIABLE NAMES - you should use them as appropriate in your code
     // You may add additional ones as you need to
 
-    /** bufPool: the buffer pool. An array of Page objects */
-    private Page[] bufPool = null;
+    /** bufPool: the buffer pool. An array of Page objects, each allocated the first time its frame is used
+     * and dropped again when the pool shrinks below it */
+    private volatile Page[] bufPool = null;
 
     /** frmDescr: An arracy of FrameDescriptor objects, holding information about the contents of each frame. */
-    private FrameDescriptor[] frmDescr = null;
+    private volatile FrameDescriptor[] frmDescr = null;
+
+    /** numOfFrames: the number of frames currently in the buffer pool, at most the length of the arrays.
+     * Changed by resize under the replacer's monitor */
+    private volatile int numOfFrames = -1;
 
-    /** numOfFrames: the number of frames used for the maximum capacity of the buffer pool */
-    private int numOfFrames = -1;
+    /** resizeLock: held by resize, so that one resize runs at a time without holding up startPageWriter */
+    private final Object resizeLock = new Object();
 
-    /** replacementPolicy: will be set to FIFO when the constructor is called. */
+    /** replacementPolicy: the name of the replacement policy passed to the constructor. */
     private static String replacementPolicy = "FIFO";
 
-    /** map: Hash table to track which frame in the buffer a page is in <Key: PageID, Value: Frame> */
-    private Map<Integer, Integer> pageMap = new HashMap<>();
-    //
+    /** map: Hash table to track which frame in the buffer a page is in <Key: PageID, Value: Frame>.
+     * Partitioned by page number, each partition with its own lock */
+    private PageTable pageMap = null;
+
+    /** replacer: the replacement policy picking victims among the unpinned frames, chosen by replacementPolicy */
+    private Replacer replacer = null;
+
+    /** partitions: the partitions of the pool, the default one first, whose replacer is replacer.
+     * Replaced by createPartition under the replacer's monitor */
+    private volatile PoolPartition[] partitions = null;
+
+    /** frameOwner: the index of the partition whose page each frame holds. Guarded by the replacer's monitor */
+    private int[] frameOwner = null;
+
+    /** reserved: the sum of the quotas of the partitions other than the default one */
+    private int reserved = 0;
+
+    /** assigned: runs of pages assigned to a partition other than the default one, by first page, each
+     * as its end (exclusive) and the partition's index. Guarded by the replacer's monitor */
+    private final TreeMap<Integer, int[]> assigned = new TreeMap<Integer, int[]>();
+
+    /** freeFrames: frames that hold no page. These are used before asking the replacer for a victim.
+     * Emptied frames go to the front so that never used frames stay unallocated the longest.
+     * Guarded by the replacer's monitor */
+    private FrameList freeFrames = null;
+
+    /** SEQUENTIAL_RUN: how many consecutive pages a thread pins before it counts as a sequential reader */
+    private static final int SEQUENTIAL_RUN = 8;
+
+    /** lookAheadSize: the number of pages read ahead of a sequential reader, 0 to turn read-ahead off */
+    private int lookAheadSize = 0;
+
+    /** lastPinned: per thread, the last page pinned and the length of the ascending run it ends */
+    private final ThreadLocal<int[]> lastPinned = ThreadLocal.withInitial(() -> new int[] { -1, 0 });
+
+    /** lastFlush: what the last flush of all dirty pages wrote */
+    private volatile FlushReport lastFlush = null;
+
+    /** MBEAN_NAME: the JMX name the metrics of a buffer manager are published under */
+    public static final String MBEAN_NAME = "bufmgr:type=BufMgr";
+
+    /** registeredMetrics: the metrics currently published under MBEAN_NAME, guarded by BufMgr.class */
+    private static BufMgrMetrics registeredMetrics = null;
+
+    /** metrics: counters and latency histograms, published over JMX by registerMBean */
+    private final BufMgrMetrics metrics = new BufMgrMetrics(this);
+
+    /** accessBuffers: pins and unpins of pages in the pool not yet reported to the replacers, one buffer
+     * per page table partition, added to under the partition's lock */
+    private AccessBuffer[] accessBuffers = null;
 
-    /** fifo: queue for FIFO page replacement. All unpinned pages will be stored here, with the first element being
-     * the pageID that was unpinned the longest time ago */
-    private Queue<Integer> fifo = new LinkedList<>();
+    /** drainHeap: room for AccessBuffer.drain to order the buffers in, guarded by the replacer's monitor */
+    private AccessBuffer[] drainHeap = null;
+
+    /** accessClock: per thread, the number of pins and unpins it has buffered, which orders them */
+    private final ThreadLocal<long[]> accessClock = ThreadLocal.withInitial(() -> new long[1]);
+
+    /** applyAccess: reports a buffered pin or unpin to the replacer of its frame */
+    private final AccessBuffer.Sink applyAccess = this::applyAccess;
+
+    /** waitQueue: pins waiting for a frame to become available, served in arrival order */
+    private final PinWaitQueue waitQueue = new PinWaitQueue();
+
+    /** OPTIMISTIC_TRIES: how often readOptimistic reads a page unpinned before it pins it instead */
+    private static final int OPTIMISTIC_TRIES = 4;
+
+    /** IO_THREADS: the number of threads of the default I/O executor */
+    private static final int IO_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** ioExecutor: runs the reads of pinPageAsync, created on first use unless set; guarded by this */
+    private Executor ioExecutor = null;
+
+    /** asyncReads: the future of the pinPageAsync read under way for each page, so that pins of it share it */
+    private final ConcurrentHashMap<Integer, CompletableFuture<Page>> asyncReads = new ConcurrentHashMap<>();
+
+    /** trace: where page accesses are recorded, null unless a trace is being taken */
+    private volatile TraceRecorder trace = null;
+
+    /** compressedTier: where evicted pages are kept compressed, null unless a budget is set */
+    private volatile CompressedTier compressedTier = null;
+
+    /** logMgr: the write-ahead log pages are not written ahead of, null if there is none */
+    private volatile LogMgr logMgr = null;
+
+    /** pageWriter: the background writer cleaning unpinned frames ahead of eviction, null unless started */
+    private volatile PageWriter pageWriter = null;
+
+    /** checkpointer: the background thread taking checkpoints, null unless started */
+    private volatile Checkpointer checkpointer = null;
 
     // END OF REQUIRED INSTANCE VARIABLES
 
@@ -59,33 +186,82 @@ public class BufMgr {
         frmDescr[frameId].pageno = pageno;
         frmDescr[frameId].pinCount = 0;
         frmDescr[frameId].dirtyBit = false;
+        frmDescr[frameId].pageLsn = 0;
+        frmDescr[frameId].recLsn = 0;
+        //on to the next even version, failing optimistic reads of the page that was there
+        frmDescr[frameId].version = (frmDescr[frameId].version | 1) + 1;
     }
 
     /**
      * Create the BufMgr object. Allocate pages (frames) for the buffer pool in main
      * memory and make the buffer manage aware that the replacement policy is
-     * specified by replacerArg (e.g., LH, Clock, LRU, MRU, LIRS, etc.).
+     * specified by replacerArg. The supported policies are FIFO, LRU, MRU, Clock,
+     * ARC and LRU-K, where "LRU-K" uses K = 2 and "LRU-3" or any other number picks
+     * K explicitly. Names are not case sensitive and FIFO is used when it is null.
+     * <p>
+     * Frames are only allocated when a page is first read into them, so the heap
+     * taken by a large pool grows with the pages actually used rather than with
+     * numbufs. They are as large as the pages of the open database.
      *
      * @param numbufs
      *            number of buffers in the buffer pool
      * @param lookAheadSize
-     *            number of pages to be looked ahead - can be ignored for this assignment
+     *            number of pages to read ahead, in the same I/O, when a page missed
+     *            by a thread pinning ascending pages is read in; 0 turns read-ahead off
      * @param replacementPolicy
      *            Name of the replacement policy
+     * @throws IllegalArgumentException if the replacement policy is unknown
      */
     public BufMgr(int numbufs, int lookAheadSize, String replacementPolicy) {
-        // we ignore replacementPolicy as there is only one policy implemented in the
-        // system
         numOfFrames = numbufs;
+        this.lookAheadSize = Math.max(0, Math.min(lookAheadSize, numbufs - 1));
         bufPool = new Page[numOfFrames];
         frmDescr = new FrameDescriptor[numOfFrames];
-        this.replacementPolicy = replacementPolicy;
+        pageMap = new PageTable(numOfFrames);
+        accessBuffers = new AccessBuffer[pageMap.partitionCount()];
+        for (int i = 0; i < accessBuffers.length; i++) {
+            accessBuffers[i] = new AccessBuffer();
+        }
+        drainHeap = new AccessBuffer[accessBuffers.length];
+        freeFrames = new FrameList(numOfFrames);
+        replacer = newReplacer(replacementPolicy, numOfFrames);
+        this.replacementPolicy = replacer.getName();
+        partitions = new PoolPartition[] { new PoolPartition(PoolPartition.DEFAULT, 0, replacer, 0) };
+        frameOwner = new int[numOfFrames];
         for (int i = 0; i < numOfFrames; i++) {
-            bufPool[i] = new Page();
             frmDescr[i] = new FrameDescriptor();
             resetFrameDescriptor(i, -1);
-            fifo.add(i);
+            freeFrames.addLast(i);
+        }
+    }
+
+    /**
+     * Creates the replacer for the named policy.
+     *
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    static Replacer newReplacer(String policy, int numbufs) {
+        if (policy == null || policy.equalsIgnoreCase("FIFO")) {
+            return new FIFOReplacer(numbufs);
+        } else if (policy.equalsIgnoreCase("LRU")) {
+            return new LRUReplacer(numbufs);
+        } else if (policy.equalsIgnoreCase("MRU")) {
+            return new MRUReplacer(numbufs);
+        } else if (policy.equalsIgnoreCase("Clock")) {
+            return new ClockReplacer(numbufs);
+        } else if (policy.equalsIgnoreCase("ARC")) {
+            return new ARCReplacer(numbufs);
+        } else if (policy.equalsIgnoreCase("LRU-K")) {
+            return new LRUKReplacer(numbufs);
+        } else if (policy.regionMatches(true, 0, "LRU-", 0, 4)) {
+            try {
+                int k = Integer.parseInt(policy.substring(4));
+                return new LRUKReplacer(numbufs, k, LRUKReplacer.DEFAULT_CORRELATED_PERIOD, numbufs);
+            } catch (NumberFormatException e) {
+                //fall through to the unknown policy error
+            }
         }
+        throw new IllegalArgumentException("BufMgr: unknown replacement policy " + policy);
     }
 
     /**
@@ -95,257 +271,2350 @@ public class BufMgr {
      * a candidate. If the page is not in the pool, choose a frame (from the set of
      * replacement candidates) to hold this page, read the page (using the
      * appropriate method from diskmgr package) and pin it. Also, must write out the
-     * old page in chosen frame if it is dirty before reading new page.(You can
-     * assume that emptyPage==false for this assignment.)
+     * old page in chosen frame if it is dirty before reading new page. If
+     * emptyPage is true (PIN_MEMCPY), the caller is going to overwrite the whole
+     * page, as with a page just allocated: a page not in the pool is then not
+     * read but zero-filled in memory. Once filled, it is to be unpinned dirty,
+     * as the disk still holds whatever was there before.
      *
      * @param pageno
      *            page number in the Minibase.
      * @param page
      *            the pointer point to the page.
+     * @param emptyPage
+     *            whether the page is not to be read from disk (PIN_MEMCPY)
      * @throws BufferPoolExceededException if there are no valid replacement candidates when attempting to pin a page not already in memory
      * @throws DiskMgrException if there is an error from the DiskMgr layer. This is likely caused by incorrect implementations of other methods in the BufferManager
      */
     public void pinPage(PageId pageno, Page page, boolean emptyPage) throws BufferPoolExceededException, DiskMgrException {
-        // YOUR CODE HERE
-        int pid = pageno.pid;
+        pinPage(pageno, page, emptyPage, false);
+    }
 
-        //check if page is in buffer pool
-        if (pageMap.containsKey(pid)) {
-            int id = pageMap.get(pid);
-            page.setPage(bufPool[id]);
+    /**
+     * Pin a page, as pinPage(PageId, Page, boolean) does. When the page has to
+     * be read in and the calling thread reads pages in ascending order, up to
+     * lookAheadSize of the following pages are read along with it in one I/O,
+     * into frames that are free or hold a clean unpinned page. A thread counts
+     * as sequential once it has pinned eight consecutive pages, or right away if
+     * it says so.
+     *
+     * @param pageno
+     *            page number in the Minibase.
+     * @param page
+     *            the pointer point to the page.
+     * @param sequential
+     *            whether the caller is going to pin the pages following this one, as a scan does
+     * @throws BufferPoolExceededException if there are no valid replacement candidates when attempting to pin a page not already in memory
+     * @throws DiskMgrException if there is an error from the DiskMgr layer
+     */
+    public void pinPage(PageId pageno, Page page, boolean emptyPage, boolean sequential)
+            throws BufferPoolExceededException, DiskMgrException {
+        pin(pageno, page, emptyPage, sequential, null, false);
+    }
 
-            //if pinCount = 0, remove the page from fifo
-            if (frmDescr[id].pinCount == 0) {
-                fifo.remove(id);
+    /**
+     * Pin a page, as pinPage(PageId, Page, boolean) does, but if every frame is
+     * pinned, wait for one to be unpinned rather than fail at once. Waiting
+     * pins are served in the order they started waiting: while any pin is
+     * waiting, a pin with a timeout of a page not in the pool queues up behind
+     * it. A pin without a timeout never waits, not even for its turn: it takes
+     * a frame if one is free and fails at once if not. A page that is in the
+     * pool is pinned without waiting in any case.
+     *
+     * @param pageno
+     *            page number in the Minibase.
+     * @param page
+     *            the pointer point to the page.
+     * @param timeout
+     *            how long to wait for a frame at most
+     * @param unit
+     *            the unit of timeout
+     * @throws BufferPoolExceededException if no frame became available in time
+     * @throws DiskMgrException if there is an error from the DiskMgr layer
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void pinPage(PageId pageno, Page page, boolean emptyPage, long timeout, TimeUnit unit)
+            throws BufferPoolExceededException, DiskMgrException, InterruptedException {
+        long deadline = System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2);
+        Thread me = Thread.currentThread();
+        boolean queued = false;
+        long waitStart = 0;
+        try {
+            while (true) {
+                //only the first waiter, or a newcomer when nobody waits, may take a frame
+                if (queued ? waitQueue.isFirst(me) : waitQueue.depth() == 0) {
+                    try {
+                        pin(pageno, page, emptyPage, false, null, true);
+                        return;
+                    } catch (BufferPoolExceededException e) {
+                        //every frame is pinned; wait below
+                    }
+                } else if (pinResident(pageno.pid, page)) {
+                    return;
+                }
+
+                //join the queue, then look once more so that an unpin just before is not missed
+                if (!queued) {
+                    waitQueue.enqueue(me);
+                    queued = true;
+                    waitStart = System.nanoTime();
+                    metrics.pinWaits.increment();
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    metrics.pinWaitTimeouts.increment();
+                    metrics.poolExceeded.increment();
+                    throw new BufferPoolExceededException("error, no frame became available in time");
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
             }
+        } finally {
+            if (queued) {
+                waitQueue.remove(me);
+                metrics.pinWaitLatency.record(System.nanoTime() - waitStart);
+            }
+        }
+    }
+
+    /**
+     * Pin a page, as pinPage(PageId, Page, boolean) does, but if the page has to
+     * be read in, put it into the next frame of the caller's buffer ring
+     * rather than into one chosen by the replacement policy. Pages read ahead
+     * go into the ring too.
+     *
+     * @param pageno
+     *            page number in the Minibase.
+     * @param page
+     *            the pointer point to the page.
+     * @param ring
+     *            the caller's ring, from newBufferRing
+     * @throws BufferPoolExceededException if the ring needs a frame from the pool and there are no valid replacement candidates
+     * @throws DiskMgrException if there is an error from the DiskMgr layer
+     */
+    public void pinPage(PageId pageno, Page page, boolean emptyPage, BufferRing ring)
+            throws BufferPoolExceededException, DiskMgrException {
+        pin(pageno, page, emptyPage, false, ring, false);
+    }
+
+    /**
+     * Creates a ring of frames for a sequential reader or writer to pin its
+     * pages through, so that a large scan does not push every other page out of
+     * the pool. The ring is at most an eighth of the pool; its frames are taken
+     * from the pool as the ring fills up, and kept out of the replacement
+     * policy until they are handed back by freeBufferRing.
+     *
+     * @param size
+     *            the number of frames wanted, e.g. 16 or 32
+     * @throws IllegalArgumentException if size is not positive
+     */
+    public BufferRing newBufferRing(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("BufMgr: ring size must be positive");
+        }
+        return new BufferRing(Math.min(size, Math.max(1, numOfFrames / 8)));
+    }
 
-            //update pinCount and set dirtyBit to false
-            frmDescr[id].pinCount = frmDescr[id].pinCount + 1;
-            frmDescr[id].dirtyBit = false;
+    /**
+     * Hands the frames of a buffer ring back to the replacement policy once the
+     * scan using it is done, along with the pages the ring read into them. The
+     * ring is left empty and may be used again. Frames of a ring that is never
+     * freed are only evicted when no other frame can be.
+     *
+     * @param ring
+     *            the caller's ring, from newBufferRing
+     */
+    public void freeBufferRing(BufferRing ring) {
+        for (int slot = 0; slot < ring.size(); slot++) {
+            if (ring.frames[slot] != FrameList.NIL) {
+                adoptRingFrame(ring, ring.frames[slot], ring.pages[slot]);
+                ring.frames[slot] = FrameList.NIL;
+                ring.pages[slot] = -1;
+            }
         }
-        //if page is not in buffer pool
-        else {
+        ring.next = 0;
+    }
+
+    /**
+     * Pins a page, reading it into a frame of the ring if there is one and it
+     * is not in the pool.
+     *
+     * @param empty
+     *            whether a page not in the pool is zero-filled rather than read, without read-ahead
+     * @param waiting
+     *            whether the caller waits for a frame when every frame is pinned,
+     *            and counts its failure itself
+     */
+    private void pin(PageId pageno, Page page, boolean empty, boolean sequential, BufferRing ring, boolean waiting)
+            throws BufferPoolExceededException, DiskMgrException {
+        int pid = pageno.pid;
+        int readAhead = empty ? 0 : readAheadFor(pid, sequential);
+        while (true) {
+            //check if page is in buffer pool
+            if (pinResident(pid, page)) {
+                return;
+            }
+
+            //if page is not in buffer pool, empty a frame and read the page into it, unless
+            //another thread brought the page in meanwhile
             int id;
-            //catch NoSuchElementException and throw BufferPoolExceededException if no replacement candidates
             try {
-                id = fifo.remove();
-            } catch (NoSuchElementException e) {
-                throw new BufferPoolExceededException("error, no valid replacement candidates");
+                id = ring == null ? claimFrame(pid, false) : claimRingFrame(ring, pid, true);
+            } catch (BufferPoolExceededException e) {
+                if (!waiting) {
+                    metrics.poolExceeded.increment();
+                }
+                throw e;
             }
-
-            //check if frame is empty
-            if (frmDescr[id].pageno == -1) {
-                //reset frame descriptor and update everything
-                resetFrameDescriptor(id, pid);
-                frmDescr[id].pinCount = frmDescr[id].pinCount + 1;
-                Minibase.DiskManager.read_page(pageno, bufPool[id]);
+            if (loadPages(claimReadAhead(id, pid, readAhead, ring), pageno, empty, ring)) {
+                metrics.misses.increment();
+                //the frame is pinned by this thread, so its owner stays put
+                partitions[frameOwner[id]].misses.increment();
+                record(TraceRecorder.PIN, pid, false);
                 page.setPage(bufPool[id]);
-                pageMap.put(pid, id);
+                return;
             }
-            //frame is not empty
-            else {
-                //old page
-                PageId old = new PageId(frmDescr[id].pageno);
+        }
+    }
 
-                //check if dirty bit is true
-                if (frmDescr[id].dirtyBit == true) {
-                    //if true, write old page
-                    Minibase.DiskManager.write_page(old, bufPool[id]);
+    /**
+     * Reads from a page without pinning it, for read-mostly callers such as
+     * index probes. The frame holding the page is found without taking any
+     * lock and the reader is run on the frame's bytes; the result is kept if
+     * the frame's version was even before and is unchanged after, so that
+     * nobody had the page pinned, changed or replaced it in between. A reader
+     * whose page is in the pool and left alone thus writes nothing shared at
+     * all. After a few failed tries, or if the page is not in the pool, the
+     * page is pinned as pinPage does, read and unpinned; like any pinned
+     * page, it may then be changed by another thread that has it pinned too.
+     *
+     * @param pageno
+     *            page number in the Minibase.
+     * @param reader
+     *            what to read from the page; it may be run more than once
+     * @return what the reader returned for a whole, unchanged page
+     * @throws IOException if the reader throws it for a whole, unchanged page
+     * @throws BufferPoolExceededException if the page has to be pinned and every frame is pinned
+     * @throws DiskMgrException if there is an error from the DiskMgr layer
+     */
+    public <T> T readOptimistic(PageId pageno, PageReader<T> reader)
+            throws IOException, BufferPoolExceededException, DiskMgrException {
+        int pid = pageno.pid;
+        for (int attempt = 0; attempt < OPTIMISTIC_TRIES; attempt++) {
+            int id = pageMap.peek(pid);
+            FrameDescriptor[] descr = frmDescr;
+            if (id == PageTable.NOT_FOUND || id >= descr.length) {
+                break;
+            }
+            FrameDescriptor fd = descr[id];
+            long version = fd.version;
+            if ((version & 1) != 0) {
+                //pinned by someone, who may be changing it
+                Thread.onSpinWait();
+                continue;
+            }
+            Page page = bufPool[id];
+            if (fd.pageno != pid || page == null) {
+                continue;
+            }
+            T result;
+            try {
+                result = reader.read(page.getpage());
+            } catch (IOException | RuntimeException e) {
+                //maybe only thrown because the bytes changed underneath
+                VarHandle.acquireFence();
+                if (fd.version == version) {
+                    throw e;
                 }
+                continue;
+            }
+            //the reads of the page must not drift past the check
+            VarHandle.acquireFence();
+            if (fd.version == version) {
+                return result;
+            }
+        }
 
-                //remove old page and reset frame descriptor
-                pageMap.remove(frmDescr[id].pageno);
-                resetFrameDescriptor(id, pageno.pid);
-
-                //update everything
-                frmDescr[id].pinCount = frmDescr[id].pinCount + 1;
-                Minibase.DiskManager.read_page(pageno, bufPool[id]);
-                page.setPage(bufPool[id]);
-                pageMap.put(pid, id);
+        //the page is not in the pool, or kept changing; read it pinned
+        metrics.optimisticFallbacks.increment();
+        Page page = new Page();
+        pin(pageno, page, false, false, null, false);
+        try {
+            return reader.read(page.getpage());
+        } finally {
+            try {
+                unpinPage(pageno, false);
+            } catch (PageNotFoundException | PageUnpinnedException e) {
+                //cannot happen while this thread holds a pin
+                throw new IllegalStateException(e);
             }
         }
     }
 
     /**
-     * Unpin a page specified by a pageId. This method should be called with
-     * dirty==true if the client has modified the page. If so, this call should set
-     * the dirty bit for this frame. Further, if pin_count>0, this method should
-     * decrement it. If pin_count=0 before this call, throw an exception to report
-     * error. (For testing purposes, we ask you to throw an exception named
-     * PageUnpinnedException in case of error.)
+     * Pins a page without blocking the caller. A page in the pool is pinned
+     * right away and the future returned is already complete. Otherwise the
+     * page is pinned on the I/O executor, which reads it in, and the future
+     * completes with it then; pins of a page already being read this way wait
+     * for that read instead of starting their own. Each completed future holds
+     * one pin, to be released with unpinPage as usual.
+     * <p>
+     * A future that is cancelled before the page is in is not pinned. The
+     * future fails with BufferPoolExceededException or DiskMgrException where
+     * pinPage would throw them.
      *
      * @param pageno
-     *            the PageID of the page
-     * @param dirty
-     *            whether or not the page is dirty
-     * @throws PageNotFoundException the page is not in memory
-     * @throws PageUnpinnedException the page is already unpinned
+     *            page number in the Minibase.
+     * @return the pinned page, once it is in the pool
      */
-    public void unpinPage(PageId pageno, boolean dirty)
-            throws PageNotFoundException, PageUnpinnedException {
-        // YOUR CODE HERE
+    public CompletableFuture<Page> pinPageAsync(PageId pageno) {
         int pid = pageno.pid;
-
-        //if page is not in memory
-        if (!(pageMap.containsKey(pid))) {
-            throw new PageNotFoundException("error, page is not in memory");
+        Page page = new Page();
+        if (pinIfLoaded(pid, page)) {
+            return CompletableFuture.completedFuture(page);
         }
 
-        //if pinCount is 0
-        if (frmDescr[pageMap.get(pid)].pinCount == 0) {
-            throw new PageUnpinnedException("error, page is already unpinned");
+        //join a read of the page under way, pinning it for this caller once that is done
+        CompletableFuture<Page> future = new CompletableFuture<>();
+        CompletableFuture<Page> read = asyncReads.putIfAbsent(pid, future);
+        if (read != null) {
+            CompletableFuture<Page> shared = new CompletableFuture<>();
+            read.whenComplete((p, e) -> {
+                try {
+                    getIoExecutor().execute(() -> pinSharing(pid, shared));
+                } catch (RejectedExecutionException r) {
+                    shared.completeExceptionally(r);
+                }
+            });
+            return shared;
+        }
+        try {
+            getIoExecutor().execute(() -> {
+                try {
+                    Page p = new Page();
+                    pin(new PageId(pid), p, false, false, null, false);
+                    if (!future.complete(p)) {
+                        //cancelled meanwhile, so nobody is going to unpin it
+                        unpinPage(new PageId(pid), false);
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    asyncReads.remove(pid, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            asyncReads.remove(pid, future);
+            future.completeExceptionally(e);
         }
+        return future;
+    }
 
-        //decrement pinCount
-        frmDescr[pageMap.get(pid)].pinCount = frmDescr[pageMap.get(pid)].pinCount - 1;
+    /**
+     * Pins a page for a pinPageAsync that joined another one's read, whatever
+     * became of that read, and completes its future with it. Unless the future
+     * was cancelled first, in which case the page is left alone, or meanwhile,
+     * in which case the pin is dropped again.
+     */
+    private void pinSharing(int pid, CompletableFuture<Page> future) {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            Page page = new Page();
+            pin(new PageId(pid), page, false, false, null, false);
+            if (!future.complete(page)) {
+                //cancelled meanwhile, so nobody is going to unpin it
+                unpinPage(new PageId(pid), false);
+            }
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
 
-        //if pinCount is 0 after decrementing, add new frame to fifo
-        if (frmDescr[pageMap.get(pid)].pinCount == 0) {
-            fifo.add(pageMap.get(pid));
+    /**
+     * Pins the page and points page at it if it is in the buffer pool and not
+     * being read in; otherwise returns false without waiting.
+     */
+    private boolean pinIfLoaded(int pid, Page page) {
+        int id;
+        synchronized (pageMap.lockFor(pid)) {
+            id = pageMap.lookup(pid);
+            if (id == PageTable.NOT_FOUND || frmDescr[id].loading) {
+                return false;
+            }
+            frmDescr[id].pin();
+            recordAccess(id, pid, AccessBuffer.PIN);
         }
+        countHit(id);
+        record(TraceRecorder.PIN, pid, false);
+        page.setPage(bufPool[id]);
+        return true;
+    }
 
-        //update dirty bit if necessary
-        if (frmDescr[pageMap.get(pid)].dirtyBit == false && dirty == true) {
-            frmDescr[pageMap.get(pid)].dirtyBit = true;
+    /**
+     * Returns the executor pinPageAsync reads pages on. Unless one was set, it
+     * is a pool of daemon threads created on first use, whose threads stop when
+     * idle for a while.
+     */
+    public synchronized Executor getIoExecutor() {
+        if (ioExecutor == null) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), r -> {
+                        Thread t = new Thread(r, "bufmgr-io-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            ioExecutor = executor;
         }
+        return ioExecutor;
     }
 
     /**
-     * Allocate new pages. Call DB object to allocate a run of new pages and find a
-     * frame in the buffer pool for the first page and pin it. (This call allows a
-     * client of the Buffer Manager to allocate pages on disk.) If buffer is full,
-     * i.e., you can't find a frame for the first page, ask DB to deallocate all
-     * these pages, and return null.
-     *
-     * @param firstpage
-     *            the address of the first page.
-     * @param howmany
-     *            total number of allocated new pages.
+     * Makes pinPageAsync read pages on the given executor, e.g. one shared with
+     * other I/O. Reads already submitted stay where they are.
      *
-     * @return the first page id of the new pages.__ null, if error.
-     * @throws DiskMgrException if there is an error from the DiskMgr layer. This is likely caused by incorrect implementations of other methods of the Buffer Manager
-     * @throws BufferPoolExceededException if the new page cannot be pinned after the run is allocated due to the buffer being full. If this exception is thrown, the newly allocated pages should be deallocated
+     * @throws IllegalArgumentException if executor is null
      */
-    public PageId newPage(Page firstpage, int howmany) throws DiskMgrException, BufferPoolExceededException {
-        // YOUR CODE HERE
-        PageId pageId = new PageId();
+    public synchronized void setIoExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("BufMgr: the I/O executor must not be null");
+        }
+        ioExecutor = executor;
+    }
 
-        //catch BufMgrException and throw DiskMgrException if error allocating pages
-        try {
-            pageId = Minibase.DiskManager.allocate_page(howmany);
+    /**
+     * Pins the page and points page at it if it is in the buffer pool, waiting
+     * for it to be read in if another thread is still at it. Returns false if
+     * the page is not in the pool.
+     */
+    private boolean pinResident(int pid, Page page) {
+        while (true) {
+            int id = pinIfResident(pid);
+            if (id == PageTable.NOT_FOUND) {
+                return false;
+            }
+            //if another thread is still reading it in, wait; start over if that read failed
+            if (frmDescr[id].loading) {
+                metrics.loadWaits.increment();
+                if (!awaitLoad(id, pid)) {
+                    continue;
+                }
+            }
+            countHit(id);
+            record(TraceRecorder.PIN, pid, false);
+            page.setPage(bufPool[id]);
+            return true;
         }
-        catch (BufMgrException e) {
-            throw new DiskMgrException("error when allocating pages");
+    }
+
+    /**
+     * Records a pin of the calling thread and returns how many pages to read
+     * ahead should the page miss.
+     */
+    private int readAheadFor(int pid, boolean sequential) {
+        if (lookAheadSize == 0) {
+            return 0;
+        }
+        int[] last = lastPinned.get();
+        if (pid == last[0]) {
+            //pinning a page again does not end the run, nor extend it
+        } else if (pid == last[0] + 1) {
+            last[1]++;
+        } else {
+            last[1] = 1;
         }
+        last[0] = pid;
+        return sequential || last[1] >= SEQUENTIAL_RUN ? lookAheadSize : 0;
+    }
 
-        //catch BufferPoolExceededException when buffer is full
-        try {
-            pinPage(pageId, firstpage, false);
+    /**
+     * Pins the page if it is in the buffer pool and returns its frame, or
+     * returns NOT_FOUND.
+     */
+    private int pinIfResident(int pid) {
+        synchronized (pageMap.lockFor(pid)) {
+            int id = pageMap.lookup(pid);
+            if (id != PageTable.NOT_FOUND) {
+                //update pinCount; a frame that was unpinned stops being a candidate
+                frmDescr[id].pin();
+                recordAccess(id, pid, AccessBuffer.PIN);
+            }
+            return id;
         }
-        catch (BufferPoolExceededException e) {
-            //if buffer is full, try to deallocate pages
-            try {
-                Minibase.DiskManager.deallocate_page(pageId, howmany);
+    }
+
+    /**
+     * Waits until another thread has finished reading a page into a frame that
+     * this thread just pinned. If that read failed, drops the pin again and
+     * returns false.
+     */
+    private boolean awaitLoad(int id, int pid) {
+        FrameDescriptor fd = frmDescr[id];
+        fd.ioLatch.lock();
+        fd.ioLatch.unlock();
+        synchronized (pageMap.lockFor(pid)) {
+            if (pageMap.lookup(pid) == id) {
+                return true;
             }
-            catch (BufMgrException f) {
-                throw new DiskMgrException("error when deallocating pages");
+            releaseAbandoned(id);
+            return false;
+        }
+    }
+
+    /**
+     * Drops a pin on a frame whose page could not be read in. The last pin to go
+     * returns the frame to the free list. The caller holds the page table lock of
+     * the frame's page.
+     */
+    private void releaseAbandoned(int id) {
+        if (frmDescr[id].unpin() == 0) {
+            resetFrameDescriptor(id);
+            synchronized (replacer) {
+                release(id);
+                addFree(id);
             }
-            throw new BufferPoolExceededException("error, the buffer is full");
         }
+    }
 
-        return pageId;
+    /**
+     * Returns the replacer of the partition whose page a frame holds. The
+     * caller holds the replacer's monitor.
+     */
+    private Replacer replacerOf(int id) {
+        return partitions[frameOwner[id]].replacer;
     }
 
     /**
-     * This method should be called to delete a page that is on disk. This routine
-     * must call the method in diskmgr package to deallocate the page.
+     * Buffers a pin or unpin of a page in the pool for the replacer of its
+     * frame. If the buffer of the page's partition is full, every buffered
+     * access is reported first. The caller holds the page table lock of the
+     * page.
      *
-     * @param pageno
-     *            the page number in the data base.
-     * @throws PagePinnedException if the page is still pinned
-     * @throws DiskMgrException if there is an error in the DiskMgr layer. This is likely caused by incorrect implementations in other methods of the Buffer Manager
+     * @param op
+     *            AccessBuffer.PIN, or AccessBuffer.UNPIN plus the ordinal of the unpin's hint
      */
-    public void freePage(PageId pageno) throws PagePinnedException, DiskMgrException {
-        // YOUR CODE HERE
-        int pid = pageno.pid;
-
-        //check if page is in the buffer pool
-        if (pageMap.containsKey(pid)) {
-            //page can only be unpinned if pinCount == 0
-            if (frmDescr[pageMap.get(pid)].pinCount == 0) {
-                //reset the frame descriptor and remove the page
-                resetFrameDescriptor(pageMap.get(pid));
-                pageMap.remove(pid);
-            }
-            //otherwise, throws PagePinnedException
-            else {
-                throw new PagePinnedException("error, page cannot be unpinned");
+    private void recordAccess(int id, int pid, int op) {
+        AccessBuffer buffer = accessBuffers[pageMap.partitionIndex(pid)];
+        long stamp = ++accessClock.get()[0];
+        if (!buffer.add(id, pid, op, stamp)) {
+            synchronized (replacer) {
+                applyAccesses();
             }
+            //only threads holding the partition lock add to the buffer, so there is room now
+            buffer.add(id, pid, op, stamp);
         }
+    }
 
-        //remove the page from the database, throw DiskMgrException if there's a BufMgrException when deallocating
-        try {
-            Minibase.DiskManager.deallocate_page((pageno));
-        }
-        catch (BufMgrException e) {
-            throw new DiskMgrException("error when deallocating pages");
-        }
+    /**
+     * Reports the buffered pins and unpins to the replacers. Done before a
+     * replacer is asked for a victim or told of a frame changing hands, so
+     * that it always learns of a frame's accesses in the order they happened.
+     * The caller holds the replacer's monitor.
+     */
+    private void applyAccesses() {
+        AccessBuffer.drain(accessBuffers, drainHeap, applyAccess);
     }
 
     /**
-     * Used to flush a particular page of the buffer pool to disk. This method calls
-     * the write_page method of the diskmgr package.
-     *
-     * @param pageid
-     *            the page number in the database.
-     * @throws PageNotFoundException if the page is not in memory
-     * @throws DiskMgrException if there is an error in the DiskMgr layer. This is likely caused by incorrect implementations in other methods of the Buffer Manager
+     * Reports one buffered pin or unpin to the replacer of the frame. The frame
+     * still holds the page, since a frame's accesses are reported before it is
+     * released. The caller holds the replacer's monitor.
      */
-    public void flushPage(PageId pageid) throws PageNotFoundException, DiskMgrException {
-        // find the frame holding that page
-        Integer frameId = pageMap.get(pageid.pid);
-        if (frameId == null) {
-            throw new PageNotFoundException(
-                    "BufMgr.flushPage: Page with id " + pageid.pid + " does not exist in the buffer bool.");
+    private void applyAccess(int id, int pid, int op) {
+        if (frmDescr[id].ring != null) {
+            //its ring recycles the frame, not a replacer
+        } else if (op == AccessBuffer.PIN) {
+            pinResidentFrame(id, pid);
+        } else if (op == AccessBuffer.UNPIN) {
+            replacerOf(id).unpin(id);
         } else {
-            Minibase.DiskManager.write_page(pageid, bufPool[frameId]);
-            frmDescr[frameId].dirtyBit = false;
+            replacerOf(id).unpin(id, UnpinHint.values()[op - AccessBuffer.UNPIN]);
         }
     }
 
     /**
-     * Used to flush all dirty pages in the buffer pool to disk
-     * @throws DiskMgrException if there is an error in the DiskMgr layer. This is likely caused by incorrect implementations in other methods of the Buffer Manager
+     * Reports a pin of a page in the pool to the replacer of its frame. If the
+     * frame was picked as a victim and its page pinned before it could be
+     * evicted, it is reinstated first, so that the replacer sees a hit rather
+     * than a page read in again. The caller holds the replacer's monitor.
      */
-    public void flushAllPages() throws DiskMgrException {
-        for (int i = 0; i < numOfFrames; i++) {
-            if (frmDescr[i].dirtyBit == true) {
-                Minibase.DiskManager.write_page(new PageId(frmDescr[i].pageno), bufPool[i]);
-                frmDescr[i].dirtyBit = false;
-            }
+    private void pinResidentFrame(int id, int pid) {
+        FrameDescriptor fd = frmDescr[id];
+        if (fd.picked) {
+            fd.picked = false;
+            replacerOf(id).reinstate(id, pid);
         }
+        replacerOf(id).pin(id, pid);
     }
 
     /**
-     * Returns the total number of buffer frames.
+     * Takes a frame whose page has left the pool away from its partition. The
+     * caller holds the replacer's monitor.
      */
-    public int getNumBuffers() {
-        return numOfFrames;
+    private void release(int id) {
+        applyAccesses();
+        FrameDescriptor fd = frmDescr[id];
+        fd.picked = false;
+        if (fd.ring != null) {
+            fd.ring = null;
+        } else {
+            PoolPartition owner = partitions[frameOwner[id]];
+            owner.replacer.free(id);
+            owner.frames--;
+        }
+        frameOwner[id] = 0;
     }
 
     /**
-     * Returns the total number of unpinned buffer frames.
+     * Hands a frame a buffer ring gives up over to the replacer of its page's
+     * partition, if it still holds the page the ring read into it. The frame
+     * becomes a replacement candidate unless it is pinned.
      */
-    public int getNumUnpinned() {
-        int numUnpinned = 0;
-        for (int i = 0; i < numOfFrames; i++) {
-            if (frmDescr[i].pinCount <= 0) {
+    private void adoptRingFrame(BufferRing ring, int id, int pid) {
+        if (pid == -1 || id >= frmDescr.length) {
+            return;
+        }
+        FrameDescriptor fd = frmDescr[id];
+        synchronized (pageMap.lockFor(pid)) {
+            boolean available = false;
+            synchronized (replacer) {
+                //pins and unpins buffered while the ring had the frame are its own business
+                applyAccesses();
+                if (fd.ring == ring && fd.pageno == pid) {
+                    fd.ring = null;
+                    PoolPartition owner = partitions[frameOwner[id]];
+                    owner.frames++;
+                    owner.replacer.pin(id, pid);
+                    if (fd.pinCount == 0) {
+                        owner.replacer.unpin(id);
+                        available = true;
+                    }
+                }
+            }
+            if (available) {
+                frameAvailable();
+            }
+        }
+    }
+
+    /**
+     * Counts a pin of a page found in a frame the calling thread has pinned,
+     * so that the frame stays with its partition.
+     */
+    private void countHit(int id) {
+        metrics.hits.increment();
+        partitions[frameOwner[id]].hits.increment();
+    }
+
+    /**
+     * Returns the index of the partition a page is assigned to. The caller
+     * holds the replacer's monitor.
+     */
+    private int partitionOf(int pid) {
+        Map.Entry<Integer, int[]> run = assigned.floorEntry(pid);
+        return run != null && pid < run.getValue()[0] ? run.getValue()[1] : 0;
+    }
+
+    /**
+     * Returns the frames reserved for a partition: its quota, or what the
+     * others leave for the default partition. The caller holds the replacer's
+     * monitor.
+     */
+    private int quotaOf(PoolPartition p) {
+        return p.index == 0 ? Math.max(0, numOfFrames - reserved) : p.quota;
+    }
+
+    /**
+     * Asks for a victim to make room for a page when there is no free frame. A
+     * partition at its quota evicts a page of its own; one below it takes a
+     * frame back from the partition furthest over its quota, then from the
+     * next one, and only evicts its own pages if they have nothing unpinned. A
+     * partition at its quota with nothing unpinned may take from partitions
+     * over quota too. If no replacer has a victim, an unpinned frame of a
+     * buffer ring is taken. Returns NIL if there is no victim. A victim chosen
+     * by a replacer is marked picked until it is evicted or reinstated. The
+     * caller holds the replacer's monitor.
+     *
+     * @param forRing
+     *            whether the page goes into a buffer ring, in which case the
+     *            replacers are not told which page it is
+     */
+    private int pickVictim(int pid, boolean forRing) {
+        applyAccesses();
+        int id = pickFromPartitions(pid, forRing ? -1 : pid);
+        if (id != FrameList.NIL) {
+            frmDescr[id].picked = true;
+            return id;
+        }
+        //the frames of rings nobody freed are the last resort
+        for (int i = 0; i < numOfFrames; i++) {
+            FrameDescriptor fd = frmDescr[i];
+            if (fd.ring != null && fd.pinCount == 0 && fd.pageno != -1) {
+                return i;
+            }
+        }
+        return FrameList.NIL;
+    }
+
+    /**
+     * Asks the replacers of the partitions for a victim, as pickVictim
+     * describes, for the page pageno, or -1 for a page they are not to know
+     * about. The caller holds the replacer's monitor.
+     */
+    private int pickFromPartitions(int pid, int pageno) {
+        PoolPartition[] parts = partitions;
+        if (parts.length == 1) {
+            return replacer.pickVictim(pageno);
+        }
+        PoolPartition p = parts[partitionOf(pid)];
+        boolean atQuota = p.frames >= quotaOf(p);
+        int id = atQuota ? p.replacer.pickVictim(pageno) : FrameList.NIL;
+
+        //take from the partitions over their quota, the ones furthest over first
+        boolean[] tried = new boolean[parts.length];
+        tried[p.index] = true;
+        while (id == FrameList.NIL) {
+            PoolPartition lender = null;
+            for (PoolPartition q : parts) {
+                int over = q.frames - quotaOf(q);
+                if (!tried[q.index] && over > 0 && (lender == null || over > lender.frames - quotaOf(lender))) {
+                    lender = q;
+                }
+            }
+            if (lender == null) {
+                break;
+            }
+            tried[lender.index] = true;
+            id = lender.replacer.pickVictim(pageno);
+        }
+        if (id == FrameList.NIL && !atQuota) {
+            id = p.replacer.pickVictim(pageno);
+        }
+        return id;
+    }
+
+    /**
+     * Hands an empty frame back to the free list, unless a shrinking pool has
+     * dropped it. The caller holds the replacer's monitor.
+     */
+    private void addFree(int id) {
+        frmDescr[id].taken = false;
+        if (id < numOfFrames) {
+            freeFrames.addFirst(id);
+            frameAvailable();
+        }
+    }
+
+    /**
+     * Wakes the first pin waiting for a frame, if any, after a frame has been
+     * unpinned or emptied.
+     */
+    private void frameAvailable() {
+        if (waitQueue.depth() > 0) {
+            waitQueue.signal();
+        }
+    }
+
+    /**
+     * Gets an empty frame to read a page into: a free frame if there is one,
+     * otherwise a victim chosen by the replacer, evicting its page. Returns with
+     * the frame's I/O latch held.
+     *
+     * @param forRing
+     *            whether the page goes into a buffer ring
+     * @throws BufferPoolExceededException if every frame is pinned
+     * @throws DiskMgrException if the victim's page cannot be written out
+     */
+    private int claimFrame(int pid, boolean forRing) throws BufferPoolExceededException, DiskMgrException {
+        while (true) {
+            int id;
+            boolean victim = false;
+            synchronized (replacer) {
+                //use an empty frame if there is one, otherwise ask the replacer for a victim
+                id = freeFrames.removeFirst();
+                if (id == FrameList.NIL) {
+                    id = pickVictim(pid, forRing);
+                    victim = true;
+                } else {
+                    frmDescr[id].taken = true;
+                }
+            }
+            //throw BufferPoolExceededException if no replacement candidates
+            if (id == FrameList.NIL) {
+                throw new BufferPoolExceededException("error, no valid replacement candidates");
+            }
+
+            //a victim may have been pinned, freed or evicted by another thread since it was picked
+            FrameDescriptor fd = frmDescr[id];
+            fd.ioLatch.lock();
+            boolean claimed = false;
+            try {
+                int old = fd.pageno;
+                claimed = !victim || (old != -1 && evict(id, old));
+            } finally {
+                if (!claimed) {
+                    fd.ioLatch.unlock();
+                }
+            }
+            if (claimed) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Claims frames for up to count pages following pid that are not in the
+     * buffer pool, stopping at the first one that is or for which no frame can be
+     * had without writing a page out. Returns the claimed frames after the
+     * given one, whose latches are held like its own.
+     */
+    private int[] claimReadAhead(int id, int pid, int count, BufferRing ring) {
+        count = Math.min(count, Minibase.DiskManager.db_num_pages() - pid - 1);
+        if (ring != null) {
+            count = Math.min(count, ring.size() - 1);
+        }
+        if (count <= 0) {
+            return new int[] { id };
+        }
+        int[] frames = new int[1 + count];
+        frames[0] = id;
+        int claimed = 1;
+        for (int next = pid + 1; claimed <= count; next++) {
+            synchronized (pageMap.lockFor(next)) {
+                if (pageMap.lookup(next) != PageTable.NOT_FOUND) {
+                    break;
+                }
+            }
+            int f;
+            try {
+                f = ring == null ? claimWithoutWaiting(next, false) : claimRingFrame(ring, next, false);
+            } catch (BufferPoolExceededException | DiskMgrException e) {
+                //not thrown when the frame is not to be waited for
+                f = FrameList.NIL;
+            }
+            if (f == FrameList.NIL) {
+                break;
+            }
+            frames[claimed++] = f;
+        }
+        return claimed == frames.length ? frames : Arrays.copyOf(frames, claimed);
+    }
+
+    /**
+     * Gets an empty frame for a page read ahead without waiting for anything: a
+     * free frame whose latch is free, or a clean victim. Returns with the frame's
+     * I/O latch held, or NIL.
+     */
+    private int claimWithoutWaiting(int pid, boolean forRing) {
+        int f;
+        synchronized (replacer) {
+            f = freeFrames.removeFirst();
+            if (f != FrameList.NIL) {
+                frmDescr[f].taken = true;
+            }
+        }
+        if (f == FrameList.NIL) {
+            return claimCleanVictim(pid, forRing);
+        }
+        //latches are only taken when free while others are held
+        if (!frmDescr[f].ioLatch.tryLock()) {
+            synchronized (replacer) {
+                addFree(f);
+            }
+            return FrameList.NIL;
+        }
+        return f;
+    }
+
+    /**
+     * Gets an empty frame for a page from the next slot of a buffer ring,
+     * evicting the page the ring read into it a lap before. If that frame is in
+     * use by someone else, or the slot has none yet, a frame is claimed from the
+     * pool for the slot instead. Returns with the frame's I/O latch held.
+     *
+     * @param mayWait
+     *            whether dirty pages may be written out and latches waited for;
+     *            if not, NIL is returned rather than doing either
+     * @throws BufferPoolExceededException if the pool has no frame for the slot
+     * @throws DiskMgrException if the page in the slot cannot be written out
+     */
+    private int claimRingFrame(BufferRing ring, int pid, boolean mayWait)
+            throws BufferPoolExceededException, DiskMgrException {
+        int slot = ring.next;
+        int f = ring.frames[slot];
+        int old = ring.pages[slot];
+        if (f != FrameList.NIL && f < numOfFrames && old != -1) {
+            FrameDescriptor fd = frmDescr[f];
+            if (fd.ioLatch.tryLock()) {
+                boolean reused = false;
+                try {
+                    reused = mayWait ? evict(f, old) : evictIfClean(f, old, false);
+                } finally {
+                    if (!reused) {
+                        fd.ioLatch.unlock();
+                    }
+                }
+                if (reused) {
+                    ring.pages[slot] = pid;
+                    ring.advance();
+                    return f;
+                }
+            }
+            //a dirty page of the ring's own is left for a demand pin to write
+            if (!mayWait && fd.pageno == old && fd.pinCount == 0) {
+                return FrameList.NIL;
+            }
+        }
+        //the frame is in use by someone else, who may keep its page; the replacer takes it from here
+        if (f != FrameList.NIL) {
+            adoptRingFrame(ring, f, old);
+            ring.frames[slot] = FrameList.NIL;
+            ring.pages[slot] = -1;
+        }
+
+        //fill the slot from the pool
+        f = mayWait ? claimFrame(pid, true) : claimWithoutWaiting(pid, true);
+        if (f != FrameList.NIL) {
+            ring.frames[slot] = f;
+            ring.pages[slot] = pid;
+            ring.advance();
+        }
+        return f;
+    }
+
+    /**
+     * Gets a victim from the replacer for a page read ahead, if there is one
+     * whose page is clean. Returns with the frame's I/O latch held, or NIL.
+     */
+    private int claimCleanVictim(int pid, boolean forRing) {
+        int id;
+        synchronized (replacer) {
+            id = pickVictim(pid, forRing);
+        }
+        if (id == FrameList.NIL) {
+            return FrameList.NIL;
+        }
+        FrameDescriptor fd = frmDescr[id];
+        int old = fd.pageno;
+        if (!fd.ioLatch.tryLock()) {
+            //the frame is busy; hand it back as a candidate rather than wait
+            requeue(id, old);
+            return FrameList.NIL;
+        }
+        if (old != -1 && evictIfClean(id, old, true)) {
+            return id;
+        }
+        fd.ioLatch.unlock();
+        return FrameList.NIL;
+    }
+
+    /**
+     * Evicts the page in a victim frame, writing it out first if it is dirty. The
+     * caller holds the frame's I/O latch. Returns false if the page was pinned or
+     * freed in the meantime, in which case the frame is left alone.
+     */
+    private boolean evict(int id, int old) throws DiskMgrException {
+        FrameDescriptor fd = frmDescr[id];
+        Object lock = pageMap.lockFor(old);
+        while (true) {
+            synchronized (lock) {
+                if (fd.pageno != old || fd.pinCount != 0) {
+                    return false;
+                }
+                if (!fd.dirtyBit) {
+                    dropPage(id, old);
+                    return true;
+                }
+                fd.dirtyBit = false;
+            }
+
+            //the background writer is falling behind, if there is one
+            PageWriter writer = pageWriter;
+            if (writer != null) {
+                writer.wakeUp();
+            }
+
+            //write old page; if it is pinned and changed meanwhile, it is dirty again and looked at once more
+            long start = System.nanoTime();
+            try {
+                forceLog(fd.pageLsn);
+                Minibase.DiskManager.write_page(new PageId(old), bufPool[id]);
+                fd.recLsn = 0;
+                metrics.dirtyEvictions.increment();
+                metrics.writeBackLatency.record(System.nanoTime() - start);
+            } catch (DiskMgrException e) {
+                synchronized (lock) {
+                    if (fd.pageno == old) {
+                        fd.dirtyBit = true;
+                    }
+                }
+                //the old page stays where it was, as a candidate again
+                requeue(id, old);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Evicts the page in a frame if it is clean, without writing anything. The
+     * caller holds the frame's I/O latch. Returns false if the page was pinned,
+     * freed or is dirty.
+     *
+     * @param picked
+     *            whether the frame was returned by pickVictim, in which case a
+     *            dirty page is handed back to the replacer as a candidate
+     */
+    private boolean evictIfClean(int id, int old, boolean picked) {
+        FrameDescriptor fd = frmDescr[id];
+        synchronized (pageMap.lockFor(old)) {
+            if (fd.pageno != old || fd.pinCount != 0) {
+                return false;
+            }
+            if (fd.dirtyBit) {
+                if (picked) {
+                    requeue(id, old);
+                }
+                return false;
+            }
+            dropPage(id, old);
+            return true;
+        }
+    }
+
+    /**
+     * Hands a victim that is not going to be evicted back to its replacer, if
+     * it still holds the given page and has not been handed back by a pin of
+     * the page meanwhile. A frame that was not picked as a victim is still
+     * known to its replacer and left alone.
+     */
+    private void requeue(int id, int old) {
+        if (old == -1) {
+            return;
+        }
+        FrameDescriptor fd = frmDescr[id];
+        synchronized (pageMap.lockFor(old)) {
+            boolean reinstated = false;
+            synchronized (replacer) {
+                //a pin of the page still buffered hands the victim back itself
+                applyAccesses();
+                if (fd.picked && fd.pageno == old) {
+                    fd.picked = false;
+                    replacerOf(id).reinstate(id, old);
+                    reinstated = true;
+                }
+            }
+            if (reinstated) {
+                frameAvailable();
+            }
+        }
+    }
+
+    /**
+     * Removes the page in an unpinned victim frame from the buffer pool; the
+     * frame is now empty and owned by this thread. The caller holds the page
+     * table lock of the page and the frame's I/O latch.
+     */
+    private void dropPage(int id, int old) {
+        metrics.evictions.increment();
+        CompressedTier tier = compressedTier;
+        if (tier != null && bufPool[id] != null) {
+            tier.put(old, bufPool[id].getpage());
+        }
+        pageMap.remove(old);
+        resetFrameDescriptor(id);
+        synchronized (replacer) {
+            release(id);
+        }
+    }
+
+    /**
+     * Reads a page into an empty frame claimed by this thread, pins it and
+     * releases the frame's I/O latch. Returns false, handing the frames back, if
+     * another thread brought the page in first. Further frames claimed for
+     * the pages following it are filled in the same read and left unpinned; the
+     * run stops short at a page another thread brought in meanwhile.
+     *
+     * @param frames
+     *            the frame for the page, then the frames for the pages read ahead
+     * @param empty
+     *            whether the pages are zero-filled instead of read
+     * @param ring
+     *            the buffer ring the frames are for, or null
+     */
+    private boolean loadPages(int[] frames, PageId pageno, boolean empty, BufferRing ring) throws DiskMgrException {
+        int pid = pageno.pid;
+        int count = 0;
+        try {
+            //publish the pages; other pinners wait for the read below
+            while (count < frames.length && publish(frames[count], pid + count, ring)) {
+                count++;
+            }
+            if (count == 0) {
+                return false;
+            }
+
+            //the frames were maybe never used before, or for pages of another size; their page
+            //memory is allocated now, as large as the pages of the database
+            int pageSize = Minibase.DiskManager.db_page_size();
+            for (int i = 0; i < count; i++) {
+                Page frame = bufPool[frames[i]];
+                if (frame == null || frame.getpage().length != pageSize) {
+                    bufPool[frames[i]] = new Page(new byte[pageSize]);
+                }
+            }
+            if (empty) {
+                //nothing to read: the caller overwrites the page and unpins it dirty
+                for (int i = 0; i < count; i++) {
+                    Arrays.fill(bufPool[frames[i]].getpage(), (byte) 0);
+                }
+                metrics.zeroFills.add(count);
+            }
+            long start = System.nanoTime();
+            try {
+                //pages kept compressed need no read, as long as the whole run is
+                CompressedTier tier = empty ? null : compressedTier;
+                boolean kept = tier != null;
+                for (int i = 0; kept && i < count; i++) {
+                    kept = tier.take(pid + i, bufPool[frames[i]].getpage());
+                }
+                if (empty) {
+                    //filled in above
+                } else if (kept) {
+                    metrics.compressedHits.add(count);
+                } else if (count == 1) {
+                    Minibase.DiskManager.read_page(pageno, bufPool[frames[0]]);
+                } else {
+                    Page[] pages = new Page[count];
+                    for (int i = 0; i < count; i++) {
+                        pages[i] = bufPool[frames[i]];
+                    }
+                    Minibase.DiskManager.read_pages(pageno, pages, count);
+                }
+            } catch (DiskMgrException e) {
+                //give the frames back rather than leaking them; threads waiting for them start over
+                for (int i = 0; i < count; i++) {
+                    synchronized (pageMap.lockFor(pid + i)) {
+                        pageMap.remove(pid + i);
+                        frmDescr[frames[i]].loading = false;
+                        releaseAbandoned(frames[i]);
+                    }
+                }
+                throw e;
+            }
+            if (!empty) {
+                metrics.missLatency.record(System.nanoTime() - start);
+            }
+            metrics.readAheadPages.add(count - 1);
+
+            //drop the pins on the pages read ahead, which makes them replacement candidates
+            for (int i = 0; i < count; i++) {
+                frmDescr[frames[i]].loading = false;
+            }
+            for (int i = 1; i < count; i++) {
+                synchronized (pageMap.lockFor(pid + i)) {
+                    if (frmDescr[frames[i]].unpin() == 0) {
+                        recordAccess(frames[i], pid + i, AccessBuffer.UNPIN);
+                        frameAvailable();
+                    }
+                }
+            }
+            return true;
+        } finally {
+            //hand back the frames that were not used
+            if (count < frames.length) {
+                synchronized (replacer) {
+                    for (int i = count; i < frames.length; i++) {
+                        addFree(frames[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < frames.length; i++) {
+                frmDescr[frames[i]].ioLatch.unlock();
+            }
+        }
+    }
+
+    /**
+     * Makes an empty frame claimed by this thread hold the given page, pinned
+     * and still loading, unless another thread brought the page in first or the
+     * pool has shrunk below the frame since it was claimed. A frame for a
+     * buffer ring is kept from the replacers.
+     */
+    private boolean publish(int id, int pid, BufferRing ring) {
+        FrameDescriptor fd = frmDescr[id];
+        synchronized (pageMap.lockFor(pid)) {
+            //a frame dropped by a shrinking pool is not used again
+            if (pageMap.lookup(pid) != PageTable.NOT_FOUND || id >= numOfFrames) {
+                return false;
+            }
+            resetFrameDescriptor(id, pid);
+            fd.pin();
+            fd.loading = true;
+            pageMap.put(pid, id);
+            synchronized (replacer) {
+                fd.taken = false;
+                PoolPartition owner = partitions[partitionOf(pid)];
+                frameOwner[id] = owner.index;
+                fd.ring = ring;
+                if (ring == null) {
+                    owner.frames++;
+                    applyAccesses();
+                    owner.replacer.pin(id, pid);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Unpin a page specified by a pageId. This method should be called with
+     * dirty==true if the client has modified the page. If so, this call should set
+     * the dirty bit for this frame. Further, if pin_count>0, this method should
+     * decrement it. If pin_count=0 before this call, throw an exception to report
+     * error. (For testing purposes, we ask you to throw an exception named
+     * PageUnpinnedException in case of error.)
+     *
+     * @param pageno
+     *            the PageID of the page
+     * @param dirty
+     *            whether or not the page is dirty
+     * @throws PageNotFoundException the page is not in memory
+     * @throws PageUnpinnedException the page is already unpinned
+     */
+    public void unpinPage(PageId pageno, boolean dirty)
+            throws PageNotFoundException, PageUnpinnedException {
+        unpinPage(pageno, dirty, UnpinHint.NONE);
+    }
+
+    /**
+     * Unpins a page as unpinPage(PageId, boolean) does, telling the replacement
+     * policy whether the page is going to be needed again: a HATE page is
+     * evicted before any page unpinned without a hint, such as the consumed
+     * pages of a sort run or a hash join partition, and a LOVE page is passed
+     * over once when it would be evicted, such as the directory pages of an
+     * index. The hint only counts if this releases the last pin on the page,
+     * and lasts until the page is pinned again.
+     *
+     * @param pageno
+     *            the PageID of the page
+     * @param dirty
+     *            whether or not the page is dirty
+     * @param hint
+     *            what is known about the page's reuse
+     * @throws PageNotFoundException the page is not in memory
+     * @throws PageUnpinnedException the page is already unpinned
+     */
+    public void unpinPage(PageId pageno, boolean dirty, UnpinHint hint)
+            throws PageNotFoundException, PageUnpinnedException {
+        int pid = pageno.pid;
+        synchronized (pageMap.lockFor(pid)) {
+            int id = pageMap.lookup(pid);
+
+            //if page is not in memory
+            if (id == PageTable.NOT_FOUND) {
+                throw new PageNotFoundException("error, page is not in memory");
+            }
+
+            //if pinCount is 0
+            FrameDescriptor fd = frmDescr[id];
+            if (fd.pinCount == 0) {
+                throw new PageUnpinnedException("error, page is already unpinned");
+            }
+
+            //update dirty bit if necessary, before the pin goes so that an evictor sees it
+            if (dirty) {
+                fd.dirtyBit = true;
+            }
+
+            //decrement pinCount; if it is 0 afterwards, the frame becomes a replacement candidate
+            if (fd.unpin() == 0) {
+                recordAccess(id, pid, AccessBuffer.UNPIN + hint.ordinal());
+                frameAvailable();
+            }
+        }
+        record(TraceRecorder.UNPIN, pid, dirty);
+    }
+
+    /**
+     * Allocate new pages. Call DB object to allocate a run of new pages and find a
+     * frame in the buffer pool for the first page and pin it. (This call allows a
+     * client of the Buffer Manager to allocate pages on disk.) If buffer is full,
+     * i.e., you can't find a frame for the first page, ask DB to deallocate all
+     * these pages, and return null. The first page is pinned as an empty page,
+     * zero-filled without reading it.
+     *
+     * @param firstpage
+     *            the address of the first page.
+     * @param howmany
+     *            total number of allocated new pages.
+     *
+     * @return the first page id of the new pages.__ null, if error.
+     * @throws DiskMgrException if there is an error from the DiskMgr layer. This is likely caused by incorrect implementations of other methods of the Buffer Manager
+     * @throws BufferPoolExceededException if the new page cannot be pinned after the run is allocated due to the buffer being full. If this exception is thrown, the newly allocated pages should be deallocated
+     */
+    public PageId newPage(Page firstpage, int howmany) throws DiskMgrException, BufferPoolExceededException {
+        // YOUR CODE HERE
+        PageId pageId = new PageId();
+
+        //catch BufMgrException and throw DiskMgrException if error allocating pages
+        try {
+            pageId = Minibase.DiskManager.allocate_page(howmany);
+        }
+        catch (BufMgrException e) {
+            throw new DiskMgrException("error when allocating pages");
+        }
+        record(TraceRecorder.NEW, pageId.pid, false);
+
+        //catch BufferPoolExceededException when buffer is full
+        try {
+            pinPage(pageId, firstpage, true);
+        }
+        catch (BufferPoolExceededException e) {
+            //if buffer is full, try to deallocate pages
+            try {
+                Minibase.DiskManager.deallocate_page(pageId, howmany);
+            }
+            catch (BufMgrException f) {
+                throw new DiskMgrException("error when deallocating pages");
+            }
+            throw new BufferPoolExceededException("error, the buffer is full");
+        }
+
+        return pageId;
+    }
+
+    /**
+     * Allocates a run of new pages and pins every one of them, zero-filled
+     * without reading, for bulk loaders that fill a file page by page. Each
+     * page is to be unpinned with unpinPage as usual, dirty once filled. If the pool has no frame
+     * for one of the pages, the pages pinned so far are unpinned and the whole
+     * run is deallocated again.
+     *
+     * @param pages
+     *            the pages to point to the new pages, one for each page wanted
+     * @return the page id of the first new page; page i of the run is pages[i]
+     * @throws IllegalArgumentException if pages is empty
+     * @throws DiskMgrException if there is an error from the DiskMgr layer
+     * @throws BufferPoolExceededException if the pool cannot hold every page of the run pinned
+     */
+    public PageId newPages(Page[] pages) throws DiskMgrException, BufferPoolExceededException {
+        int howmany = pages.length;
+        if (howmany < 1) {
+            throw new IllegalArgumentException("BufMgr: no pages to allocate");
+        }
+        PageId pageId;
+        try {
+            pageId = Minibase.DiskManager.allocate_page(howmany);
+        }
+        catch (BufMgrException e) {
+            throw new DiskMgrException("error when allocating pages");
+        }
+        record(TraceRecorder.NEW, pageId.pid, false);
+
+        int pinned = 0;
+        try {
+            for (; pinned < howmany; pinned++) {
+                pin(new PageId(pageId.pid + pinned), pages[pinned], true, false, null, false);
+            }
+        }
+        catch (BufferPoolExceededException e) {
+            //take the pinned pages out of the pool again, then give back the rest of the run
+            try {
+                for (int i = 0; i < pinned; i++) {
+                    PageId pid = new PageId(pageId.pid + i);
+                    unpinPage(pid, false);
+                    freePage(pid);
+                }
+                Minibase.DiskManager.deallocate_page(new PageId(pageId.pid + pinned), howmany - pinned);
+            }
+            catch (PageNotFoundException | PageUnpinnedException | PagePinnedException f) {
+                //cannot happen while this thread holds the pins
+                throw new IllegalStateException(f);
+            }
+            catch (BufMgrException f) {
+                throw new DiskMgrException("error when deallocating pages");
+            }
+            throw e;
+        }
+        return pageId;
+    }
+
+    /**
+     * This method should be called to delete a page that is on disk. This routine
+     * must call the method in diskmgr package to deallocate the page.
+     *
+     * @param pageno
+     *            the page number in the data base.
+     * @throws PagePinnedException if the page is still pinned
+     * @throws DiskMgrException if there is an error in the DiskMgr layer. This is likely caused by incorrect implementations in other methods of the Buffer Manager
+     */
+    public void freePage(PageId pageno) throws PagePinnedException, DiskMgrException {
+        int pid = pageno.pid;
+
+        //check if page is in the buffer pool
+        synchronized (pageMap.lockFor(pid)) {
+            int id = pageMap.lookup(pid);
+            if (id != PageTable.NOT_FOUND) {
+                //page can only be freed if pinCount == 0, otherwise throws PagePinnedException
+                if (frmDescr[id].pinCount != 0) {
+                    throw new PagePinnedException("error, page cannot be unpinned");
+                }
+
+                //reset the frame descriptor, remove the page and hand the frame back as empty
+                pageMap.remove(pid);
+                resetFrameDescriptor(id);
+            }
+            synchronized (replacer) {
+                if (id != PageTable.NOT_FOUND) {
+                    release(id);
+                    addFree(id);
+                }
+                //whichever partition's policy evicted the page last may still remember it
+                for (PoolPartition p : partitions) {
+                    p.replacer.pageFreed(pid);
+                }
+            }
+        }
+
+        CompressedTier tier = compressedTier;
+        if (tier != null) {
+            tier.remove(pid);
+        }
+
+        //remove the page from the database, throw DiskMgrException if there's a BufMgrException when deallocating
+        try {
+            Minibase.DiskManager.deallocate_page((pageno));
+        }
+        catch (BufMgrException e) {
+            throw new DiskMgrException("error when deallocating pages");
+        }
+        record(TraceRecorder.FREE, pid, false);
+    }
+
+    /**
+     * Used to flush a particular page of the buffer pool to disk. This method calls
+     * the write_page method of the diskmgr package.
+     *
+     * @param pageid
+     *            the page number in the database.
+     * @throws PageNotFoundException if the page is not in memory
+     * @throws DiskMgrException if there is an error in the DiskMgr layer. This is likely caused by incorrect implementations in other methods of the Buffer Manager
+     */
+    public void flushPage(PageId pageid) throws PageNotFoundException, DiskMgrException {
+        while (true) {
+            // find the frame holding that page
+            Integer frameId = pageMap.get(pageid.pid);
+            if (frameId == null) {
+                throw new PageNotFoundException(
+                        "BufMgr.flushPage: Page with id " + pageid.pid + " does not exist in the buffer bool.");
+            }
+
+            // write it under the frame's latch, unless it was evicted before we got there
+            FrameDescriptor fd = frmDescr[frameId];
+            fd.ioLatch.lock();
+            try {
+                if (writeFrame(frameId, pageid.pid, false)) {
+                    return;
+                }
+            } finally {
+                fd.ioLatch.unlock();
+            }
+        }
+    }
+
+    /**
+     * Used to flush all dirty pages in the buffer pool to disk
+     * @throws DiskMgrException if there is an error in the DiskMgr layer. This is likely caused by incorrect implementations in other methods of the Buffer Manager
+     */
+    public void flushAllPages() throws DiskMgrException {
+        flushDirtyPages();
+    }
+
+    /**
+     * Flushes all dirty pages in the buffer pool to disk, as flushAllPages does,
+     * in page order and with one write per run of adjacent pages.
+     *
+     * @return the number of pages and runs written
+     * @throws DiskMgrException if there is an error in the DiskMgr layer
+     */
+    public FlushReport flushDirtyPages() throws DiskMgrException {
+        //frames a shrinking pool is still draining count too
+        FrameDescriptor[] descr = frmDescr;
+        long[] batch = new long[descr.length];
+        int count = 0;
+        for (int i = 0; i < descr.length; i++) {
+            FrameDescriptor fd = descr[i];
+            int pid = fd.pageno;
+            if (fd.dirtyBit && pid != -1) {
+                batch[count++] = ((long) pid << 32) | i;
+            }
+        }
+        FlushReport report = writeSorted(batch, count);
+        lastFlush = report;
+        return report;
+    }
+
+    /**
+     * Returns what the last flushAllPages or flushDirtyPages wrote, or null if
+     * there was none yet.
+     */
+    public FlushReport getLastFlushReport() {
+        return lastFlush;
+    }
+
+    /**
+     * Makes the buffer manager follow a write-ahead log: from now on, no page is
+     * written before the log is durable up to the page's last change made
+     * through updatePage. Dirty pages of transactions that have not committed
+     * may then be written out whenever their frames are needed, and committed
+     * transactions need not have their pages flushed, since the log can undo
+     * the former and redo the latter.
+     *
+     * @param log
+     *            the log, or null to stop following one
+     */
+    public void setLogManager(LogMgr log) {
+        logMgr = log;
+    }
+
+    /**
+     * Returns the log pages are not written ahead of, or null if there is none.
+     */
+    public LogMgr getLogManager() {
+        return logMgr;
+    }
+
+    /**
+     * Changes bytes of a pinned page on behalf of a transaction, logging the
+     * change before making it. The page's frame is latched meanwhile, so that
+     * the page is not written with the change before the log record is
+     * durable. The page is marked dirty.
+     *
+     * @param txId
+     *            the transaction making the change
+     * @param pageno
+     *            the page, which the caller has pinned
+     * @param offset
+     *            where the change starts in the page
+     * @param data
+     *            the new bytes
+     * @return the LSN of the log record of the change
+     * @throws IllegalStateException if there is no log
+     * @throws IllegalArgumentException if the bytes do not fit in the page at offset
+     * @throws PageNotFoundException if the page is not in memory
+     * @throws PageUnpinnedException if the page is not pinned
+     * @throws IOException if the log cannot be written
+     */
+    public long updatePage(int txId, PageId pageno, int offset, byte[] data)
+            throws PageNotFoundException, PageUnpinnedException, IOException {
+        LogMgr log = logMgr;
+        if (log == null) {
+            throw new IllegalStateException("BufMgr: there is no log to log the change in");
+        }
+        int pid = pageno.pid;
+        int id;
+        synchronized (pageMap.lockFor(pid)) {
+            id = pageMap.lookup(pid);
+            if (id == PageTable.NOT_FOUND) {
+                throw new PageNotFoundException("error, page is not in memory");
+            }
+            if (frmDescr[id].pinCount == 0) {
+                throw new PageUnpinnedException("error, page is not pinned");
+            }
+        }
+
+        //the caller's pin keeps the page in the frame
+        FrameDescriptor fd = frmDescr[id];
+        fd.ioLatch.lock();
+        try {
+            byte[] bytes = bufPool[id].getpage();
+            if (offset < 0 || offset > bytes.length - data.length) {
+                throw new IllegalArgumentException("BufMgr: the change does not fit in the page");
+            }
+            byte[] before = Arrays.copyOfRange(bytes, offset, offset + data.length);
+            long lsn = log.logUpdate(txId, pid, offset, before, data);
+            System.arraycopy(data, 0, bytes, offset, data.length);
+            fd.pageLsn = lsn;
+            if (fd.recLsn == 0) {
+                fd.recLsn = lsn;
+            }
+            fd.dirtyBit = true;
+            return lsn;
+        } finally {
+            fd.ioLatch.unlock();
+        }
+    }
+
+    /**
+     * Makes the log durable up to the last change of a page about to be
+     * written, as the write-ahead rule has it. The caller holds the frame's I/O
+     * latch, so the page cannot change through updatePage meanwhile.
+     */
+    private void forceLog(long lsn) throws DiskMgrException {
+        LogMgr log = logMgr;
+        if (log == null || lsn == 0) {
+            return;
+        }
+        try {
+            log.flush(lsn);
+        } catch (IOException e) {
+            throw new DiskMgrException("error when flushing the log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the dirty page table: each page in the pool changed through
+     * updatePage since it was last written, with its recLSN. Each frame is
+     * looked at under its I/O latch, so no change logged before this is called
+     * is missed, but pages may be changed or written while the table is taken.
+     */
+    public Map<Integer, Long> getDirtyPageTable() {
+        Map<Integer, Long> table = new TreeMap<Integer, Long>();
+        for (FrameDescriptor fd : frmDescr) {
+            fd.ioLatch.lock();
+            try {
+                if (fd.recLsn != 0 && fd.pageno != -1) {
+                    table.put(fd.pageno, fd.recLsn);
+                }
+            } finally {
+                fd.ioLatch.unlock();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Takes a fuzzy checkpoint while pins and unpins go on: writes out the
+     * pages of the dirty page table as it is when the checkpoint starts, in
+     * page order and at most pagesPerSecond of them a second, so that the
+     * checkpoint's I/O is spread out rather than stalling the pool the way
+     * flushAllPages does. Then it logs the checkpoint with the dirty page
+     * table as it is by then, which holds the pages changed meanwhile, and
+     * makes it the log's master record. Restart recovery begins redo at the
+     * smallest recLSN in the table rather than at the start of the log. Pages
+     * evicted, written or written and changed again meanwhile are not written
+     * by the checkpoint.
+     *
+     * @param pagesPerSecond
+     *            the most pages written a second, 0 for no limit
+     * @return the LSN restart recovery begins redo at
+     * @throws IllegalStateException if there is no log
+     * @throws IllegalArgumentException if pagesPerSecond is negative
+     * @throws DiskMgrException if a page cannot be written out
+     * @throws IOException if the log cannot be written
+     * @throws InterruptedException if interrupted while waiting to write the
+     *             next page, in which case no checkpoint is logged
+     */
+    public long checkpoint(int pagesPerSecond) throws DiskMgrException, IOException, InterruptedException {
+        return checkpoint(pagesPerSecond, null);
+    }
+
+    /**
+     * Takes a checkpoint as checkpoint(int) does, for a background
+     * checkpointer that abandons it between two pages once it is stopped.
+     * Returns 0 if it was abandoned, in which case no checkpoint is logged.
+     */
+    long checkpoint(int pagesPerSecond, Checkpointer by) throws DiskMgrException, IOException, InterruptedException {
+        LogMgr log = logMgr;
+        if (log == null) {
+            throw new IllegalStateException("BufMgr: there is no log to take a checkpoint in");
+        }
+        if (pagesPerSecond < 0) {
+            throw new IllegalArgumentException("BufMgr: pagesPerSecond must not be negative");
+        }
+        long interval = pagesPerSecond == 0 ? 0 : 1000000000L / pagesPerSecond;
+        long start = System.nanoTime();
+        int written = 0;
+        boolean abandoned = false;
+        for (Map.Entry<Integer, Long> page : getDirtyPageTable().entrySet()) {
+            //keep to the rate since the first page, without making up for time lost
+            if (interval > 0 && written > 0) {
+                long wait = start + written * interval - System.nanoTime();
+                if (wait <= 0) {
+                    start -= wait;
+                }
+                //a stopping checkpointer is unparked rather than interrupted, since an interrupt
+                //in the middle of a write would close the database file
+                while (wait > 0 && (by == null || by.isRunning())) {
+                    LockSupport.parkNanos(this, wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    wait = start + written * interval - System.nanoTime();
+                }
+            }
+            if (by != null && !by.isRunning()) {
+                abandoned = true;
+                break;
+            }
+            if (writeDirtySince(page.getKey(), page.getValue())) {
+                written++;
+            }
+        }
+        metrics.checkpointPages.add(written);
+        if (abandoned) {
+            return 0;
+        }
+
+        //the table is taken after the begin record, so the restart analysis sees what it misses
+        long begin = log.beginCheckpoint();
+        return log.endCheckpoint(begin, getDirtyPageTable());
+    }
+
+    /**
+     * Writes out a page for a checkpoint if it is still in the pool, dirty
+     * since the given recLSN. Returns whether it was written.
+     */
+    private boolean writeDirtySince(int pid, long recLsn) throws DiskMgrException {
+        Integer id = pageMap.get(pid);
+        if (id == null) {
+            return false;
+        }
+        FrameDescriptor fd = frmDescr[id];
+        fd.ioLatch.lock();
+        try {
+            return fd.pageno == pid && fd.recLsn == recLsn && writeFrame(id, pid, true);
+        } finally {
+            fd.ioLatch.unlock();
+        }
+    }
+
+    /**
+     * Writes out the dirty pages in a batch of frames, sorted by page first, with
+     * one write per run of adjacent pages. A page that was evicted or written by
+     * someone else since the batch was collected is left out.
+     *
+     * @param batch
+     *            pageno and frame of each page, packed pageno-first as in
+     *            (long) pageno << 32 | frame; sorted in place
+     * @param count
+     *            the number of entries of the batch to use
+     * @return the number of pages and runs written
+     */
+    FlushReport writeSorted(long[] batch, int count) throws DiskMgrException {
+        Arrays.sort(batch, 0, count);
+        int[] run = new int[count];
+        Page[] pages = new Page[count];
+        int pagesWritten = 0;
+        int runsWritten = 0;
+        int j = 0;
+        while (j < count) {
+            //the first frame of a run may be waited for; later ones are only taken when free,
+            //so that no latch is waited for while others are held
+            int first = (int) (batch[j] >> 32);
+            int id = (int) batch[j++];
+            frmDescr[id].ioLatch.lock();
+            if (!takeDirty(id, first)) {
+                frmDescr[id].ioLatch.unlock();
+                continue;
+            }
+            int length = 0;
+            run[length] = id;
+            pages[length++] = bufPool[id];
+            while (j < count && (int) (batch[j] >> 32) == first + length) {
+                id = (int) batch[j];
+                if (!frmDescr[id].ioLatch.tryLock()) {
+                    break;
+                }
+                if (!takeDirty(id, first + length)) {
+                    frmDescr[id].ioLatch.unlock();
+                    break;
+                }
+                j++;
+                run[length] = id;
+                pages[length++] = bufPool[id];
+            }
+
+            try {
+                long lsn = 0;
+                for (int k = 0; k < length; k++) {
+                    lsn = Math.max(lsn, frmDescr[run[k]].pageLsn);
+                }
+                forceLog(lsn);
+                if (length == 1) {
+                    Minibase.DiskManager.write_page(new PageId(first), pages[0]);
+                } else {
+                    Minibase.DiskManager.write_pages(new PageId(first), pages, length);
+                }
+                for (int k = 0; k < length; k++) {
+                    frmDescr[run[k]].recLsn = 0;
+                }
+            } catch (DiskMgrException e) {
+                for (int k = 0; k < length; k++) {
+                    synchronized (pageMap.lockFor(first + k)) {
+                        if (frmDescr[run[k]].pageno == first + k) {
+                            frmDescr[run[k]].dirtyBit = true;
+                        }
+                    }
+                }
+                throw e;
+            } finally {
+                for (int k = 0; k < length; k++) {
+                    frmDescr[run[k]].ioLatch.unlock();
+                }
+            }
+            pagesWritten += length;
+            runsWritten++;
+            metrics.pagesFlushed.add(length);
+            metrics.flushRuns.increment();
+        }
+        return new FlushReport(pagesWritten, runsWritten);
+    }
+
+    /**
+     * Clears the dirty bit of a frame about to be written if it still holds
+     * the given page and it is dirty. The caller holds the frame's I/O latch.
+     *
+     * @return whether the page is to be written
+     */
+    private boolean takeDirty(int id, int pid) {
+        FrameDescriptor fd = frmDescr[id];
+        synchronized (pageMap.lockFor(pid)) {
+            if (fd.pageno != pid || !fd.dirtyBit) {
+                return false;
+            }
+            fd.dirtyBit = false;
+            return true;
+        }
+    }
+
+    /**
+     * Writes the page in a frame to disk and clears its dirty bit. The caller
+     * holds the frame's I/O latch. Returns false if the frame no longer holds
+     * the page.
+     *
+     * @param onlyIfDirty
+     *            whether to skip the write when the page is clean
+     */
+    private boolean writeFrame(int id, int pid, boolean onlyIfDirty) throws DiskMgrException {
+        FrameDescriptor fd = frmDescr[id];
+        Object lock = pageMap.lockFor(pid);
+        synchronized (lock) {
+            if (fd.pageno != pid) {
+                return false;
+            }
+            if (onlyIfDirty && !fd.dirtyBit) {
+                return true;
+            }
+            fd.dirtyBit = false;
+        }
+        try {
+            forceLog(fd.pageLsn);
+            Minibase.DiskManager.write_page(new PageId(pid), bufPool[id]);
+            fd.recLsn = 0;
+        } catch (DiskMgrException e) {
+            synchronized (lock) {
+                if (fd.pageno == pid) {
+                    fd.dirtyBit = true;
+                }
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Grows or shrinks the buffer pool to the given number of frames while it
+     * is in use. New frames are empty, and only allocated when first used. When
+     * shrinking, the frames beyond the new size stop being handed out at once;
+     * their pages are evicted, dirty ones written out first, and pages that are
+     * pinned are evicted as soon as they are unpinned, which this waits for.
+     * Their memory is released once they are empty. If the wait is interrupted
+     * or a page cannot be written, the pool keeps its old size.
+     *
+     * @param numbufs
+     *            the new number of frames
+     * @throws IllegalArgumentException if numbufs is not positive
+     * @throws InterruptedException if interrupted while waiting for a page to be unpinned
+     * @throws DiskMgrException if a page cannot be written out
+     */
+    public void resize(int numbufs) throws InterruptedException, DiskMgrException {
+        if (numbufs < 1) {
+            throw new IllegalArgumentException("BufMgr: the pool needs at least one frame");
+        }
+        synchronized (resizeLock) {
+            int old = numOfFrames;
+            if (numbufs > old) {
+                grow(old, numbufs);
+            } else if (numbufs < old) {
+                shrink(old, numbufs);
+            }
+        }
+    }
+
+    /**
+     * Adds frames old to numbufs - 1 to the pool, moving it to larger arrays if
+     * they do not fit.
+     */
+    private void grow(int old, int numbufs) {
+        if (numbufs > frmDescr.length) {
+            growArrays(numbufs);
+        }
+        synchronized (replacer) {
+            for (PoolPartition p : partitions) {
+                p.replacer.resize(numbufs);
+            }
+            numOfFrames = numbufs;
+        }
+        addEmptyFrames(old, numbufs);
+    }
+
+    /**
+     * Copies the pool's arrays into larger ones. Frame pages are set lazily under
+     * the frames' latches, so all latches are held while bufPool is copied lest
+     * one of them be set in the old array only.
+     */
+    private void growArrays(int numbufs) {
+        FrameDescriptor[] descr = frmDescr;
+        for (int i = 0; i < descr.length; i++) {
+            descr[i].ioLatch.lock();
+        }
+        try {
+            FrameDescriptor[] grown = Arrays.copyOf(descr, numbufs);
+            for (int i = descr.length; i < numbufs; i++) {
+                grown[i] = new FrameDescriptor();
+            }
+            Page[] pool = Arrays.copyOf(bufPool, numbufs);
+            synchronized (replacer) {
+                freeFrames.ensureCapacity(numbufs);
+                frameOwner = Arrays.copyOf(frameOwner, numbufs);
+            }
+            frmDescr = grown;
+            bufPool = pool;
+        } finally {
+            for (int i = 0; i < descr.length; i++) {
+                descr[i].ioLatch.unlock();
+            }
+        }
+    }
+
+    /**
+     * Puts the empty frames among from to to - 1 on the free list. Each frame's
+     * latch is taken first, so that a frame another thread has claimed, and
+     * still holds the latch of, is not handed out twice; a frame taken off the
+     * free list before the pool shrank, and not latched yet, is left to the
+     * thread that took it.
+     */
+    private void addEmptyFrames(int from, int to) {
+        for (int i = from; i < to; i++) {
+            FrameDescriptor fd = frmDescr[i];
+            fd.ioLatch.lock();
+            try {
+                boolean added = false;
+                synchronized (replacer) {
+                    if (fd.pageno == -1 && !fd.taken) {
+                        freeFrames.addLast(i);
+                        added = true;
+                    }
+                }
+                if (added) {
+                    frameAvailable();
+                }
+            } finally {
+                fd.ioLatch.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops frames numbufs to old - 1 from the pool, evicting their pages.
+     */
+    private void shrink(int old, int numbufs) throws InterruptedException, DiskMgrException {
+        //from now on these frames are not handed out, nor put back on the free list
+        synchronized (replacer) {
+            numOfFrames = numbufs;
+            for (int i = numbufs; i < old; i++) {
+                freeFrames.remove(i);
+            }
+        }
+        try {
+            drain(numbufs, old);
+        } catch (InterruptedException | DiskMgrException e) {
+            synchronized (replacer) {
+                numOfFrames = old;
+            }
+            addEmptyFrames(numbufs, old);
+            throw e;
+        }
+        synchronized (replacer) {
+            for (PoolPartition p : partitions) {
+                p.replacer.resize(numbufs);
+            }
+        }
+    }
+
+    /**
+     * Evicts the pages of frames from to to - 1 and releases their memory,
+     * polling for pinned pages to be unpinned. A page pinned into one of the
+     * frames meanwhile is waited for in the same way.
+     */
+    private void drain(int from, int to) throws InterruptedException, DiskMgrException {
+        while (true) {
+            boolean busy = false;
+            for (int i = from; i < to; i++) {
+                FrameDescriptor fd = frmDescr[i];
+                fd.ioLatch.lock();
+                try {
+                    int old = fd.pageno;
+                    if (old != -1 && !evict(i, old)) {
+                        busy = true;
+                        continue;
+                    }
+                    bufPool[i] = null;
+                } finally {
+                    fd.ioLatch.unlock();
+                }
+            }
+            if (!busy) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Returns the total number of buffer frames.
+     */
+    public int getNumBuffers() {
+        return numOfFrames;
+    }
+
+    /**
+     * Returns the total number of unpinned buffer frames.
+     */
+    public int getNumUnpinned() {
+        int numUnpinned = 0;
+        for (int i = 0; i < numOfFrames; i++) {
+            if (frmDescr[i].pinCount <= 0) {
                 numUnpinned++;
             }
         }
         return numUnpinned;
     }
 
+    /**
+     * Starts a background writer that keeps the share of dirty pages among the
+     * unpinned frames between the given watermarks, so that victims are mostly
+     * clean when pinPage needs them. Does nothing but change the watermarks if
+     * a writer is already running.
+     *
+     * @param lowWatermark
+     *            share of dirty unpinned frames at which the writer stops cleaning
+     * @param highWatermark
+     *            share of dirty unpinned frames above which the writer starts cleaning
+     * @param intervalMillis
+     *            how often the writer looks at the pool, besides whenever pinPage
+     *            has to write a dirty victim itself
+     * @return the writer
+     * @throws IllegalArgumentException if the watermarks are not 0 <= low <= high <= 1
+     *             or the interval is not positive
+     */
+    public synchronized PageWriter startPageWriter(double lowWatermark, double highWatermark, long intervalMillis) {
+        if (pageWriter != null) {
+            pageWriter.setWatermarks(lowWatermark, highWatermark);
+            return pageWriter;
+        }
+        PageWriter writer = new PageWriter(this, lowWatermark, highWatermark, intervalMillis);
+        writer.start();
+        pageWriter = writer;
+        return writer;
+    }
+
+    /**
+     * Stops the background writer, if one is running, and waits for it to finish.
+     */
+    public synchronized void stopPageWriter() {
+        if (pageWriter != null) {
+            pageWriter.stop();
+            pageWriter = null;
+        }
+    }
+
+    /**
+     * Returns the background writer, or null if none is running.
+     */
+    public PageWriter getPageWriter() {
+        return pageWriter;
+    }
+
+    /**
+     * Starts a background thread taking a checkpoint, as checkpoint does, every
+     * intervalMillis. If one is running already, its rate is changed instead.
+     *
+     * @param intervalMillis
+     *            how long the thread waits after each checkpoint
+     * @param pagesPerSecond
+     *            the most pages a checkpoint writes a second, 0 for no limit
+     * @return the checkpointer
+     * @throws IllegalArgumentException if the interval is not positive or the rate is negative
+     */
+    public synchronized Checkpointer startCheckpointer(long intervalMillis, int pagesPerSecond) {
+        if (checkpointer != null) {
+            checkpointer.setPagesPerSecond(pagesPerSecond);
+            return checkpointer;
+        }
+        Checkpointer c = new Checkpointer(this, intervalMillis, pagesPerSecond);
+        c.start();
+        checkpointer = c;
+        return c;
+    }
+
+    /**
+     * Stops the background checkpointer, if one is running, and waits for it
+     * to finish. A checkpoint it is taking is abandoned after the page being
+     * written, or finished if it is being logged already.
+     */
+    public synchronized void stopCheckpointer() {
+        if (checkpointer != null) {
+            checkpointer.stop();
+            checkpointer = null;
+        }
+    }
+
+    /**
+     * Returns the background checkpointer, or null if none is running.
+     */
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    /**
+     * Starts recording every pin, unpin, allocation and free of a page into a
+     * binary trace file, for TraceSimulator to replay. A trace already being
+     * taken is finished first.
+     *
+     * @param path
+     *            the trace file, replaced if it exists
+     * @throws IOException if the file cannot be created, or the previous trace not finished
+     */
+    public synchronized void startTrace(String path) throws IOException {
+        stopTrace();
+        trace = new TraceRecorder(path);
+    }
+
+    /**
+     * Stops recording page accesses and finishes the trace file, if a trace is
+     * being taken.
+     *
+     * @return the number of events recorded, 0 if no trace was being taken
+     * @throws IOException if the trace could not be written
+     */
+    public synchronized long stopTrace() throws IOException {
+        TraceRecorder recorder = trace;
+        if (recorder == null) {
+            return 0;
+        }
+        trace = null;
+        recorder.close();
+        return recorder.getEvents();
+    }
+
+    /**
+     * Records a page access in the trace, if one is being taken.
+     */
+    private void record(int op, int pageno, boolean dirty) {
+        TraceRecorder recorder = trace;
+        if (recorder != null) {
+            recorder.record(op, pageno, dirty);
+        }
+    }
+
+    /**
+     * Keeps pages evicted from the pool compressed in memory, within the given
+     * number of bytes, so that pinning them again needs no disk read. Pages
+     * that compress well, such as sparsely filled ones, take a fraction of a
+     * frame there. A budget of 0 or less drops the tier and its pages.
+     *
+     * @param bytes
+     *            the most memory the compressed pages may take
+     */
+    public synchronized void setCompressedTierBudget(long bytes) {
+        if (bytes <= 0) {
+            compressedTier = null;
+        } else if (compressedTier == null) {
+            compressedTier = new CompressedTier(bytes);
+        } else {
+            compressedTier.setBudget(bytes);
+        }
+    }
+
+    /**
+     * Returns the compressed tier, or null if no budget is set.
+     */
+    public CompressedTier getCompressedTier() {
+        return compressedTier;
+    }
+
+    /**
+     * Returns the number of pins waiting for a frame.
+     */
+    public int getPinQueueDepth() {
+        return waitQueue.depth();
+    }
+
+    /**
+     * Returns the counters and latency histograms of this buffer manager.
+     */
+    public BufMgrMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publishes the metrics of this buffer manager as the JMX MBean named
+     * MBEAN_NAME on the platform MBean server, taking the name over from any
+     * buffer manager that had it before.
+     *
+     * @throws JMException if the MBean cannot be registered
+     */
+    public void registerMBean() throws JMException {
+        synchronized (BufMgr.class) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+            registeredMetrics = metrics;
+        }
+    }
+
+    /**
+     * Removes the metrics MBean, if it is the one of this buffer manager.
+     *
+     * @throws JMException if the MBean cannot be unregistered
+     */
+    public void unregisterMBean() throws JMException {
+        synchronized (BufMgr.class) {
+            if (registeredMetrics == metrics) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+                registeredMetrics = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the replacement policy in use, e.g. to read the tuning state of an
+     * ARCReplacer. With partitions, this is the default partition's.
+     */
+    public Replacer getReplacer() {
+        synchronized (replacer) {
+            //so that what the caller reads of it is up to date
+            applyAccesses();
+        }
+        return replacer;
+    }
+
+    /**
+     * Creates a partition of the pool with a quota of frames reserved for it
+     * and a replacer of its own, using the pool's replacement policy. The
+     * frames are not set aside right away: they are taken back from the other
+     * partitions as the new one needs them.
+     *
+     * @param name
+     *            the name of the partition
+     * @param quota
+     *            the number of frames reserved for the partition
+     * @return the new partition, for assignPages
+     * @throws IllegalArgumentException if the name is taken, or the quota is not positive or more
+     *             than the frames not yet reserved for other partitions
+     */
+    public PoolPartition createPartition(String name, int quota) {
+        synchronized (replacer) {
+            if (getPartition(name) != null) {
+                throw new IllegalArgumentException("BufMgr: partition " + name + " exists already");
+            }
+            if (quota < 1 || reserved + quota > numOfFrames) {
+                throw new IllegalArgumentException("BufMgr: a quota of " + quota + " frames does not fit, "
+                        + (numOfFrames - reserved) + " are not reserved");
+            }
+            PoolPartition[] parts = partitions;
+            PoolPartition p = new PoolPartition(name, parts.length, newReplacer(replacer.getName(), frameOwner.length),
+                    quota);
+            parts = Arrays.copyOf(parts, parts.length + 1);
+            parts[p.index] = p;
+            reserved += quota;
+            partitions = parts;
+            return p;
+        }
+    }
+
+    /**
+     * Returns the partition of the given name, or null if there is none. The
+     * default partition is called PoolPartition.DEFAULT.
+     */
+    public PoolPartition getPartition(String name) {
+        for (PoolPartition p : partitions) {
+            if (p.getName().equals(name)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns every partition of the pool, the default one first.
+     */
+    public PoolPartition[] getPartitions() {
+        return partitions.clone();
+    }
+
+    /**
+     * Assigns a run of pages, such as the pages allocated for a file, to a
+     * partition, taking them from any partition they were assigned to before;
+     * assigning them to the default partition thus takes them out of every
+     * other. Pages of the run already in the pool stay in the frames of their
+     * old partition until they are evicted.
+     *
+     * @param first
+     *            the first page of the run
+     * @param count
+     *            the number of pages in the run
+     * @param partition
+     *            a partition of this buffer manager
+     * @throws IllegalArgumentException if count is not positive or the partition is not one of this
+     *             buffer manager's
+     */
+    public void assignPages(PageId first, int count, PoolPartition partition) {
+        if (count < 1) {
+            throw new IllegalArgumentException("BufMgr: no pages to assign");
+        }
+        int from = first.pid;
+        int to = from + count;
+        synchronized (replacer) {
+            PoolPartition[] parts = partitions;
+            if (partition.index >= parts.length || parts[partition.index] != partition) {
+                throw new IllegalArgumentException("BufMgr: " + partition.getName() + " is not a partition of this pool");
+            }
+
+            //cut the runs overlapping the new one down to what lies outside it
+            Map.Entry<Integer, int[]> before = assigned.lowerEntry(from);
+            if (before != null && before.getValue()[0] > from) {
+                int[] run = before.getValue();
+                if (run[0] > to) {
+                    assigned.put(to, new int[] { run[0], run[1] });
+                }
+                run[0] = from;
+            }
+            Map.Entry<Integer, int[]> inside;
+            while ((inside = assigned.ceilingEntry(from)) != null && inside.getKey() < to) {
+                assigned.remove(inside.getKey());
+                int[] run = inside.getValue();
+                if (run[0] > to) {
+                    assigned.put(to, run);
+                }
+            }
+            if (partition.index != 0) {
+                assigned.put(from, new int[] { to, partition.index });
+            }
+        }
+    }
+
     //*** DO NOT CHANGE ANY EXISTING METHODS BELOW THIS LINE ***
     // Accessor methods for use in test cases
     public FrameDescriptor getFrameDesc(int frameNum) {
@@ -0,0 +1,222 @@
+package bufmgr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and latency histograms of a buffer manager. The counters are
+ * LongAdders, which spread concurrent increments over striped cells instead of
+ * contending on a single word, so counting a pin costs next to nothing even
+ * when many threads pin at once. Latencies are only timed on the paths that do
+ * disk I/O anyway.
+ */
+public class BufMgrMetrics implements BufMgrMetricsMXBean {
+
+    /** bufmgr: the buffer manager counted, for its pool sizes */
+    private BufMgr bufmgr;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder loadWaits = new LongAdder();
+    final LongAdder readAheadPages = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder dirtyEvictions = new LongAdder();
+    final LongAdder pagesFlushed = new LongAdder();
+    final LongAdder flushRuns = new LongAdder();
+    final LongAdder poolExceeded = new LongAdder();
+    final LongAdder pinWaits = new LongAdder();
+    final LongAdder pinWaitTimeouts = new LongAdder();
+    final LongAdder optimisticFallbacks = new LongAdder();
+    final LongAdder compressedHits = new LongAdder();
+    final LongAdder zeroFills = new LongAdder();
+    final LongAdder checkpointPages = new LongAdder();
+
+    /** missLatency: time to read a missed page, with the pages read ahead along */
+    final LatencyHistogram missLatency = new LatencyHistogram();
+
+    /** writeBackLatency: time to write out a dirty victim before its frame can be reused */
+    final LatencyHistogram writeBackLatency = new LatencyHistogram();
+
+    /** pinWaitLatency: time pins spent queued for a frame, whether they got one or timed out */
+    final LatencyHistogram pinWaitLatency = new LatencyHistogram();
+
+    BufMgrMetrics(BufMgr bufmgr) {
+        this.bufmgr = bufmgr;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.sum();
+        long pins = h + misses.sum();
+        return pins == 0 ? 0 : (double) h / pins;
+    }
+
+    @Override
+    public long getLoadWaits() {
+        return loadWaits.sum();
+    }
+
+    @Override
+    public long getReadAheadPages() {
+        return readAheadPages.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getDirtyEvictions() {
+        return dirtyEvictions.sum();
+    }
+
+    @Override
+    public long getPagesFlushed() {
+        return pagesFlushed.sum();
+    }
+
+    @Override
+    public long getFlushRuns() {
+        return flushRuns.sum();
+    }
+
+    @Override
+    public long getPoolExceeded() {
+        return poolExceeded.sum();
+    }
+
+    @Override
+    public long getPinWaits() {
+        return pinWaits.sum();
+    }
+
+    @Override
+    public long getPinWaitTimeouts() {
+        return pinWaitTimeouts.sum();
+    }
+
+    @Override
+    public long getOptimisticFallbacks() {
+        return optimisticFallbacks.sum();
+    }
+
+    @Override
+    public long getCompressedHits() {
+        return compressedHits.sum();
+    }
+
+    @Override
+    public long getZeroFills() {
+        return zeroFills.sum();
+    }
+
+    @Override
+    public long getCheckpointPages() {
+        return checkpointPages.sum();
+    }
+
+    @Override
+    public int getPinQueueDepth() {
+        return bufmgr.getPinQueueDepth();
+    }
+
+    @Override
+    public long getMissLatencyP50Nanos() {
+        return missLatency.percentile(50);
+    }
+
+    @Override
+    public long getMissLatencyP99Nanos() {
+        return missLatency.percentile(99);
+    }
+
+    @Override
+    public long getWriteBackLatencyP50Nanos() {
+        return writeBackLatency.percentile(50);
+    }
+
+    @Override
+    public long getWriteBackLatencyP99Nanos() {
+        return writeBackLatency.percentile(99);
+    }
+
+    @Override
+    public long getPinWaitP50Nanos() {
+        return pinWaitLatency.percentile(50);
+    }
+
+    @Override
+    public long getPinWaitP99Nanos() {
+        return pinWaitLatency.percentile(99);
+    }
+
+    @Override
+    public int getNumBuffers() {
+        return bufmgr.getNumBuffers();
+    }
+
+    @Override
+    public int getNumUnpinned() {
+        return bufmgr.getNumUnpinned();
+    }
+
+    @Override
+    public MetricsSnapshot snapshot() {
+        MetricsSnapshot s = new MetricsSnapshot();
+        s.hits = hits.sum();
+        s.misses = misses.sum();
+        s.loadWaits = loadWaits.sum();
+        s.readAheadPages = readAheadPages.sum();
+        s.evictions = evictions.sum();
+        s.dirtyEvictions = dirtyEvictions.sum();
+        s.pagesFlushed = pagesFlushed.sum();
+        s.flushRuns = flushRuns.sum();
+        s.poolExceeded = poolExceeded.sum();
+        s.pinWaits = pinWaits.sum();
+        s.pinWaitTimeouts = pinWaitTimeouts.sum();
+        s.pinQueueDepth = bufmgr.getPinQueueDepth();
+        s.optimisticFallbacks = optimisticFallbacks.sum();
+        s.compressedHits = compressedHits.sum();
+        s.zeroFills = zeroFills.sum();
+        s.checkpointPages = checkpointPages.sum();
+        s.missLatencyP50Nanos = missLatency.percentile(50);
+        s.missLatencyP99Nanos = missLatency.percentile(99);
+        s.writeBackLatencyP50Nanos = writeBackLatency.percentile(50);
+        s.writeBackLatencyP99Nanos = writeBackLatency.percentile(99);
+        s.pinWaitP50Nanos = pinWaitLatency.percentile(50);
+        s.pinWaitP99Nanos = pinWaitLatency.percentile(99);
+        return s;
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        loadWaits.reset();
+        readAheadPages.reset();
+        evictions.reset();
+        dirtyEvictions.reset();
+        pagesFlushed.reset();
+        flushRuns.reset();
+        poolExceeded.reset();
+        pinWaits.reset();
+        pinWaitTimeouts.reset();
+        optimisticFallbacks.reset();
+        compressedHits.reset();
+        zeroFills.reset();
+        checkpointPages.reset();
+        missLatency.reset();
+        writeBackLatency.reset();
+        pinWaitLatency.reset();
+    }
+}
@@ -0,0 +1,95 @@
+package bufmgr;
+
+/**
+ * The management interface of a buffer manager's metrics, as published over
+ * JMX by BufMgr.registerMBean. Counters run from the creation of the buffer
+ * manager or the last reset; latencies are in nanoseconds.
+ */
+public interface BufMgrMetricsMXBean {
+
+    /** Returns the number of pins of pages that were in the buffer pool. */
+    long getHits();
+
+    /** Returns the number of pins that had to read the page from disk. */
+    long getMisses();
+
+    /** Returns hits / (hits + misses), or 0 if there were no pins. */
+    double getHitRatio();
+
+    /** Returns the number of pins that waited for another thread to read the page in. */
+    long getLoadWaits();
+
+    /** Returns the number of pages read ahead of sequential readers. */
+    long getReadAheadPages();
+
+    /** Returns the number of pages evicted to make room for others. */
+    long getEvictions();
+
+    /** Returns the number of evictions that had to write a dirty page out first. */
+    long getDirtyEvictions();
+
+    /** Returns the number of pages written by flushes and the background writer. */
+    long getPagesFlushed();
+
+    /** Returns the number of writes those pages took, one per run of adjacent pages. */
+    long getFlushRuns();
+
+    /** Returns how often pinPage failed with BufferPoolExceededException, right away or after waiting. */
+    long getPoolExceeded();
+
+    /** Returns the number of pins that found every frame pinned and waited for one. */
+    long getPinWaits();
+
+    /** Returns the number of those that gave up when their timeout ran out. */
+    long getPinWaitTimeouts();
+
+    /** Returns the number of pins waiting for a frame right now. */
+    int getPinQueueDepth();
+
+    /** Returns how often readOptimistic had to pin the page, as it was not in the pool or kept changing. */
+    long getOptimisticFallbacks();
+
+    /** Returns the number of missed pages read from the compressed tier rather than from disk. */
+    long getCompressedHits();
+
+    /** Returns the number of missed pages pinned as empty, zero-filled rather than read. */
+    long getZeroFills();
+
+    /** Returns the number of dirty pages written by checkpoints. */
+    long getCheckpointPages();
+
+    /** Returns the median time to read a missed page (and any read ahead with it). */
+    long getMissLatencyP50Nanos();
+
+    /** Returns the 99th percentile of the time to read a missed page. */
+    long getMissLatencyP99Nanos();
+
+    /** Returns the median time to write out a dirty victim. */
+    long getWriteBackLatencyP50Nanos();
+
+    /** Returns the 99th percentile of the time to write out a dirty victim. */
+    long getWriteBackLatencyP99Nanos();
+
+    /** Returns the median time a pin waited for a frame. */
+    long getPinWaitP50Nanos();
+
+    /** Returns the 99th percentile of the time a pin waited for a frame. */
+    long getPinWaitP99Nanos();
+
+    /** Returns the total number of buffer frames. */
+    int getNumBuffers();
+
+    /** Returns the number of unpinned buffer frames. */
+    int getNumUnpinned();
+
+    /**
+     * Returns all metrics at once. The values are read one after the other, not
+     * atomically, so they may be off by the pins running meanwhile.
+     */
+    MetricsSnapshot snapshot();
+
+    /**
+     * Sets all counters and histograms back to zero.
+     */
+    void reset();
+}
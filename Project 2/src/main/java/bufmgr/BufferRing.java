@@ -0,0 +1,47 @@
+package bufmgr;
+
+/**
+ * A small ring of frames that one sequential reader or writer, such as a scan
+ * of a large file or the build of a temporary file, cycles its pages through.
+ * A page it misses on goes into the ring's next frame, evicting the page the
+ * ring put there a lap before, so the whole scan takes no more than the ring's
+ * frames from the rest of the pool and leaves the pages others use alone. The
+ * ring's frames are kept out of the replacement policy, so the scan does not
+ * disturb what it has learned either. Other threads may still pin the pages in
+ * them, in which case the ring hands that frame over to the policy and takes a
+ * fresh one from the pool for the slot.
+ * <p>
+ * Rings are made by BufMgr.newBufferRing and handed back by
+ * BufMgr.freeBufferRing. A ring belongs to its caller and must not be used by
+ * several threads at once.
+ */
+public class BufferRing {
+
+    /** frames: the frame of each slot, or -1 while the slot has none */
+    final int[] frames;
+
+    /** pages: the page the ring last read into the frame of each slot */
+    final int[] pages;
+
+    /** next: the slot to be used next */
+    int next = 0;
+
+    BufferRing(int size) {
+        frames = new int[size];
+        pages = new int[size];
+        for (int i = 0; i < size; i++) {
+            frames[i] = FrameList.NIL;
+            pages[i] = -1;
+        }
+    }
+
+    /** Returns the number of frames in the ring. */
+    public int size() {
+        return frames.length;
+    }
+
+    /** Moves on to the next slot, once the current one has been filled. */
+    void advance() {
+        next = (next + 1) % frames.length;
+    }
+}
@@ -0,0 +1,149 @@
+package bufmgr;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import diskmgr.DiskMgrException;
+
+/**
+ * A background thread taking a fuzzy checkpoint, as BufMgr.checkpoint does,
+ * every so often. Each checkpoint writes the pages dirty when it starts at a
+ * limited rate, so that the I/O of checkpoints is spread over time instead of
+ * coming in bursts, and pins and unpins go on meanwhile. The checkpoints keep
+ * the part of the log that restart recovery has to redo short.
+ */
+public class Checkpointer implements Runnable {
+
+    /** bufmgr: the buffer manager whose pages are checkpointed */
+    private BufMgr bufmgr;
+
+    /** intervalNanos: how long the thread waits after each checkpoint */
+    private long intervalNanos;
+
+    /** pagesPerSecond: the most pages a checkpoint writes a second, 0 for no limit */
+    private volatile int pagesPerSecond;
+
+    /** thread: the checkpointer thread, null until started */
+    private volatile Thread thread = null;
+
+    private volatile boolean running = false;
+
+    private volatile long checkpoints = 0;
+    private volatile long redoLsn = 0;
+    private volatile Exception lastError = null;
+
+    /**
+     * Creates a checkpointer for the given buffer manager; start() runs it.
+     *
+     * @param intervalMillis
+     *            how long the thread waits after each checkpoint
+     * @param pagesPerSecond
+     *            the most pages a checkpoint writes a second, 0 for no limit
+     * @throws IllegalArgumentException if the interval is not positive or the rate is negative
+     */
+    Checkpointer(BufMgr bufmgr, long intervalMillis, int pagesPerSecond) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Checkpointer: interval must be positive");
+        }
+        this.bufmgr = bufmgr;
+        this.intervalNanos = intervalMillis * 1000000L;
+        setPagesPerSecond(pagesPerSecond);
+    }
+
+    /**
+     * Changes the rate pages are written at, taking effect at the next
+     * checkpoint.
+     *
+     * @throws IllegalArgumentException if the rate is negative
+     */
+    public void setPagesPerSecond(int pagesPerSecond) {
+        if (pagesPerSecond < 0) {
+            throw new IllegalArgumentException("Checkpointer: pagesPerSecond must not be negative");
+        }
+        this.pagesPerSecond = pagesPerSecond;
+    }
+
+    public int getPagesPerSecond() {
+        return pagesPerSecond;
+    }
+
+    /** Returns the number of checkpoints taken so far. */
+    public long getCheckpoints() {
+        return checkpoints;
+    }
+
+    /** Returns where restart recovery begins redo as of the last checkpoint, or 0 if there was none. */
+    public long getRedoLsn() {
+        return redoLsn;
+    }
+
+    /** Returns the last error taking a checkpoint, or null if there was none. */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Starts the checkpointer thread, as a daemon so it never keeps the JVM alive.
+     */
+    synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "bufmgr-checkpointer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Returns whether the checkpointer is to go on, i.e. has not been stopped. */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops the checkpointer thread and waits for it to finish. A checkpoint
+     * it is taking is abandoned after the page being written, which the
+     * checkpoint checks between pages; the thread is not interrupted, lest an
+     * interrupt in the middle of a write close the database or log file.
+     */
+    synchronized void stop() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(t);
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (!running) {
+                break;
+            }
+            try {
+                long lsn = bufmgr.checkpoint(pagesPerSecond, this);
+                if (lsn != 0) {
+                    redoLsn = lsn;
+                    checkpoints++;
+                }
+            } catch (InterruptedException e) {
+                //interrupted by someone else; the checkpoint is left unfinished
+            } catch (DiskMgrException | IOException | IllegalStateException e) {
+                lastError = e;
+            }
+        }
+    }
+}
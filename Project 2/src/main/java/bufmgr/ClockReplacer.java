@@ -0,0 +1,129 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * Clock (second chance) replacement. Every pin sets the frame's reference bit;
+ * the clock hand sweeps over the frames, clearing reference bits, and evicts
+ * the first unpinned frame whose bit is already clear. Hated frames are
+ * evicted before the hand moves at all, and a loved frame whose bit is clear
+ * is passed over once more.
+ */
+class ClockReplacer implements Replacer {
+
+    /** resident: whether each frame holds a page that can be evicted */
+    private boolean[] resident;
+
+    /** pinned: whether each resident frame is currently pinned */
+    private boolean[] pinned;
+
+    /** refBit: whether each frame has been pinned since the hand last passed it */
+    private boolean[] refBit;
+
+    /** loved: whether each frame is to be passed over once more */
+    private boolean[] loved;
+
+    /** hated: unpinned frames to evict first, the one hated first at the head */
+    private FrameList hated;
+
+    /** hand: the next frame the clock hand will look at */
+    private int hand = 0;
+
+    ClockReplacer(int numbufs) {
+        resident = new boolean[numbufs];
+        pinned = new boolean[numbufs];
+        refBit = new boolean[numbufs];
+        loved = new boolean[numbufs];
+        hated = new FrameList(numbufs);
+    }
+
+    @Override
+    public void pin(int frameNo, int pageno) {
+        resident[frameNo] = true;
+        pinned[frameNo] = true;
+        refBit[frameNo] = true;
+        loved[frameNo] = false;
+        hated.remove(frameNo);
+    }
+
+    @Override
+    public void unpin(int frameNo) {
+        pinned[frameNo] = false;
+    }
+
+    @Override
+    public void unpin(int frameNo, UnpinHint hint) {
+        pinned[frameNo] = false;
+        if (hint == UnpinHint.HATE) {
+            refBit[frameNo] = false;
+            hated.addLast(frameNo);
+        } else {
+            loved[frameNo] = hint == UnpinHint.LOVE;
+        }
+    }
+
+    @Override
+    public int pickVictim(int pageno) {
+        int f = hated.removeFirst();
+        if (f != FrameList.NIL) {
+            resident[f] = false;
+            return f;
+        }
+
+        int numbufs = resident.length;
+        // three full sweeps are enough: the first one clears every reference bit, the
+        // second one every loved frame's love
+        for (int i = 0; i < 3 * numbufs; i++) {
+            f = hand;
+            hand = (hand + 1) % numbufs;
+            if (!resident[f] || pinned[f]) {
+                continue;
+            }
+            if (refBit[f]) {
+                refBit[f] = false;
+            } else if (loved[f]) {
+                loved[f] = false;
+            } else {
+                resident[f] = false;
+                return f;
+            }
+        }
+        return FrameList.NIL;
+    }
+
+    @Override
+    public void reinstate(int frameNo, int pageno) {
+        //its reference bit stays clear, so the hand takes it the next time round
+        resident[frameNo] = true;
+    }
+
+    @Override
+    public void free(int frameNo) {
+        resident[frameNo] = false;
+        pinned[frameNo] = false;
+        refBit[frameNo] = false;
+        loved[frameNo] = false;
+        hated.remove(frameNo);
+    }
+
+    @Override
+    public void pageFreed(int pageno) {
+        //nothing is remembered of pages that left the pool
+    }
+
+    @Override
+    public void resize(int numbufs) {
+        if (numbufs > resident.length) {
+            resident = Arrays.copyOf(resident, numbufs);
+            pinned = Arrays.copyOf(pinned, numbufs);
+            refBit = Arrays.copyOf(refBit, numbufs);
+            loved = Arrays.copyOf(loved, numbufs);
+            hated.ensureCapacity(numbufs);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Clock";
+    }
+}
@@ -0,0 +1,136 @@
+package bufmgr;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A second, compressed cache tier below the buffer pool. Pages evicted from
+ * the pool while clean, which includes dirty ones once they have been written
+ * out, are compressed with PageCodec and kept here, within a budget of bytes,
+ * so that pinning them again costs a decompression rather than a disk read.
+ * A page leaves the tier when it is read back into the pool or freed, and the
+ * page used least recently goes first when the budget is exceeded. Pages that
+ * do not compress are not kept.
+ */
+public class CompressedTier {
+
+    /** ENTRY_OVERHEAD: bytes counted for each page kept besides its compressed bytes */
+    static final int ENTRY_OVERHEAD = 64;
+
+    /** pages: the compressed pages by page number, least recently used first */
+    private final LinkedHashMap<Integer, byte[]> pages = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+
+    /** budget: the most bytes kept */
+    private long budget;
+
+    /** bytes: the bytes kept, compressed pages and overhead */
+    private long bytes = 0;
+
+    /** pageSize: the uncompressed size of the pages kept */
+    private int pageSize = 0;
+
+    CompressedTier(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Compresses a page evicted from the pool and keeps it, replacing any copy
+     * of it kept before.
+     */
+    void put(int pageno, byte[] data) {
+        byte[] compressed = PageCodec.compress(data);
+        synchronized (this) {
+            remove(pageno);
+            long size = compressed.length + ENTRY_OVERHEAD;
+            if (compressed.length >= data.length || size > budget) {
+                return;
+            }
+            pages.put(pageno, compressed);
+            bytes += size;
+            pageSize = data.length;
+            trim();
+        }
+    }
+
+    /**
+     * Removes a page and decompresses it into the given bytes, as long as the
+     * page.
+     *
+     * @return whether the page was kept
+     */
+    boolean take(int pageno, byte[] data) {
+        byte[] compressed;
+        synchronized (this) {
+            compressed = pages.get(pageno);
+            if (compressed == null) {
+                return false;
+            }
+            remove(pageno);
+        }
+        PageCodec.decompress(compressed, data);
+        return true;
+    }
+
+    /**
+     * Drops the copy of a page, if one is kept.
+     */
+    synchronized void remove(int pageno) {
+        byte[] compressed = pages.remove(pageno);
+        if (compressed != null) {
+            drop(compressed);
+        }
+    }
+
+    /**
+     * Changes the budget, dropping the least recently used pages until the tier
+     * fits in it.
+     */
+    synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    /**
+     * Drops the least recently used pages while over budget.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Integer, byte[]>> it = pages.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            byte[] compressed = it.next().getValue();
+            it.remove();
+            drop(compressed);
+        }
+    }
+
+    private void drop(byte[] compressed) {
+        bytes -= compressed.length + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Returns whether a copy of the page is kept.
+     */
+    public synchronized boolean contains(int pageno) {
+        return pages.containsKey(pageno);
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getPages() {
+        return pages.size();
+    }
+
+    /**
+     * Returns how many times larger the pages kept are than the bytes they
+     * take, or 0 if none are kept.
+     */
+    public synchronized double getCompressionRatio() {
+        return bytes == 0 ? 0 : (double) pages.size() * pageSize / bytes;
+    }
+}
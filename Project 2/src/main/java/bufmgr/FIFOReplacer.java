@@ -0,0 +1,86 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * First in, first out replacement. Frames are queued in the order their pin
+ * count dropped to zero, and the frame that has been unpinned the longest is
+ * evicted first. Hated frames are queued at the head instead, and a loved
+ * frame reaching the head is queued again at the tail, once.
+ */
+class FIFOReplacer implements Replacer {
+
+    /** fifo: unpinned frames, with the frame unpinned the longest time ago at the head */
+    private FrameList fifo;
+
+    /** loved: whether each frame is to be passed over once */
+    private boolean[] loved;
+
+    FIFOReplacer(int numbufs) {
+        fifo = new FrameList(numbufs);
+        loved = new boolean[numbufs];
+    }
+
+    @Override
+    public void pin(int frameNo, int pageno) {
+        fifo.remove(frameNo);
+        loved[frameNo] = false;
+    }
+
+    @Override
+    public void unpin(int frameNo) {
+        fifo.addLast(frameNo);
+    }
+
+    @Override
+    public void unpin(int frameNo, UnpinHint hint) {
+        if (hint == UnpinHint.HATE) {
+            fifo.addFirst(frameNo);
+        } else {
+            loved[frameNo] = hint == UnpinHint.LOVE;
+            fifo.addLast(frameNo);
+        }
+    }
+
+    @Override
+    public int pickVictim(int pageno) {
+        while (true) {
+            int f = fifo.removeFirst();
+            if (f == FrameList.NIL || !loved[f]) {
+                return f;
+            }
+            loved[f] = false;
+            fifo.addLast(f);
+        }
+    }
+
+    @Override
+    public void reinstate(int frameNo, int pageno) {
+        //back to the head, where it was taken from
+        fifo.addFirst(frameNo);
+    }
+
+    @Override
+    public void free(int frameNo) {
+        fifo.remove(frameNo);
+        loved[frameNo] = false;
+    }
+
+    @Override
+    public void pageFreed(int pageno) {
+        //nothing is remembered of pages that left the pool
+    }
+
+    @Override
+    public void resize(int numbufs) {
+        fifo.ensureCapacity(numbufs);
+        if (numbufs > loved.length) {
+            loved = Arrays.copyOf(loved, numbufs);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "FIFO";
+    }
+}
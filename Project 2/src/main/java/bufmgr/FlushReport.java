@@ -0,0 +1,32 @@
+package bufmgr;
+
+/**
+ * What a flush of the buffer pool wrote: the number of pages, and the number
+ * of runs of adjacent pages they were written in, one I/O per run.
+ */
+public class FlushReport {
+
+    /** pages: the number of pages written */
+    private final int pages;
+
+    /** runs: the number of writes those pages took */
+    private final int runs;
+
+    public FlushReport(int pages, int runs) {
+        this.pages = pages;
+        this.runs = runs;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    @Override
+    public String toString() {
+        return pages + " pages in " + runs + " runs";
+    }
+}
@@ -1,16 +1,106 @@
 package bufmgr;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * A frame descriptor; contains info about each page in the buffer pool.
  */
-public class FrameDescriptor 
+public class FrameDescriptor
 {
+	/** Atomic access to pinCount. */
+	private static final AtomicIntegerFieldUpdater<FrameDescriptor> PIN_COUNT =
+			AtomicIntegerFieldUpdater.newUpdater(FrameDescriptor.class, "pinCount");
+
 	/** Identifies the frame's page. */
-	public int pageno = -1;
+	public volatile int pageno = -1;
 
 	/** The frame's pin count. */
-	public int pinCount;
+	public volatile int pinCount;
 
 	/** The frame's dirty status. */
-	public boolean dirtyBit;
+	public volatile boolean dirtyBit;
+
+	/**
+	 * The LSN of the last logged change of the frame's page, 0 if there was
+	 * none since it was read in. The page is not written before the log is
+	 * durable up to here. Only changed under the frame's I/O latch.
+	 */
+	public volatile long pageLsn;
+
+	/**
+	 * The recLSN of the frame's page: the LSN of the first logged change
+	 * since the page was last written, 0 if there was none. Redo of the page
+	 * starts here. Only changed under the frame's I/O latch.
+	 */
+	public volatile long recLsn;
+
+	/**
+	 * The frame's I/O latch. Held while the buffer manager reads a page into
+	 * the frame or writes the frame's page out, so that a page is never read
+	 * from disk while a newer copy of it is still on its way there.
+	 */
+	final ReentrantLock ioLatch = new ReentrantLock();
+
+	/** Whether the frame's page is still being read in; pinners wait on ioLatch. */
+	volatile boolean loading;
+
+	/**
+	 * Whether a thread has taken the frame off the free list and has yet to
+	 * fill it or hand it back. Such a frame looks empty, but must not be put
+	 * on the free list again by a pool growing back over it. Only changed
+	 * under the replacer's monitor.
+	 */
+	boolean taken;
+
+	/**
+	 * Whether a replacer has handed the frame out as a victim that has yet to
+	 * be evicted or handed back. The replacer no longer counts the frame as a
+	 * candidate, so it is reinstated rather than reported again if the victim
+	 * is not evicted after all. Only changed under the replacer's monitor.
+	 */
+	boolean picked;
+
+	/**
+	 * The buffer ring the frame's page was read into, or null if the frame is
+	 * its partition's. A ring's frames are not known to any replacer: the ring
+	 * recycles them itself. Only changed under the replacer's monitor.
+	 */
+	BufferRing ring;
+
+	/**
+	 * The frame's version, for optimistic readers. Odd while the frame is
+	 * pinned, since whoever pinned it may be changing the page; even while it
+	 * is not. It moves on whenever the frame is pinned, unpinned or reset, so
+	 * a reader that sees the same even version before and after reading the
+	 * page has read it whole, with nobody changing or replacing it meanwhile.
+	 * Only changed under the page table lock of the frame's page.
+	 */
+	volatile long version;
+
+	/**
+	 * Increments the pin count and returns the new value. The caller holds the
+	 * page table lock of the frame's page.
+	 */
+	int pin()
+	{
+		int count = PIN_COUNT.incrementAndGet(this);
+		if (count == 1) {
+			version++;
+		}
+		return count;
+	}
+
+	/**
+	 * Decrements the pin count and returns the new value. The caller holds the
+	 * page table lock of the frame's page.
+	 */
+	int unpin()
+	{
+		int count = PIN_COUNT.decrementAndGet(this);
+		if (count == 0) {
+			version++;
+		}
+		return count;
+	}
 }
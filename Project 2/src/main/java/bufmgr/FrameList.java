@@ -0,0 +1,168 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * An intrusive doubly-linked list of frame numbers. The links live in primitive
+ * arrays indexed by frame number, so adding, removing and taking the head of
+ * the list are all O(1) and never allocate. A frame is in the list at most once.
+ */
+class FrameList {
+
+    /** Marks the end of the list in the link arrays. */
+    static final int NIL = -1;
+
+    /** prev: previous frame in the list for each linked frame */
+    private int[] prev;
+
+    /** next: next frame in the list for each linked frame */
+    private int[] next;
+
+    /** linked: whether each frame is currently in the list */
+    private boolean[] linked;
+
+    private int head = NIL;
+    private int tail = NIL;
+    private int size = 0;
+
+    /**
+     * Creates an empty list able to hold frames 0 to capacity - 1.
+     */
+    FrameList(int capacity) {
+        prev = new int[capacity];
+        next = new int[capacity];
+        linked = new boolean[capacity];
+    }
+
+    /**
+     * Makes room for frames up to capacity - 1, keeping the list as it is.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > linked.length) {
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+            linked = Arrays.copyOf(linked, capacity);
+        }
+    }
+
+    /**
+     * Appends a frame at the tail of the list. Does nothing if it is already linked.
+     */
+    void addLast(int frameNo) {
+        if (linked[frameNo]) {
+            return;
+        }
+        prev[frameNo] = tail;
+        next[frameNo] = NIL;
+        if (tail == NIL) {
+            head = frameNo;
+        } else {
+            next[tail] = frameNo;
+        }
+        tail = frameNo;
+        linked[frameNo] = true;
+        size++;
+    }
+
+    /**
+     * Inserts a frame at the head of the list. Does nothing if it is already linked.
+     */
+    void addFirst(int frameNo) {
+        if (linked[frameNo]) {
+            return;
+        }
+        prev[frameNo] = NIL;
+        next[frameNo] = head;
+        if (head == NIL) {
+            tail = frameNo;
+        } else {
+            prev[head] = frameNo;
+        }
+        head = frameNo;
+        linked[frameNo] = true;
+        size++;
+    }
+
+    /**
+     * Unlinks a frame from the list.
+     *
+     * @return true if the frame was in the list
+     */
+    boolean remove(int frameNo) {
+        if (!linked[frameNo]) {
+            return false;
+        }
+        int p = prev[frameNo];
+        int n = next[frameNo];
+        if (p == NIL) {
+            head = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NIL) {
+            tail = p;
+        } else {
+            prev[n] = p;
+        }
+        linked[frameNo] = false;
+        size--;
+        return true;
+    }
+
+    /**
+     * Unlinks and returns the frame at the head of the list, or NIL if it is empty.
+     */
+    int removeFirst() {
+        int frameNo = head;
+        if (frameNo != NIL) {
+            remove(frameNo);
+        }
+        return frameNo;
+    }
+
+    /**
+     * Unlinks and returns the frame at the tail of the list, or NIL if it is empty.
+     */
+    int removeLast() {
+        int frameNo = tail;
+        if (frameNo != NIL) {
+            remove(frameNo);
+        }
+        return frameNo;
+    }
+
+    /** Returns the frame at the head of the list, or NIL if it is empty. */
+    int first() {
+        return head;
+    }
+
+    /** Returns the frame at the tail of the list, or NIL if it is empty. */
+    int last() {
+        return tail;
+    }
+
+    /** Returns the frame after the given linked frame, or NIL at the tail. */
+    int next(int frameNo) {
+        return next[frameNo];
+    }
+
+    /** Returns the frame before the given linked frame, or NIL at the head. */
+    int prev(int frameNo) {
+        return prev[frameNo];
+    }
+
+    /** Returns whether the frame is currently in the list. */
+    boolean contains(int frameNo) {
+        return linked[frameNo];
+    }
+
+    /** Returns the number of frames in the list. */
+    int size() {
+        return size;
+    }
+
+    /** Returns whether the list is empty. */
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,249 @@
+package bufmgr;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). Each page keeps the times of
+ * its last K uncorrelated references, and the victim is the unpinned frame
+ * whose K-th most recent reference is oldest. Pages referenced fewer than K
+ * times count as infinitely old, so a one-off sequential scan is evicted before
+ * hot pages that are referenced again and again, such as index buckets.
+ * <p>
+ * Time is measured in pins. A reference that comes within the correlated
+ * reference period of the previous reference to the same page is treated as
+ * part of the same access and does not count as a new one. The history of an
+ * evicted page is kept in a bounded retained-history table, so a page that
+ * comes back soon after eviction is not mistaken for a cold one.
+ * <p>
+ * A HATE hint wipes the history of the page, which makes it older than any
+ * page referenced since, and a LOVE hint spares the page once when it would be
+ * evicted, by giving it K references at that time.
+ */
+class LRUKReplacer implements Replacer {
+
+    /** Number of references tracked per page unless the policy name says otherwise. */
+    static final int DEFAULT_K = 2;
+
+    /** Default correlated reference period, in pins. */
+    static final long DEFAULT_CORRELATED_PERIOD = 4;
+
+    /**
+     * The reference history of a page.
+     */
+    private static class History {
+
+        /** pageno: the page this history belongs to */
+        int pageno;
+
+        /** hist: times of the last K uncorrelated references, most recent first; 0 if there was none */
+        long[] hist;
+
+        /** last: time of the most recent reference, correlated or not */
+        long last;
+
+        History(int pageno, int k) {
+            this.pageno = pageno;
+            this.hist = new long[k];
+        }
+    }
+
+    /** k: the number of references considered */
+    private int k;
+
+    /** correlatedPeriod: references closer than this (in pins) to the previous one are correlated */
+    private long correlatedPeriod;
+
+    /** resident: history of the page in each frame, null for frames this replacer does not know about */
+    private History[] resident;
+
+    /** pinned: whether each resident frame is currently pinned */
+    private boolean[] pinned;
+
+    /** loved: whether each frame is to be passed over once */
+    private boolean[] loved;
+
+    /** retained: histories of evicted pages, oldest eviction first */
+    private Map<Integer, History> retained;
+
+    /** clock: logical time, advanced on every pin */
+    private long clock = 0;
+
+    LRUKReplacer(int numbufs) {
+        this(numbufs, DEFAULT_K, DEFAULT_CORRELATED_PERIOD, numbufs);
+    }
+
+    /**
+     * Creates an LRU-K replacer.
+     *
+     * @param numbufs
+     *            number of frames in the buffer pool
+     * @param k
+     *            number of references considered, at least 1
+     * @param correlatedPeriod
+     *            correlated reference period, in pins
+     * @param retainedPages
+     *            maximum number of evicted pages whose history is kept
+     */
+    LRUKReplacer(int numbufs, int k, long correlatedPeriod, final int retainedPages) {
+        if (k < 1) {
+            throw new IllegalArgumentException("LRU-K: K must be at least 1, got " + k);
+        }
+        this.k = k;
+        this.correlatedPeriod = correlatedPeriod;
+        resident = new History[numbufs];
+        pinned = new boolean[numbufs];
+        loved = new boolean[numbufs];
+        retained = new LinkedHashMap<Integer, History>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, History> eldest) {
+                return size() > retainedPages;
+            }
+        };
+    }
+
+    @Override
+    public void pin(int frameNo, int pageno) {
+        long now = ++clock;
+        pinned[frameNo] = true;
+        loved[frameNo] = false;
+        History h = resident[frameNo];
+
+        //the page was already resident
+        if (h != null && h.pageno == pageno) {
+            if (now - h.last > correlatedPeriod) {
+                //a new uncorrelated reference; close the correlated period of the previous one
+                //by moving the older references forward by its length
+                long correl = h.last - h.hist[0];
+                for (int i = k - 1; i > 0; i--) {
+                    h.hist[i] = h.hist[i - 1] == 0 ? 0 : h.hist[i - 1] + correl;
+                }
+                h.hist[0] = now;
+            }
+            h.last = now;
+            return;
+        }
+
+        //the page was just read in; pick up its history if it was evicted recently
+        h = retained.remove(pageno);
+        if (h == null) {
+            h = new History(pageno, k);
+        } else {
+            for (int i = k - 1; i > 0; i--) {
+                h.hist[i] = h.hist[i - 1];
+            }
+        }
+        h.hist[0] = now;
+        h.last = now;
+        resident[frameNo] = h;
+    }
+
+    @Override
+    public void unpin(int frameNo) {
+        pinned[frameNo] = false;
+    }
+
+    @Override
+    public void unpin(int frameNo, UnpinHint hint) {
+        pinned[frameNo] = false;
+        History h = resident[frameNo];
+        if (hint == UnpinHint.HATE && h != null) {
+            Arrays.fill(h.hist, 0);
+            h.last = 0;
+        } else {
+            loved[frameNo] = hint == UnpinHint.LOVE;
+        }
+    }
+
+    /**
+     * Scans the unpinned frames for the one with the largest backward K-distance,
+     * skipping pages still inside their correlated reference period. If every
+     * unpinned page is, the oldest of them is evicted anyway. A loved frame
+     * picked that way is spared, as if referenced K times just now, and the
+     * scan done again.
+     */
+    @Override
+    public int pickVictim(int pageno) {
+        while (true) {
+            int victim = oldestUnpinned();
+            if (victim == FrameList.NIL || !loved[victim]) {
+                if (victim != FrameList.NIL) {
+                    retained.put(resident[victim].pageno, resident[victim]);
+                    resident[victim] = null;
+                }
+                return victim;
+            }
+            loved[victim] = false;
+            Arrays.fill(resident[victim].hist, clock);
+            resident[victim].last = clock;
+        }
+    }
+
+    /**
+     * Returns the unpinned frame pickVictim evicts, or NIL if there is none.
+     */
+    private int oldestUnpinned() {
+        int victim = FrameList.NIL;
+        int fallback = FrameList.NIL;
+        for (int f = 0; f < resident.length; f++) {
+            History h = resident[f];
+            if (h == null || pinned[f]) {
+                continue;
+            }
+            if (fallback == FrameList.NIL || older(h, resident[fallback])) {
+                fallback = f;
+            }
+            if (clock - h.last > correlatedPeriod && (victim == FrameList.NIL || older(h, resident[victim]))) {
+                victim = f;
+            }
+        }
+        return victim == FrameList.NIL ? fallback : victim;
+    }
+
+    /**
+     * Returns whether a should be evicted before b: its K-th reference is older,
+     * or both are equally old (typically, never made) and its last one is older.
+     */
+    private boolean older(History a, History b) {
+        if (a.hist[k - 1] != b.hist[k - 1]) {
+            return a.hist[k - 1] < b.hist[k - 1];
+        }
+        return a.hist[0] < b.hist[0];
+    }
+
+    @Override
+    public void reinstate(int frameNo, int pageno) {
+        History h = retained.remove(pageno);
+        resident[frameNo] = h != null ? h : new History(pageno, k);
+    }
+
+    @Override
+    public void free(int frameNo) {
+        resident[frameNo] = null;
+        pinned[frameNo] = false;
+        loved[frameNo] = false;
+    }
+
+    @Override
+    public void pageFreed(int pageno) {
+        //the page is gone from disk too, so its history is worthless
+        retained.remove(pageno);
+    }
+
+    @Override
+    public void resize(int numbufs) {
+        if (numbufs > resident.length) {
+            resident = Arrays.copyOf(resident, numbufs);
+            pinned = Arrays.copyOf(pinned, numbufs);
+            loved = Arrays.copyOf(loved, numbufs);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "LRU-" + k;
+    }
+}
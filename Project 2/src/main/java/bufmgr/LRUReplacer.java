@@ -0,0 +1,110 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * Least recently used replacement. Resident frames are kept in the order they
+ * were last pinned, and the victim is the unpinned frame whose page was
+ * referenced the longest time ago. A hated frame is moved to the head, as if
+ * never referenced; a loved frame is moved to the tail, once, when it would
+ * be evicted.
+ */
+class LRUReplacer implements Replacer {
+
+    /** recency: resident frames, with the least recently pinned frame at the head */
+    protected FrameList recency;
+
+    /** pinned: whether each resident frame is currently pinned */
+    protected boolean[] pinned;
+
+    /** loved: whether each frame is to be passed over once */
+    protected boolean[] loved;
+
+    LRUReplacer(int numbufs) {
+        recency = new FrameList(numbufs);
+        pinned = new boolean[numbufs];
+        loved = new boolean[numbufs];
+    }
+
+    @Override
+    public void pin(int frameNo, int pageno) {
+        recency.remove(frameNo);
+        recency.addLast(frameNo);
+        pinned[frameNo] = true;
+        loved[frameNo] = false;
+    }
+
+    @Override
+    public void unpin(int frameNo) {
+        pinned[frameNo] = false;
+    }
+
+    @Override
+    public void unpin(int frameNo, UnpinHint hint) {
+        pinned[frameNo] = false;
+        if (hint == UnpinHint.HATE) {
+            recency.remove(frameNo);
+            recency.addFirst(frameNo);
+        } else {
+            loved[frameNo] = hint == UnpinHint.LOVE;
+        }
+    }
+
+    @Override
+    public int pickVictim(int pageno) {
+        //a pass that spared a loved frame may have walked past it, so scan again
+        boolean spared;
+        do {
+            spared = false;
+            int f = recency.first();
+            while (f != FrameList.NIL) {
+                int next = recency.next(f);
+                if (!pinned[f]) {
+                    if (!loved[f]) {
+                        recency.remove(f);
+                        return f;
+                    }
+                    //a loved frame starts over as the most recently used one
+                    loved[f] = false;
+                    recency.remove(f);
+                    recency.addLast(f);
+                    spared = true;
+                }
+                f = next;
+            }
+        } while (spared);
+        return FrameList.NIL;
+    }
+
+    @Override
+    public void reinstate(int frameNo, int pageno) {
+        //back to the least recently used end, where it was taken from
+        recency.addFirst(frameNo);
+    }
+
+    @Override
+    public void free(int frameNo) {
+        recency.remove(frameNo);
+        pinned[frameNo] = false;
+        loved[frameNo] = false;
+    }
+
+    @Override
+    public void pageFreed(int pageno) {
+        //nothing is remembered of pages that left the pool
+    }
+
+    @Override
+    public void resize(int numbufs) {
+        recency.ensureCapacity(numbufs);
+        if (numbufs > pinned.length) {
+            pinned = Arrays.copyOf(pinned, numbufs);
+            loved = Arrays.copyOf(loved, numbufs);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "LRU";
+    }
+}
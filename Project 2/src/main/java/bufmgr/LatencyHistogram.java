@@ -0,0 +1,104 @@
+package bufmgr;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets, in the way
+ * of HdrHistogram: values below 16 get a bucket each, and every power of two
+ * above is split into 16 buckets, so a recorded value is known to within
+ * 1/16th of it. Recording is one array increment and never allocates; counts
+ * are updated atomically, so any number of threads may record at once.
+ */
+class LatencyHistogram {
+
+    /** SUB_BITS: log2 of the number of buckets per power of two */
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB = 1 << SUB_BITS;
+
+    /** BUCKETS: enough for any non-negative long, whose highest bit is at most bit 62 */
+    private static final int BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+
+    /** counts: the number of values recorded in each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a latency; negative values count as 0.
+     */
+    void record(long nanos) {
+        counts.incrementAndGet(bucketFor(Math.max(0, nanos)));
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the value at the given percentile, as the highest value of the
+     * bucket it falls in, or 0 if nothing was recorded.
+     *
+     * @param percentile
+     *            between 0 and 100
+     */
+    long percentile(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestOf(i);
+            }
+        }
+        return highestOf(snapshot.length - 1);
+    }
+
+    /**
+     * Clears all counts.
+     */
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int bucketFor(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB;
+        return SUB + shift * SUB + sub;
+    }
+
+    static long lowestOf(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int shift = (bucket - SUB) / SUB;
+        int sub = (bucket - SUB) % SUB;
+        return (long) (SUB + sub) << shift;
+    }
+
+    static long highestOf(int bucket) {
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return lowestOf(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,60 @@
+package bufmgr;
+
+/**
+ * Most recently used replacement. Evicts the unpinned frame whose page was
+ * referenced last, which keeps the start of a file resident while a loop of
+ * sequential scans larger than the pool runs over it. A hated frame is moved
+ * to the tail, where the victims come from, and a loved frame is moved to the
+ * head, once, when it would be evicted.
+ */
+class MRUReplacer extends LRUReplacer {
+
+    MRUReplacer(int numbufs) {
+        super(numbufs);
+    }
+
+    @Override
+    public void unpin(int frameNo, UnpinHint hint) {
+        pinned[frameNo] = false;
+        if (hint == UnpinHint.HATE) {
+            recency.remove(frameNo);
+            recency.addLast(frameNo);
+        } else {
+            loved[frameNo] = hint == UnpinHint.LOVE;
+        }
+    }
+
+    @Override
+    public int pickVictim(int pageno) {
+        boolean spared;
+        do {
+            spared = false;
+            int f = recency.last();
+            while (f != FrameList.NIL) {
+                int prev = recency.prev(f);
+                if (!pinned[f]) {
+                    if (!loved[f]) {
+                        recency.remove(f);
+                        return f;
+                    }
+                    loved[f] = false;
+                    recency.remove(f);
+                    recency.addFirst(f);
+                    spared = true;
+                }
+                f = prev;
+            }
+        } while (spared);
+        return FrameList.NIL;
+    }
+
+    @Override
+    public void reinstate(int frameNo, int pageno) {
+        recency.addLast(frameNo);
+    }
+
+    @Override
+    public String getName() {
+        return "MRU";
+    }
+}
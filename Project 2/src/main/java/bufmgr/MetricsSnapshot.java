@@ -0,0 +1,177 @@
+package bufmgr;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * The metrics of a buffer manager at one point in time; see
+ * BufMgrMetricsMXBean for what each of them counts.
+ */
+public class MetricsSnapshot {
+
+    long hits;
+    long misses;
+    long loadWaits;
+    long readAheadPages;
+    long evictions;
+    long dirtyEvictions;
+    long pagesFlushed;
+    long flushRuns;
+    long poolExceeded;
+    long pinWaits;
+    long pinWaitTimeouts;
+    int pinQueueDepth;
+    long optimisticFallbacks;
+    long compressedHits;
+    long zeroFills;
+    long checkpointPages;
+    long missLatencyP50Nanos;
+    long missLatencyP99Nanos;
+    long writeBackLatencyP50Nanos;
+    long writeBackLatencyP99Nanos;
+    long pinWaitP50Nanos;
+    long pinWaitP99Nanos;
+
+    /**
+     * Creates an empty snapshot; BufMgrMetrics fills in the fields.
+     */
+    MetricsSnapshot() {
+    }
+
+    /**
+     * Rebuilds a snapshot from its open type, as a JMX client sees it.
+     */
+    public static MetricsSnapshot from(CompositeData cd) {
+        MetricsSnapshot s = new MetricsSnapshot();
+        s.hits = (Long) cd.get("hits");
+        s.misses = (Long) cd.get("misses");
+        s.loadWaits = (Long) cd.get("loadWaits");
+        s.readAheadPages = (Long) cd.get("readAheadPages");
+        s.evictions = (Long) cd.get("evictions");
+        s.dirtyEvictions = (Long) cd.get("dirtyEvictions");
+        s.pagesFlushed = (Long) cd.get("pagesFlushed");
+        s.flushRuns = (Long) cd.get("flushRuns");
+        s.poolExceeded = (Long) cd.get("poolExceeded");
+        s.pinWaits = (Long) cd.get("pinWaits");
+        s.pinWaitTimeouts = (Long) cd.get("pinWaitTimeouts");
+        s.pinQueueDepth = (Integer) cd.get("pinQueueDepth");
+        s.optimisticFallbacks = (Long) cd.get("optimisticFallbacks");
+        s.compressedHits = (Long) cd.get("compressedHits");
+        s.zeroFills = (Long) cd.get("zeroFills");
+        s.checkpointPages = (Long) cd.get("checkpointPages");
+        s.missLatencyP50Nanos = (Long) cd.get("missLatencyP50Nanos");
+        s.missLatencyP99Nanos = (Long) cd.get("missLatencyP99Nanos");
+        s.writeBackLatencyP50Nanos = (Long) cd.get("writeBackLatencyP50Nanos");
+        s.writeBackLatencyP99Nanos = (Long) cd.get("writeBackLatencyP99Nanos");
+        s.pinWaitP50Nanos = (Long) cd.get("pinWaitP50Nanos");
+        s.pinWaitP99Nanos = (Long) cd.get("pinWaitP99Nanos");
+        return s;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Returns hits / (hits + misses), or 0 if there were no pins. */
+    public double getHitRatio() {
+        long pins = hits + misses;
+        return pins == 0 ? 0 : (double) hits / pins;
+    }
+
+    public long getLoadWaits() {
+        return loadWaits;
+    }
+
+    public long getReadAheadPages() {
+        return readAheadPages;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getDirtyEvictions() {
+        return dirtyEvictions;
+    }
+
+    public long getPagesFlushed() {
+        return pagesFlushed;
+    }
+
+    public long getFlushRuns() {
+        return flushRuns;
+    }
+
+    public long getPoolExceeded() {
+        return poolExceeded;
+    }
+
+    public long getPinWaits() {
+        return pinWaits;
+    }
+
+    public long getPinWaitTimeouts() {
+        return pinWaitTimeouts;
+    }
+
+    public int getPinQueueDepth() {
+        return pinQueueDepth;
+    }
+
+    public long getOptimisticFallbacks() {
+        return optimisticFallbacks;
+    }
+
+    public long getCompressedHits() {
+        return compressedHits;
+    }
+
+    public long getZeroFills() {
+        return zeroFills;
+    }
+
+    public long getCheckpointPages() {
+        return checkpointPages;
+    }
+
+    public long getMissLatencyP50Nanos() {
+        return missLatencyP50Nanos;
+    }
+
+    public long getMissLatencyP99Nanos() {
+        return missLatencyP99Nanos;
+    }
+
+    public long getWriteBackLatencyP50Nanos() {
+        return writeBackLatencyP50Nanos;
+    }
+
+    public long getWriteBackLatencyP99Nanos() {
+        return writeBackLatencyP99Nanos;
+    }
+
+    public long getPinWaitP50Nanos() {
+        return pinWaitP50Nanos;
+    }
+
+    public long getPinWaitP99Nanos() {
+        return pinWaitP99Nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + " misses=" + misses + " hitRatio=" + getHitRatio() + " loadWaits=" + loadWaits
+                + " readAheadPages=" + readAheadPages + " evictions=" + evictions + " dirtyEvictions="
+                + dirtyEvictions + " pagesFlushed=" + pagesFlushed + " flushRuns=" + flushRuns + " poolExceeded="
+                + poolExceeded + " pinWaits=" + pinWaits + " pinWaitTimeouts=" + pinWaitTimeouts
+                + " pinQueueDepth=" + pinQueueDepth + " optimisticFallbacks=" + optimisticFallbacks
+                + " compressedHits=" + compressedHits + " zeroFills=" + zeroFills + " checkpointPages=" + checkpointPages
+                + " missLatencyP50=" + missLatencyP50Nanos
+                + "ns missLatencyP99=" + missLatencyP99Nanos + "ns writeBackLatencyP50=" + writeBackLatencyP50Nanos
+                + "ns writeBackLatencyP99=" + writeBackLatencyP99Nanos + "ns pinWaitP50=" + pinWaitP50Nanos
+                + "ns pinWaitP99=" + pinWaitP99Nanos + "ns";
+    }
+}
@@ -0,0 +1,172 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * A small LZ77 compressor for pages, in the block format of LZ4. The output
+ * is a run of sequences, each a token byte holding the number of literals in
+ * its high four bits and the match length less MIN_MATCH in its low four bits,
+ * either extended by bytes of 255 and a last byte below 255 when it is 15, then
+ * the literals and then the match's offset back from the current position as
+ * two bytes, low byte first. The last sequence has literals only. Matches are
+ * found through a table of the last position of each hashed four bytes, so
+ * compressing takes one pass and no more than a few kilobytes of memory; runs
+ * of zeroes, as in sparsely filled pages, turn into matches at offset 1.
+ */
+final class PageCodec {
+
+    /** MIN_MATCH: the shortest match encoded */
+    private static final int MIN_MATCH = 4;
+
+    /** HASH_BITS: log2 of the number of entries of the match table */
+    private static final int HASH_BITS = 12;
+
+    /** MAX_OFFSET: the farthest back a match can start */
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    /** LAST_LITERALS: bytes at the end always left as literals */
+    private static final int LAST_LITERALS = 5;
+
+    /** MATCH_LIMIT: no match starts within this many bytes of the end */
+    private static final int MATCH_LIMIT = 12;
+
+    private PageCodec() {
+    }
+
+    /**
+     * Compresses the bytes of a page.
+     *
+     * @return the compressed bytes, which may take more room than the page
+     */
+    static byte[] compress(byte[] src) {
+        int len = src.length;
+        byte[] dst = new byte[len + len / 255 + 16];
+        //positions plus one, so that a fresh table means no entries
+        int[] table = new int[1 << HASH_BITS];
+        int anchor = 0;
+        int ip = 0;
+        int op = 0;
+        int limit = len - MATCH_LIMIT;
+        while (ip < limit) {
+            int seq = readInt(src, ip);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h] - 1;
+            table[h] = ip + 1;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                ip++;
+                continue;
+            }
+
+            //extend the match as far as it goes, short of the last literals
+            int matchLen = MIN_MATCH;
+            int maxMatch = len - LAST_LITERALS - ip;
+            while (matchLen < maxMatch && src[ref + matchLen] == src[ip + matchLen]) {
+                matchLen++;
+            }
+            op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLen);
+            ip += matchLen;
+            anchor = ip;
+        }
+        op = writeSequence(dst, op, src, anchor, len - anchor, 0, 0);
+        return Arrays.copyOf(dst, op);
+    }
+
+    /**
+     * Decompresses what compress returned into the bytes of a page, which must
+     * be as long as the page compressed.
+     *
+     * @throws IllegalArgumentException if src does not decompress to exactly dst.length bytes
+     */
+    static void decompress(byte[] src, byte[] dst) {
+        int ip = 0;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == src.length) {
+                    break;
+                }
+
+                int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                int matchLen = token & 0x0F;
+                if (matchLen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + matchLen > dst.length) {
+                    throw new IllegalArgumentException("PageCodec: corrupt page");
+                }
+                if (offset >= matchLen) {
+                    System.arraycopy(dst, ref, dst, op, matchLen);
+                } else {
+                    //the match overlaps what it copies, as a run does
+                    for (int i = 0; i < matchLen; i++) {
+                        dst[op + i] = dst[ref + i];
+                    }
+                }
+                op += matchLen;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("PageCodec: corrupt page");
+        }
+        if (op != dst.length) {
+            throw new IllegalArgumentException("PageCodec: corrupt page");
+        }
+    }
+
+    /**
+     * Writes a sequence of literals followed by a match, or just the literals
+     * if matchLen is 0, and returns the position after it.
+     */
+    private static int writeSequence(byte[] dst, int op, byte[] src, int start, int literals, int offset,
+            int matchLen) {
+        int extra = matchLen == 0 ? 0 : matchLen - MIN_MATCH;
+        dst[op++] = (byte) (Math.min(literals, 15) << 4 | Math.min(extra, 15));
+        if (literals >= 15) {
+            op = writeLength(dst, op, literals - 15);
+        }
+        System.arraycopy(src, start, dst, op, literals);
+        op += literals;
+        if (matchLen == 0) {
+            return op;
+        }
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        if (extra >= 15) {
+            op = writeLength(dst, op, extra - 15);
+        }
+        return op;
+    }
+
+    /**
+     * Writes the rest of a length whose four bits in the token are full.
+     */
+    private static int writeLength(byte[] dst, int op, int n) {
+        while (n >= 255) {
+            dst[op++] = (byte) 255;
+            n -= 255;
+        }
+        dst[op++] = (byte) n;
+        return op;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | b[i + 3] << 24;
+    }
+}
@@ -0,0 +1,26 @@
+package bufmgr;
+
+import java.io.IOException;
+
+/**
+ * Reads something out of the bytes of a page for BufMgr.readOptimistic. The
+ * page is not pinned while it is read, so the bytes may be changed or replaced
+ * with another page's halfway through; readOptimistic then throws the result
+ * away, and any exception thrown on the way, and reads again. A reader must
+ * therefore not keep the array, nor act on what it reads before it returns.
+ *
+ * @param <T>
+ *            what is read
+ */
+@FunctionalInterface
+public interface PageReader<T> {
+
+    /**
+     * Reads from the bytes of a page.
+     *
+     * @param data
+     *            the page's bytes, not to be changed
+     * @throws IOException as the methods of global.Convert do
+     */
+    T read(byte[] data) throws IOException;
+}
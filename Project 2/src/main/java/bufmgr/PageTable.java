@@ -0,0 +1,245 @@
+package bufmgr;
+
+import java.util.Arrays;
+
+/**
+ * The buffer manager's page table, mapping page numbers to the frames holding
+ * them. The table is split into partitions by page number, each guarded by its
+ * own lock, so threads working on different pages rarely contend. Apart from
+ * get(Integer), every method must be called while holding lockFor(pageno).
+ * <p>
+ * peek is the exception: it looks a page up without the lock, for readers
+ * that check the frame it returns themselves.
+ * <p>
+ * Each partition is an open-addressing hash table of primitive ints with
+ * linear probing. Deleting shifts the following entries of the probe run back
+ * instead of leaving tombstones, so lookups never slow down as pages come and
+ * go, and nothing is boxed or allocated unless a partition has to grow.
+ */
+class PageTable {
+
+    /** Returned by lookup and remove when a page is not in the table. */
+    static final int NOT_FOUND = -1;
+
+    /**
+     * One partition of the table; the object itself is the partition's lock.
+     * A slot is empty when its frame is NOT_FOUND, since frames are never negative.
+     */
+    private static class Partition {
+
+        /** keys: the page number in each used slot */
+        int[] keys;
+
+        /** frames: the frame holding the page in each slot, or NOT_FOUND if the slot is empty */
+        int[] frames;
+
+        int size = 0;
+
+        Partition(int capacity) {
+            keys = new int[capacity];
+            frames = new int[capacity];
+            Arrays.fill(frames, NOT_FOUND);
+        }
+    }
+
+    /** partitions: a power of two of them, so a page's partition is found from the top bits of its hash */
+    private Partition[] partitions;
+
+    /** partitionShift: how far to shift a hash right to get its partition */
+    private int partitionShift;
+
+    /**
+     * Creates a page table for a pool of the given number of frames, with a
+     * partition count scaled to the number of processors. Partitions start out
+     * at most half full when the pages are spread evenly.
+     */
+    PageTable(int numbufs) {
+        int wanted = Math.min(Math.max(1, numbufs), 4 * Runtime.getRuntime().availableProcessors());
+        int count = ceilPowerOfTwo(wanted);
+        int capacity = ceilPowerOfTwo(Math.max(8, 2 * numbufs / count));
+        partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(capacity);
+        }
+        partitionShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Returns the lock guarding the entry of the given page.
+     */
+    Object lockFor(int pageno) {
+        return partition(hash(pageno));
+    }
+
+    /**
+     * Returns the number of partitions, which never changes.
+     */
+    int partitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Returns the index of the partition holding the entry of the given page,
+     * the one whose lock lockFor returns.
+     */
+    int partitionIndex(int pageno) {
+        return partitionShift == 32 ? 0 : hash(pageno) >>> partitionShift;
+    }
+
+    /**
+     * Returns the frame holding the page, or NOT_FOUND.
+     */
+    int lookup(int pageno) {
+        int h = hash(pageno);
+        Partition part = partition(h);
+        int mask = part.keys.length - 1;
+        for (int i = slot(h, mask); part.frames[i] != NOT_FOUND; i = (i + 1) & mask) {
+            if (part.keys[i] == pageno) {
+                return part.frames[i];
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns the frame holding the page, or NOT_FOUND, without taking the
+     * partition lock. Entries may be moved or the partition grown meanwhile,
+     * so the answer is only a hint: the frame may hold another page by now, or
+     * a page that is in the table may not be found. The probe is bounded, so a
+     * torn view of the partition never makes it loop.
+     */
+    int peek(int pageno) {
+        int h = hash(pageno);
+        Partition part = partition(h);
+        int[] keys = part.keys;
+        int[] frames = part.frames;
+        int length = Math.min(keys.length, frames.length);
+        int mask = length - 1;
+        int i = slot(h, mask);
+        for (int n = 0; n < length; n++) {
+            int frameNo = frames[i];
+            if (frameNo == NOT_FOUND) {
+                return NOT_FOUND;
+            }
+            if (keys[i] == pageno) {
+                return frameNo;
+            }
+            i = (i + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Records that the page is held by the given frame.
+     */
+    void put(int pageno, int frameNo) {
+        int h = hash(pageno);
+        Partition part = partition(h);
+        int mask = part.keys.length - 1;
+        int i = slot(h, mask);
+        while (part.frames[i] != NOT_FOUND) {
+            if (part.keys[i] == pageno) {
+                part.frames[i] = frameNo;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        part.keys[i] = pageno;
+        part.frames[i] = frameNo;
+        part.size++;
+
+        //keep the load factor at most one half so probe runs stay short
+        if (2 * part.size > part.keys.length) {
+            grow(part);
+        }
+    }
+
+    /**
+     * Removes the page from the table and returns the frame that held it, or NOT_FOUND.
+     */
+    int remove(int pageno) {
+        int h = hash(pageno);
+        Partition part = partition(h);
+        int mask = part.keys.length - 1;
+        int i = slot(h, mask);
+        while (part.keys[i] != pageno) {
+            if (part.frames[i] == NOT_FOUND) {
+                return NOT_FOUND;
+            }
+            i = (i + 1) & mask;
+        }
+        if (part.frames[i] == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        int frameNo = part.frames[i];
+
+        //shift back every later entry of the run that may not sit past the hole
+        int hole = i;
+        for (int j = (i + 1) & mask; part.frames[j] != NOT_FOUND; j = (j + 1) & mask) {
+            int home = slot(hash(part.keys[j]), mask);
+            //the entry at j can fill the hole unless its home slot lies cyclically in (hole, j]
+            boolean homeInRange = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+            if (!homeInRange) {
+                part.keys[hole] = part.keys[j];
+                part.frames[hole] = part.frames[j];
+                hole = j;
+            }
+        }
+        part.frames[hole] = NOT_FOUND;
+        part.size--;
+        return frameNo;
+    }
+
+    /**
+     * Returns the frame holding the page, or null if it is not in the table.
+     * Takes the partition lock itself.
+     */
+    Integer get(Integer pageno) {
+        int pid = pageno;
+        synchronized (lockFor(pid)) {
+            int frameNo = lookup(pid);
+            return frameNo == NOT_FOUND ? null : frameNo;
+        }
+    }
+
+    /**
+     * Doubles the capacity of a partition and re-inserts its entries.
+     */
+    private void grow(Partition part) {
+        int[] oldKeys = part.keys;
+        int[] oldFrames = part.frames;
+        int capacity = oldKeys.length * 2;
+        int mask = capacity - 1;
+        part.keys = new int[capacity];
+        part.frames = new int[capacity];
+        Arrays.fill(part.frames, NOT_FOUND);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldFrames[j] != NOT_FOUND) {
+                int i = slot(hash(oldKeys[j]), mask);
+                while (part.frames[i] != NOT_FOUND) {
+                    i = (i + 1) & mask;
+                }
+                part.keys[i] = oldKeys[j];
+                part.frames[i] = oldFrames[j];
+            }
+        }
+    }
+
+    private static int hash(int pageno) {
+        // spread the bits so runs of consecutive pages land in different partitions and slots
+        return pageno * 0x9E3779B9;
+    }
+
+    private Partition partition(int h) {
+        return partitionShift == 32 ? partitions[0] : partitions[h >>> partitionShift];
+    }
+
+    private static int slot(int h, int mask) {
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int ceilPowerOfTwo(int n) {
+        int p = Integer.highestOneBit(n);
+        return p < n ? p << 1 : p;
+    }
+}
@@ -0,0 +1,206 @@
+package bufmgr;
+
+import java.util.concurrent.locks.LockSupport;
+
+import diskmgr.DiskMgrException;
+
+/**
+ * A background thread writing dirty pages of unpinned frames ahead of their
+ * eviction, so that pinPage rarely has to write a victim out before reading
+ * the new page in. The writer wakes up periodically, or as soon as pinPage had
+ * to write a dirty victim itself, and looks at the share of unpinned frames
+ * that are dirty. Above the high watermark it cleans frames until the share is
+ * down to the low watermark. It sweeps the frames round robin, so frames that
+ * stay unpinned long are cleaned first, and writes each batch in page order,
+ * with one write per run of pages next to each other on disk.
+ */
+public class PageWriter implements Runnable {
+
+    /** bufmgr: the buffer manager whose frames are cleaned */
+    private BufMgr bufmgr;
+
+    /** lowWatermark: share of dirty unpinned frames a cleaning round stops at */
+    private volatile double lowWatermark;
+
+    /** highWatermark: share of dirty unpinned frames above which a cleaning round starts */
+    private volatile double highWatermark;
+
+    /** intervalNanos: how long the writer sleeps between looks at the pool */
+    private long intervalNanos;
+
+    /** thread: the writer thread, null until started */
+    private volatile Thread thread = null;
+
+    private volatile boolean running = false;
+
+    /** cursor: the frame the next sweep starts at */
+    private int cursor = 0;
+
+    /** batch: pageno and frame of the frames picked in a round, packed pageno-first so they sort by page */
+    private long[] batch;
+
+    private volatile long pagesWritten = 0;
+    private volatile long runsWritten = 0;
+    private volatile DiskMgrException lastError = null;
+
+    /**
+     * Creates a writer for the given buffer manager; start() runs it.
+     *
+     * @param lowWatermark
+     *            share of dirty unpinned frames at which cleaning stops
+     * @param highWatermark
+     *            share of dirty unpinned frames above which cleaning starts
+     * @param intervalMillis
+     *            how often the writer looks at the pool when nobody wakes it
+     * @throws IllegalArgumentException if the watermarks are not 0 <= low <= high <= 1
+     *             or the interval is not positive
+     */
+    PageWriter(BufMgr bufmgr, double lowWatermark, double highWatermark, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("PageWriter: interval must be positive");
+        }
+        this.bufmgr = bufmgr;
+        setWatermarks(lowWatermark, highWatermark);
+        this.intervalNanos = intervalMillis * 1000000L;
+        this.batch = new long[bufmgr.getNumBuffers()];
+    }
+
+    /**
+     * Changes the watermarks, taking effect at the next round.
+     *
+     * @throws IllegalArgumentException if they are not 0 <= low <= high <= 1
+     */
+    public void setWatermarks(double lowWatermark, double highWatermark) {
+        if (!(0 <= lowWatermark && lowWatermark <= highWatermark && highWatermark <= 1)) {
+            throw new IllegalArgumentException("PageWriter: watermarks must satisfy 0 <= low <= high <= 1");
+        }
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    public double getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public double getHighWatermark() {
+        return highWatermark;
+    }
+
+    /** Returns the number of pages written by the writer so far. */
+    public long getPagesWritten() {
+        return pagesWritten;
+    }
+
+    /** Returns the number of runs of adjacent pages those pages were written in. */
+    public long getRunsWritten() {
+        return runsWritten;
+    }
+
+    /** Returns the last error writing a page, or null if there was none. */
+    public DiskMgrException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Starts the writer thread, as a daemon so it never keeps the JVM alive.
+     */
+    synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "bufmgr-page-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the writer thread and waits for it to finish its current round.
+     */
+    synchronized void stop() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(t);
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes the writer look at the pool now rather than at the end of its interval.
+     */
+    void wakeUp() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (running) {
+                cleanRound();
+            }
+        }
+    }
+
+    /**
+     * Cleans frames down to the low watermark if the dirty share is above the high one.
+     */
+    void cleanRound() {
+        int numbufs = bufmgr.getNumBuffers();
+        int unpinned = 0;
+        int dirty = 0;
+        for (int i = 0; i < numbufs; i++) {
+            FrameDescriptor fd = bufmgr.getFrameDesc(i);
+            if (fd.pinCount == 0) {
+                unpinned++;
+                if (fd.dirtyBit && fd.pageno != -1) {
+                    dirty++;
+                }
+            }
+        }
+        if (dirty == 0 || dirty <= highWatermark * unpinned) {
+            return;
+        }
+        int wanted = dirty - (int) (lowWatermark * unpinned);
+        if (batch.length < numbufs) {
+            //the pool has grown
+            batch = new long[numbufs];
+        }
+
+        //pick dirty unpinned frames, sweeping on from where the last round stopped
+        int picked = 0;
+        for (int n = 0; n < numbufs && picked < wanted; n++) {
+            int i = cursor % numbufs;
+            cursor = (i + 1) % numbufs;
+            FrameDescriptor fd = bufmgr.getFrameDesc(i);
+            int pid = fd.pageno;
+            if (fd.pinCount == 0 && fd.dirtyBit && pid != -1) {
+                batch[picked++] = ((long) pid << 32) | i;
+            }
+        }
+
+        //write them in page order; a page may have been pinned, changed or evicted meanwhile
+        try {
+            FlushReport report = bufmgr.writeSorted(batch, picked);
+            pagesWritten += report.getPages();
+            runsWritten += report.getRuns();
+        } catch (DiskMgrException e) {
+            lastError = e;
+        }
+    }
+}
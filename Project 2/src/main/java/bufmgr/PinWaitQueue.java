@@ -0,0 +1,56 @@
+package bufmgr;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The threads waiting in pinPage for a frame to become available, in the
+ * order they started waiting. Only the first of them is woken when a frame is
+ * unpinned or emptied and only it tries to claim a frame, so frames go to the
+ * waiters first come, first served; once it has one, or gives up, the next
+ * waiter is woken in its turn. Pins without a timeout do not join the queue.
+ */
+class PinWaitQueue {
+
+    /** waiters: the waiting threads, the one to be served next first */
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    /** depth: the number of waiters, kept apart since the queue counts them in linear time */
+    private final AtomicInteger depth = new AtomicInteger();
+
+    /** Adds a thread at the end of the queue. */
+    void enqueue(Thread waiter) {
+        waiters.add(waiter);
+        depth.incrementAndGet();
+    }
+
+    /** Returns whether the thread is the next to be served. */
+    boolean isFirst(Thread waiter) {
+        return waiters.peek() == waiter;
+    }
+
+    /**
+     * Takes a thread out of the queue and wakes the next one, which may have
+     * been passed a frame meant for the one leaving.
+     */
+    void remove(Thread waiter) {
+        if (waiters.remove(waiter)) {
+            depth.decrementAndGet();
+        }
+        signal();
+    }
+
+    /** Returns the number of threads waiting. */
+    int depth() {
+        return depth.get();
+    }
+
+    /** Wakes the first waiter, if there is one, to try for a frame. */
+    void signal() {
+        Thread first = waiters.peek();
+        if (first != null) {
+            LockSupport.unpark(first);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package bufmgr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named share of the buffer pool, such as the frames of one tenant or one
+ * workload, with a quota of frames and a replacement policy of its own. The
+ * pages assigned to a partition with BufMgr.assignPages are read into frames
+ * of that partition, and evicting them only makes room for its own pages,
+ * so one tenant's large scan or hash join build does not push out the pages
+ * of the others.
+ * <p>
+ * A partition is guaranteed its quota, but frames that no partition uses are
+ * lent to any partition that wants more. A partition below its quota takes
+ * them back from the partitions holding more than theirs as it needs them.
+ * The pages not assigned anywhere belong to the default partition, whose
+ * quota is whatever the other partitions leave of the pool.
+ * <p>
+ * Partitions are made by BufMgr.createPartition.
+ */
+public class PoolPartition {
+
+    /** DEFAULT: the name of the partition of the pages not assigned to another */
+    public static final String DEFAULT = "default";
+
+    /** name: the name the partition was created with */
+    private final String name;
+
+    /** index: the position of the partition in the buffer manager's partitions */
+    final int index;
+
+    /** replacer: the replacement policy choosing among the unpinned frames of this partition */
+    final Replacer replacer;
+
+    /** quota: the frames reserved for this partition, unused for the default partition */
+    final int quota;
+
+    /** frames: the number of frames holding pages of this partition, changed under the replacer's monitor */
+    volatile int frames = 0;
+
+    /** hits and misses: pins of pages of this partition found in the pool and read in */
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    PoolPartition(String name, int index, Replacer replacer, int quota) {
+        this.name = name;
+        this.index = index;
+        this.replacer = replacer;
+        this.quota = quota;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the frames reserved for this partition. For the default partition
+     * this is 0; it gets whatever the others leave.
+     */
+    public int getQuota() {
+        return quota;
+    }
+
+    /**
+     * Returns how many frames hold pages of this partition, which is more than
+     * its quota while it borrows frames nobody else uses.
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the share of the pins of pages of this partition that found the
+     * page in the pool, or 0 if there were none.
+     */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Clears the hit and miss counts.
+     */
+    public void resetMetrics() {
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": frames=" + frames + " quota=" + quota + " hits=" + getHits() + " misses=" + getMisses()
+                + " hitRatio=" + getHitRatio();
+    }
+}
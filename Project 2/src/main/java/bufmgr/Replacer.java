@@ -0,0 +1,113 @@
+package bufmgr;
+
+/**
+ * A page replacement policy for the buffer pool. The buffer manager reports
+ * every pin of a resident frame and every time a frame's pin count drops to
+ * zero, and asks the replacer to pick a victim whenever a page has to be
+ * brought in and no frame is free. Empty frames are handed out by the buffer
+ * manager itself, so a replacer only ever sees frames holding a page.
+ * <p>
+ * Replacers need not be thread-safe: the buffer manager calls them while
+ * holding the replacer's monitor, and reports the pins and unpins of a frame
+ * in the order they happened. Pins and unpins of pages already in the pool
+ * are buffered and reported in batches, but always before the replacer is
+ * asked for a victim or told of a frame being freed.
+ */
+public interface Replacer {
+
+    /**
+     * Called whenever a page is pinned in a frame, both when it was already
+     * resident and right after it has been read into a victim or free frame.
+     *
+     * @param frameNo
+     *            the frame holding the page
+     * @param pageno
+     *            the page number of the pinned page
+     */
+    void pin(int frameNo, int pageno);
+
+    /**
+     * Called when the pin count of a frame drops to zero, which makes the frame
+     * a replacement candidate.
+     *
+     * @param frameNo
+     *            the frame that was unpinned
+     */
+    void unpin(int frameNo);
+
+    /**
+     * Called instead of unpin(int) when the caller of unpinPage gave a hint
+     * other than NONE. A hated frame is to be evicted before every frame
+     * unpinned without one; a loved frame is to be passed over once when it
+     * would be evicted, on top of whatever protection the policy gives it.
+     * Either lasts until the frame is pinned again.
+     *
+     * @param frameNo
+     *            the frame that was unpinned
+     * @param hint
+     *            HATE or LOVE
+     */
+    void unpin(int frameNo, UnpinHint hint);
+
+    /**
+     * Chooses an unpinned frame to evict so that the given page can be read in.
+     * The chosen frame stops being a replacement candidate; it is reported again
+     * through pin once the new page is in it.
+     *
+     * @param pageno
+     *            the page number that will be read into the victim frame
+     * @return the victim frame, or -1 if every resident frame is pinned
+     */
+    int pickVictim(int pageno);
+
+    /**
+     * Called when a victim returned by pickVictim is not evicted after all,
+     * e.g. because its page turned out dirty when only a clean one would do.
+     * The frame becomes a replacement candidate again, as close as the policy
+     * can manage to where it was, and whatever choosing it did to the policy's
+     * state on its behalf, such as a ghost entry, is undone. This is not a
+     * reference to the page.
+     *
+     * @param frameNo
+     *            the victim frame, still holding its page unpinned
+     * @param pageno
+     *            the page number of the page in the frame
+     */
+    void reinstate(int frameNo, int pageno);
+
+    /**
+     * Called when the page in an unpinned frame is freed or evicted, so the
+     * frame is empty and no longer a replacement candidate. A victim returned by
+     * pickVictim is reported here too once its page is out.
+     *
+     * @param frameNo
+     *            the frame that was emptied
+     */
+    void free(int frameNo);
+
+    /**
+     * Called when a page is deallocated, whether it is in the pool or not, so
+     * that whatever the policy remembers of the page after its eviction is
+     * dropped: a page number allocated again is a new page.
+     *
+     * @param pageno
+     *            the page number of the freed page
+     */
+    void pageFreed(int pageno);
+
+    /**
+     * Called when the buffer pool is resized. A growing pool calls it before
+     * any of the new frames is reported, a shrinking one after the frames it
+     * drops have been freed, so that frames 0 to numbufs - 1 are the only ones
+     * reported from then on.
+     *
+     * @param numbufs
+     *            the new number of frames in the pool
+     */
+    void resize(int numbufs);
+
+    /**
+     * Returns the name of the policy, as passed to the BufMgr constructor.
+     */
+    String getName();
+}
@@ -0,0 +1,106 @@
+package bufmgr;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the events of a trace written by a TraceRecorder, one at a time:
+ * next() moves on to the following event, whose fields the getters return.
+ */
+public class TraceReader implements Closeable {
+
+    /** in: the trace file */
+    private final DataInputStream in;
+
+    private int op;
+    private int pageno;
+    private boolean dirty;
+
+    /** time: nanoseconds from the start of the trace to the current event */
+    private long time = 0;
+
+    /**
+     * Opens a trace and checks its header.
+     *
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public TraceReader(String path) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+        try {
+            if (in.readInt() != TraceRecorder.MAGIC) {
+                throw new IOException("TraceReader: " + path + " is not a page trace");
+            }
+            int version = in.readShort();
+            if (version != TraceRecorder.VERSION) {
+                throw new IOException("TraceReader: unsupported trace version " + version);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves on to the next event.
+     *
+     * @return false at the end of the trace
+     * @throws IOException if the trace cannot be read or ends halfway through an event
+     */
+    public boolean next() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return false;
+        }
+        op = b & ~TraceRecorder.DIRTY;
+        dirty = (b & TraceRecorder.DIRTY) != 0;
+        pageno = in.readInt();
+        long delta = 0;
+        for (int shift = 0;; shift += 7) {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException("TraceReader: trace ends halfway through an event");
+            }
+            delta |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        time += delta;
+        return true;
+    }
+
+    /**
+     * Returns the operation of the current event: TraceRecorder.PIN, UNPIN, NEW
+     * or FREE.
+     */
+    public int getOp() {
+        return op;
+    }
+
+    public int getPageno() {
+        return pageno;
+    }
+
+    /**
+     * Returns whether the current event is an unpin that made the page dirty.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Returns the nanoseconds from the start of the trace to the current event.
+     */
+    public long getTimeNanos() {
+        return time;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
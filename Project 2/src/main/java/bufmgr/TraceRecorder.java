@@ -0,0 +1,114 @@
+package bufmgr;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes a binary trace of the page accesses of a buffer manager: every pin,
+ * unpin, allocation and free of a page through its public methods, in the
+ * order they happened. TraceReader reads it back and TraceSimulator replays it
+ * against other policies and pool sizes.
+ * <p>
+ * A trace starts with MAGIC and VERSION. Each event is then one byte holding
+ * the operation, with DIRTY set for an unpin of a dirty page, the page number
+ * as four bytes, and the nanoseconds since the previous event as an unsigned
+ * variable-length number, seven bits a byte, lowest first. Most events thus
+ * take six or seven bytes.
+ */
+public class TraceRecorder {
+
+    /** MAGIC: the first four bytes of a trace */
+    public static final int MAGIC = 0x4D425452;
+
+    /** VERSION: the format version written after MAGIC */
+    public static final int VERSION = 1;
+
+    /** the operations of an event */
+    public static final int PIN = 0;
+    public static final int UNPIN = 1;
+    public static final int NEW = 2;
+    public static final int FREE = 3;
+
+    /** DIRTY: set in the operation byte of an unpin that made the page dirty */
+    static final int DIRTY = 0x80;
+
+    /** out: the trace file */
+    private final DataOutputStream out;
+
+    /** last: System.nanoTime() of the previous event */
+    private long last;
+
+    /** events: the number of events written */
+    private long events = 0;
+
+    /** error: the first write that failed, after which nothing more is written */
+    private IOException error = null;
+
+    /** closed: whether the trace is finished; events still coming in are dropped */
+    private boolean closed = false;
+
+    /**
+     * Creates the trace file, replacing any file of that name, and writes its
+     * header.
+     */
+    TraceRecorder(String path) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        last = System.nanoTime();
+    }
+
+    /**
+     * Appends an event. Called by whichever thread did the operation, so
+     * events from several threads are written in the order they get here.
+     */
+    synchronized void record(int op, int pageno, boolean dirty) {
+        if (closed || error != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long delta = Math.max(0, now - last);
+        last = now;
+        try {
+            out.writeByte(dirty ? op | DIRTY : op);
+            out.writeInt(pageno);
+            while (delta >= 0x80) {
+                out.writeByte((int) (delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.writeByte((int) delta);
+            events++;
+        } catch (IOException e) {
+            //keep the buffer manager going; close reports it
+            error = e;
+        }
+    }
+
+    /**
+     * Returns the number of events written so far.
+     */
+    public synchronized long getEvents() {
+        return events;
+    }
+
+    /**
+     * Writes out what is buffered and closes the file.
+     *
+     * @throws IOException if that fails, or an event could not be written before
+     */
+    synchronized void close() throws IOException {
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package bufmgr;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replays a page trace against replacement policies and pool sizes other
+ * than the ones it was taken with, to see what they would have missed. The
+ * simulated pool has no read-ahead and nothing else going on: each pin of a
+ * page not in it is a miss that takes a free frame or one the policy picks,
+ * and is left out, without a miss, if every frame is pinned.
+ * <p>
+ * Run from the command line, it prints the miss ratio of each policy at each
+ * pool size, one pool size a line:
+ *
+ * <pre>
+ * java bufmgr.TraceSimulator trace [policy,policy,...] [frames,frames,...]
+ * </pre>
+ *
+ * The policies default to all of them, and the pool sizes to powers of two
+ * from 8 up to the number of pages in the trace.
+ */
+public class TraceSimulator {
+
+    /** POLICIES: the policies simulated when none are given */
+    private static final String[] POLICIES = { "FIFO", "LRU", "MRU", "Clock", "ARC", "LRU-K" };
+
+    /** ops and pages: the operation and page number of each event in the trace */
+    private byte[] ops;
+    private int[] pages;
+
+    /** events: the number of events */
+    private int events = 0;
+
+    /** pins: the number of pins in the trace */
+    private long pins = 0;
+
+    /** distinctPages: the number of different pages pinned */
+    private int distinctPages;
+
+    /**
+     * Reads a whole trace into memory.
+     *
+     * @throws IOException if the trace cannot be read
+     */
+    public TraceSimulator(String path) throws IOException {
+        ops = new byte[1024];
+        pages = new int[1024];
+        Set<Integer> seen = new HashSet<Integer>();
+        try (TraceReader reader = new TraceReader(path)) {
+            while (reader.next()) {
+                if (events == ops.length) {
+                    ops = Arrays.copyOf(ops, 2 * events);
+                    pages = Arrays.copyOf(pages, 2 * events);
+                }
+                ops[events] = (byte) reader.getOp();
+                pages[events] = reader.getPageno();
+                events++;
+                if (reader.getOp() == TraceRecorder.PIN) {
+                    pins++;
+                    seen.add(reader.getPageno());
+                }
+            }
+        }
+        distinctPages = seen.size();
+    }
+
+    public long getPins() {
+        return pins;
+    }
+
+    public int getDistinctPages() {
+        return distinctPages;
+    }
+
+    /**
+     * Replays the trace against a pool of the given size and policy and returns
+     * the number of misses.
+     *
+     * @param policy
+     *            a policy name, as passed to the BufMgr constructor
+     * @param numbufs
+     *            the number of frames in the pool
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    public long countMisses(String policy, int numbufs) {
+        Replacer replacer = BufMgr.newReplacer(policy, numbufs);
+        Map<Integer, Integer> pageMap = new HashMap<Integer, Integer>();
+        int[] pageOf = new int[numbufs];
+        int[] pinCount = new int[numbufs];
+        ArrayDeque<Integer> freeFrames = new ArrayDeque<Integer>();
+        for (int i = 0; i < numbufs; i++) {
+            freeFrames.addLast(i);
+        }
+        long misses = 0;
+        for (int e = 0; e < events; e++) {
+            int pid = pages[e];
+            Integer frame = pageMap.get(pid);
+            switch (ops[e]) {
+            case TraceRecorder.PIN:
+                if (frame == null) {
+                    //take a free frame, or evict the page in the victim
+                    Integer id = freeFrames.pollFirst();
+                    if (id == null) {
+                        int victim = replacer.pickVictim(pid);
+                        if (victim == -1) {
+                            //every frame pinned; the pin fails and so does its unpin
+                            break;
+                        }
+                        pageMap.remove(pageOf[victim]);
+                        replacer.free(victim);
+                        id = victim;
+                    }
+                    frame = id;
+                    pageMap.put(pid, frame);
+                    pageOf[frame] = pid;
+                    misses++;
+                }
+                pinCount[frame]++;
+                replacer.pin(frame, pid);
+                break;
+            case TraceRecorder.UNPIN:
+                if (frame != null && pinCount[frame] > 0 && --pinCount[frame] == 0) {
+                    replacer.unpin(frame);
+                }
+                break;
+            case TraceRecorder.FREE:
+                if (frame != null && pinCount[frame] == 0) {
+                    pageMap.remove(pid);
+                    replacer.free(frame);
+                    freeFrames.addLast(frame);
+                }
+                if (frame == null || pinCount[frame] == 0) {
+                    replacer.pageFreed(pid);
+                }
+                break;
+            default:
+                //a new page is pinned by an event of its own
+                break;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Returns the share of the pins of the trace that miss in a pool of the
+     * given size and policy, or 0 for a trace without pins.
+     */
+    public double missRatio(String policy, int numbufs) {
+        return pins == 0 ? 0 : (double) countMisses(policy, numbufs) / pins;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("usage: java bufmgr.TraceSimulator trace [policy,policy,...] [frames,frames,...]");
+            System.exit(2);
+        }
+        TraceSimulator simulator = new TraceSimulator(args[0]);
+        String[] policies = args.length > 1 ? args[1].split(",") : POLICIES;
+        int[] sizes;
+        if (args.length > 2) {
+            String[] parts = args[2].split(",");
+            sizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                sizes[i] = Integer.parseInt(parts[i].trim());
+            }
+        } else {
+            //powers of two, then all the pages, which only miss the first time
+            int all = Math.max(1, simulator.getDistinctPages());
+            int n = 0;
+            sizes = new int[32];
+            for (int size = 8; size < all; size *= 2) {
+                sizes[n++] = size;
+            }
+            sizes[n++] = all;
+            sizes = Arrays.copyOf(sizes, n);
+        }
+
+        System.out.println(simulator.getPins() + " pins of " + simulator.getDistinctPages() + " pages");
+        StringBuilder line = new StringBuilder(String.format("%8s", "frames"));
+        for (String policy : policies) {
+            line.append(String.format("%10s", policy.trim()));
+        }
+        System.out.println(line);
+        for (int size : sizes) {
+            line = new StringBuilder(String.format("%8d", size));
+            for (String policy : policies) {
+                line.append(String.format("%10.4f", simulator.missRatio(policy.trim(), size)));
+            }
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package bufmgr;
+
+/**
+ * What the caller of unpinPage knows about when the page is needed again,
+ * passed on to the replacement policy when the page becomes a replacement
+ * candidate.
+ */
+public enum UnpinHint {
+
+    /** Nothing is known; the policy decides as usual. */
+    NONE,
+
+    /**
+     * The page is not going to be needed again, such as a consumed temporary
+     * page of a join, so it is evicted before any page unpinned without a hint.
+     */
+    HATE,
+
+    /**
+     * The page is hot, such as an index directory page, so it is passed over
+     * once by the policy when it would otherwise be evicted.
+     */
+    LOVE
+}
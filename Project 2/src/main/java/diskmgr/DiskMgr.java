@@ -6,6 +6,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import bufmgr.BufMgrException;
 import chainexception.ChainException;
@@ -17,10 +19,13 @@ import global.PageId;
 
 public class DiskMgr implements GlobalConst {
 
-	private static final int bits_per_page = PAGE_SIZE * 8;
+	/** The smallest and largest page sizes a database can have. */
+	public static final int MIN_PAGE_SIZE = PAGE_SIZE;
+	public static final int MAX_PAGE_SIZE = 32 * 1024;
 
 	/**
-	 * Open the database with the given name.
+	 * Open the database with the given name. Its page size is the one it was
+	 * created with.
 	 *
 	 * @param fname
 	 *            DB_name
@@ -36,6 +41,18 @@ public class DiskMgr implements GlobalConst {
 		try {
 			fp = new RandomAccessFile(fname, "rw");
 
+			// The page size is needed to read the first page, so it comes first
+			byte[] header = new byte[DBFirstPage.START_FIRST_PAGE_ENTRIES];
+			ByteBuffer dst = ByteBuffer.wrap(header);
+			while (dst.hasRemaining()) {
+				if (fp.getChannel().read(dst, dst.position()) < 0)
+					throw new FileIOException(fname + " is not a Minibase database");
+			}
+			int size = Convert.getIntValue(DBFirstPage.DB_PAGE_SIZE, header);
+			if (!validPageSize(size))
+				throw new FileIOException(fname + " has an unsupported page size " + size);
+			setPageSize(size);
+
 			PageId pageId = new PageId();
 			Page apage = new Page();
 			pageId.pid = 0;
@@ -60,6 +77,14 @@ public class DiskMgr implements GlobalConst {
 	public DiskMgr() {
 	}
 
+	/**
+	 * Returns whether a database can have pages of the given size: a power of two
+	 * from MIN_PAGE_SIZE to MAX_PAGE_SIZE.
+	 */
+	public static boolean validPageSize(int size) {
+		return size >= MIN_PAGE_SIZE && size <= MAX_PAGE_SIZE && Integer.bitCount(size) == 1;
+	}
+
 	/**
 	 * DB Constructors. Create a database with the specified number of pages where
 	 * the page size is the default page size.
@@ -75,6 +100,34 @@ public class DiskMgr implements GlobalConst {
 	 *
 	 */
 	public void openDB(String fname, int num_pgs) throws BufMgrException, InvalidPageNumberException, FileIOException {
+		openDB(fname, num_pgs, PAGE_SIZE);
+	}
+
+	/**
+	 * Create a database with the specified number of pages of the given size.
+	 * The page size is stored in the first page and kept for the life of the
+	 * database; a larger one means fewer, larger I/Os, fewer space-map pages
+	 * and more file entries per directory page.
+	 *
+	 * @param fname
+	 *            DB name
+	 * @param num_pgs
+	 *            number of pages in DB
+	 * @param page_size
+	 *            bytes per page, e.g. 4096 or 8192
+	 * @throws IllegalArgumentException
+	 *             if the page size is not valid
+	 * @throws BufMgrException
+	 * @throws FileIOException
+	 * @throws InvalidPageNumberException
+	 */
+	public void openDB(String fname, int num_pgs, int page_size)
+			throws BufMgrException, InvalidPageNumberException, FileIOException {
+
+		if (!validPageSize(page_size)) {
+			throw new IllegalArgumentException("Invalid page size " + page_size + "; create aborted");
+		}
+		setPageSize(page_size);
 
 		name = new String(fname);
 		num_pages = (num_pgs > 2) ? num_pgs : 2;
@@ -88,7 +141,7 @@ public class DiskMgr implements GlobalConst {
 			fp = new RandomAccessFile(fname, "rw");
 
 			// Make the file num_pages pages long, filled with zeroes.
-			fp.seek((long) (num_pages * PAGE_SIZE - 1));
+			fp.seek((long) num_pages * page_size - 1);
 			fp.writeByte(0);
 
 			// Initialize space map and directory pages.
@@ -101,6 +154,7 @@ public class DiskMgr implements GlobalConst {
 
 			DBFirstPage firstpg = new DBFirstPage(apage);
 
+			firstpg.setPageSize(page_size);
 			firstpg.setNumDBPages(num_pages);
 			unpinPage(pageId, true /* dirty */);
 
@@ -162,12 +216,54 @@ public class DiskMgr implements GlobalConst {
 			throw new InvalidPageNumberException("BAD_PAGE_NUMBER");
 
 		try {
-			// Seek to the correct page
-			fp.seek((long) (pageno.pid * PAGE_SIZE));
+			// Read the appropriate number of bytes at the page's position; this does
+			// not move the file pointer, so concurrent readers and writers don't race
+			byte[] buffer = apage.getpage(); // new byte[page_size];
+			FileChannel channel = fp.getChannel();
+			ByteBuffer dst = ByteBuffer.wrap(buffer);
+			long pos = (long) pageno.pid * page_size;
+			while (dst.hasRemaining()) {
+				int n = channel.read(dst, pos + dst.position());
+				if (n < 0)
+					break;
+			}
+		} catch (IOException e) {
+			throw new FileIOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Read a run of consecutive pages into Page objects with a single I/O.
+	 *
+	 * @param firstpage
+	 *            pageId of the first page of the run
+	 * @param pages
+	 *            page objects which hold the contents of the run, in page order
+	 * @param count
+	 *            the number of pages to read, from pages[0] on
+	 * @throws InvalidPageNumberException
+	 * @throws FileIOException
+	 */
+	public void read_pages(PageId firstpage, Page[] pages, int count)
+			throws InvalidPageNumberException, FileIOException {
 
-			// Read the appropriate number of bytes.
-			byte[] buffer = apage.getpage(); // new byte[PAGE_SIZE];
-			fp.read(buffer);
+		if ((firstpage.pid < 0) || (count < 1) || (firstpage.pid + count > num_pages))
+			throw new InvalidPageNumberException("BAD_PAGE_NUMBER");
+
+		ByteBuffer[] dsts = new ByteBuffer[count];
+		for (int i = 0; i < count; i++)
+			dsts[i] = ByteBuffer.wrap(pages[i].getpage());
+		try {
+			// A scattering read goes from the channel's position, which only the
+			// vectored calls use; they take turns moving it
+			FileChannel channel = fp.getChannel();
+			synchronized (vectoredIO) {
+				channel.position((long) firstpage.pid * page_size);
+				while (dsts[count - 1].hasRemaining()) {
+					if (channel.read(dsts) < 0)
+						break;
+				}
+			}
 		} catch (IOException e) {
 			throw new FileIOException(e.getMessage());
 		}
@@ -190,17 +286,55 @@ public class DiskMgr implements GlobalConst {
 			throw new InvalidPageNumberException("INVALID_PAGEID_NUMBER");
 
 		try {
-			// Seek to the correct page
-			fp.seek((long) (pageno.pid * PAGE_SIZE));
-
-			// Write the appropriate number of bytes.
-			fp.write(apage.getpage());
+			// Write the appropriate number of bytes at the page's position
+			FileChannel channel = fp.getChannel();
+			ByteBuffer src = ByteBuffer.wrap(apage.getpage());
+			long pos = (long) pageno.pid * page_size;
+			while (src.hasRemaining()) {
+				channel.write(src, pos + src.position());
+			}
 		} catch (IOException e) {
 			throw new FileIOException(e.getMessage());
 		}
 
 	}
 
+	/**
+	 * Write the contents of Page objects to a run of consecutive pages with a
+	 * single I/O.
+	 *
+	 * @param firstpage
+	 *            pageId of the first page of the run
+	 * @param pages
+	 *            the page objects to write, in page order
+	 * @param count
+	 *            the number of pages to write, from pages[0] on
+	 * @throws FileIOException
+	 * @throws InvalidPageNumberException
+	 */
+	public void write_pages(PageId firstpage, Page[] pages, int count)
+			throws FileIOException, InvalidPageNumberException {
+
+		if ((firstpage.pid < 0) || (count < 1) || (firstpage.pid + count > num_pages))
+			throw new InvalidPageNumberException("INVALID_PAGEID_NUMBER");
+
+		ByteBuffer[] srcs = new ByteBuffer[count];
+		for (int i = 0; i < count; i++)
+			srcs[i] = ByteBuffer.wrap(pages[i].getpage());
+		try {
+			// A gathering write goes to the channel's position, like read_pages
+			FileChannel channel = fp.getChannel();
+			synchronized (vectoredIO) {
+				channel.position((long) firstpage.pid * page_size);
+				while (srcs[count - 1].hasRemaining()) {
+					channel.write(srcs);
+				}
+			}
+		} catch (IOException e) {
+			throw new FileIOException(e.getMessage());
+		}
+	}
+
 	/**
 	 * Allocates a set of pages on disk, given the run size.
 	 * 
@@ -209,7 +343,7 @@ public class DiskMgr implements GlobalConst {
 	 * @throws BufMgrException
 	 * @throws FileIOException
 	 */
-	public PageId allocate_page(int run_size) throws InvalidPageNumberException, BufMgrException, FileIOException {
+	public synchronized PageId allocate_page(int run_size) throws InvalidPageNumberException, BufMgrException, FileIOException {
 
 		// validate the run size
 		if ((run_size < 1) || (run_size > num_pages)) {
@@ -298,7 +432,7 @@ public class DiskMgr implements GlobalConst {
 	 * @throws InvalidPageNumberException
 	 * @throws InvalidRunSizeException
 	 */
-	public void allocate_page(PageId start_page_num)
+	public synchronized void allocate_page(PageId start_page_num)
 			throws InvalidRunSizeException, InvalidPageNumberException, OutOfSpaceException, BufMgrException {
 		allocate_page(start_page_num, 1);
 	}
@@ -316,7 +450,7 @@ public class DiskMgr implements GlobalConst {
 	 * @throws OutOfSpaceException
 	 * @throws DiskMgrException
 	 */
-	public void allocate_page(PageId start_page_num, int runsize)
+	public synchronized void allocate_page(PageId start_page_num, int runsize)
 			throws InvalidRunSizeException, BufMgrException, InvalidPageNumberException, OutOfSpaceException {
 
 		if (runsize < 0)
@@ -401,7 +535,7 @@ public class DiskMgr implements GlobalConst {
 	 * @throws BufMgrException
 	 * @throws InvalidPageNumberException
 	 */
-	public void deallocate_page(PageId start_page_num, int run_size)
+	public synchronized void deallocate_page(PageId start_page_num, int run_size)
 			throws InvalidRunSizeException, InvalidPageNumberException, BufMgrException {
 
 		if (run_size < 0)
@@ -421,7 +555,7 @@ public class DiskMgr implements GlobalConst {
 	 *
 	 * 
 	 */
-	public void deallocate_page(PageId start_page_num) throws InvalidPageNumberException, BufMgrException {
+	public synchronized void deallocate_page(PageId start_page_num) throws InvalidPageNumberException, BufMgrException {
 
 		set_bits(start_page_num, 1, 0);
 	}
@@ -439,7 +573,7 @@ public class DiskMgr implements GlobalConst {
 	 * @throws BufMgrException
 	 * @throws FileIOException
 	 */
-	public void add_file_entry(String fname, PageId start_page_num) throws FileNameTooLongException,
+	public synchronized void add_file_entry(String fname, PageId start_page_num) throws FileNameTooLongException,
 			InvalidPageNumberException, DuplicateEntryException, BufMgrException, FileIOException {
 
 		if (fname.length() >= NAME_MAXLEN)
@@ -543,7 +677,7 @@ public class DiskMgr implements GlobalConst {
 	 * @throws FileEntryNotFoundException
 	 * @throws FileIOException
 	 */
-	public void delete_file_entry(String fname) throws BufMgrException, FileEntryNotFoundException, FileIOException {
+	public synchronized void delete_file_entry(String fname) throws BufMgrException, FileEntryNotFoundException, FileIOException {
 
 		Page apage = new Page();
 		boolean found = false;
@@ -613,7 +747,7 @@ public class DiskMgr implements GlobalConst {
 	 * @throws BufMgrException
 	 * @throws FileIOException
 	 */
-	public PageId get_file_entry(String name) throws BufMgrException, FileIOException {
+	public synchronized PageId get_file_entry(String name) throws BufMgrException, FileIOException {
 
 		Page apage = new Page();
 		boolean found = false;
@@ -688,7 +822,7 @@ public class DiskMgr implements GlobalConst {
 	}
 
 	public int db_page_size() {
-		return PAGE_SIZE;
+		return page_size;
 	}
 
 	/**
@@ -773,6 +907,21 @@ public class DiskMgr implements GlobalConst {
 	private int num_pages;
 	private String name;
 
+	/** Bytes per page, and so the number of pages one space-map page covers. */
+	private int page_size = PAGE_SIZE;
+	private int bits_per_page = PAGE_SIZE * 8;
+
+	/** Lock for the vectored reads and writes, which go through the channel's position. */
+	private final Object vectoredIO = new Object();
+
+	/**
+	 * Sets the page size of the database being opened or created.
+	 */
+	private void setPageSize(int size) {
+		page_size = size;
+		bits_per_page = size * 8;
+	}
+
 	/**
 	 * Set runsize bits starting from start to value specified
 	 * 
@@ -879,7 +1028,7 @@ public class DiskMgr implements GlobalConst {
  */
 interface PageUsedBytes {
 	int DIR_PAGE_USED_BYTES = 8 + 8;
-	int FIRST_PAGE_USED_BYTES = DIR_PAGE_USED_BYTES + 4;
+	int FIRST_PAGE_USED_BYTES = DIR_PAGE_USED_BYTES + 4 + 4;
 }
 
 /**
@@ -900,6 +1049,13 @@ class DBHeaderPage implements PageUsedBytes, GlobalConst {
 	public DBHeaderPage() {
 	}
 
+	/**
+	 * return the offset of the first file entry on the page
+	 */
+	protected int startFileEntries() {
+		return START_FILE_ENTRIES;
+	}
+
 	/**
 	 * Constrctor of class DBHeaderPage
 	 * 
@@ -917,7 +1073,7 @@ class DBHeaderPage implements PageUsedBytes, GlobalConst {
 
 		PageId temppid = getNextPage();
 
-		int num_entries = (PAGE_SIZE - pageusedbytes) / SIZE_OF_FILE_ENTRY;
+		int num_entries = (data.length - pageusedbytes) / SIZE_OF_FILE_ENTRY;
 		setNumOfEntries(num_entries);
 
 		for (int index = 0; index < num_entries; ++index)
@@ -984,7 +1140,7 @@ class DBHeaderPage implements PageUsedBytes, GlobalConst {
 	 *                I/O errors
 	 */
 	private void initFileEntry(int empty, int entryNo) throws IOException {
-		int position = START_FILE_ENTRIES + entryNo * SIZE_OF_FILE_ENTRY;
+		int position = startFileEntries() + entryNo * SIZE_OF_FILE_ENTRY;
 		Convert.setIntValue(empty, position, data);
 	}
 
@@ -1002,7 +1158,7 @@ class DBHeaderPage implements PageUsedBytes, GlobalConst {
 	 */
 	public void setFileEntry(PageId pageNo, String fname, int entryNo) throws IOException {
 
-		int position = START_FILE_ENTRIES + entryNo * SIZE_OF_FILE_ENTRY;
+		int position = startFileEntries() + entryNo * SIZE_OF_FILE_ENTRY;
 		Convert.setIntValue(pageNo.pid, position, data);
 		Convert.setStringValue(fname, position + 4, data);
 	}
@@ -1020,7 +1176,7 @@ class DBHeaderPage implements PageUsedBytes, GlobalConst {
 	 */
 	public String getFileEntry(PageId pageNo, int entryNo) throws IOException {
 
-		int position = START_FILE_ENTRIES + entryNo * SIZE_OF_FILE_ENTRY;
+		int position = startFileEntries() + entryNo * SIZE_OF_FILE_ENTRY;
 		pageNo.pid = Convert.getIntValue(position, data);
 		return (Convert.getStringValue(position + 4, data, NAME_MAXLEN + 2));
 	}
@@ -1032,7 +1188,9 @@ class DBHeaderPage implements PageUsedBytes, GlobalConst {
  */
 class DBFirstPage extends DBHeaderPage {
 
-	protected static final int NUM_DB_PAGE = PAGE_SIZE - 4;
+	/** The page size comes right after the header, so it can be read before the page size is known */
+	protected static final int DB_PAGE_SIZE = START_FILE_ENTRIES;
+	protected static final int START_FIRST_PAGE_ENTRIES = DB_PAGE_SIZE + 4;
 
 	/**
 	 * Default construtor
@@ -1053,6 +1211,11 @@ class DBFirstPage extends DBHeaderPage {
 		super(page, FIRST_PAGE_USED_BYTES);
 	}
 
+	@Override
+	protected int startFileEntries() {
+		return START_FIRST_PAGE_ENTRIES;
+	}
+
 	/**
 	 * open an exist DB first page
 	 * 
@@ -1072,7 +1235,7 @@ class DBFirstPage extends DBHeaderPage {
 	 *                I/O errors
 	 */
 	public void setNumDBPages(int num) throws IOException {
-		Convert.setIntValue(num, NUM_DB_PAGE, data);
+		Convert.setIntValue(num, data.length - 4, data);
 	}
 
 	/**
@@ -1084,7 +1247,30 @@ class DBFirstPage extends DBHeaderPage {
 	 */
 	public int getNumDBPages() throws IOException {
 
-		return (Convert.getIntValue(NUM_DB_PAGE, data));
+		return (Convert.getIntValue(data.length - 4, data));
+	}
+
+	/**
+	 * set the page size of the DB
+	 * 
+	 * @param size
+	 *            bytes per page
+	 * @exception IOException
+	 *                I/O errors
+	 */
+	public void setPageSize(int size) throws IOException {
+		Convert.setIntValue(size, DB_PAGE_SIZE, data);
+	}
+
+	/**
+	 * return the page size of the DB
+	 * 
+	 * @return bytes per page
+	 * @exception IOException
+	 *                I/O errors
+	 */
+	public int getPageSize() throws IOException {
+		return Convert.getIntValue(DB_PAGE_SIZE, data);
 	}
 
 }
@@ -0,0 +1,499 @@
+package logmgr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The write-ahead log. Records are appended to a log buffer in memory and
+ * written out, and forced to disk, by a flusher thread of the log's own. A
+ * transaction commits by appending a COMMIT record and waiting for the
+ * flusher to force it; every commit that arrives while a force is under way
+ * is forced with the next one, so many transactions committing at once share
+ * one sequential write and fsync of the log rather than each writing its
+ * pages.
+ * <p>
+ * The LSN of a record is where it starts in the log file. The buffer manager
+ * does not write a page before the log is durable up to the page's last
+ * change, so that pages of transactions that have not committed may be
+ * written whenever the pool needs their frames (steal) and the pages of
+ * committed ones need not be written at commit (no force): the log has what
+ * it takes to undo the former and redo the latter.
+ * <p>
+ * The log header holds, besides MAGIC and VERSION, the master record: the
+ * LSN of the END_CHECKPOINT record of the last checkpoint, from which restart
+ * recovery finds where to begin.
+ * <p>
+ * All methods may be called from several threads at once.
+ */
+public class LogMgr implements Closeable {
+
+    /** MAGIC: the first four bytes of a log */
+    public static final int MAGIC = 0x4D424C47;
+
+    /** VERSION: the format version written after MAGIC */
+    public static final int VERSION = 2;
+
+    /** MASTER_OFFSET: where the master record, the LSN of the last checkpoint, is in the header */
+    static final long MASTER_OFFSET = 8;
+
+    /** FIRST_LSN: the LSN of the first record, after the header; LSN 0 stands for no record */
+    public static final long FIRST_LSN = 16;
+
+    /** BUFFER_SIZE: bytes buffered before the flusher writes them out without waiting for a commit */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** channel: the log file */
+    private final FileChannel channel;
+
+    /** lock: guards the buffer and everything below but flushedLsn; work wakes the flusher,
+     * flushed the threads waiting for it */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    /** buffer: the records appended but not yet handed to the flusher, starting at LSN bufferStart */
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bufferStart;
+
+    /** spare: the buffer the flusher writes out, swapped with buffer */
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** endLsn: where the next record is going to start */
+    private long endLsn;
+
+    /** flushedLsn: the log is durable up to here, exclusive */
+    private volatile long flushedLsn;
+
+    /** requested: the LSN up to which, exclusive, someone waits for the log to be durable */
+    private long requested = 0;
+
+    /** lastLsn: the last record of each transaction that has neither committed nor aborted */
+    private final Map<Integer, Long> lastLsn = new HashMap<Integer, Long>();
+
+    /** checkpointLsn: the master record, 0 while there was no checkpoint; changed under masterLock */
+    private volatile long checkpointLsn = 0;
+    private final Object masterLock = new Object();
+
+    /** groupCommitNanos: how long the flusher waits for more commits to join a force */
+    private final long groupCommitNanos;
+
+    /** failure: the write or force that failed, after which the log is unusable */
+    private IOException failure = null;
+
+    /** closed: whether close was called */
+    private boolean closed = false;
+
+    /** the flusher thread */
+    private final Thread flusher;
+
+    /** records, commits and forces: counts of records appended, commits and forces of the log file */
+    private long records = 0;
+    private long commits = 0;
+    private long forces = 0;
+
+    /**
+     * Opens a log, creating it if the file does not exist, with no wait for
+     * commits to join a force beyond the time the force before takes.
+     *
+     * @throws IOException if the file cannot be opened or is not a log
+     */
+    public LogMgr(String path) throws IOException {
+        this(path, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Opens a log, creating it if the file does not exist. The records of an
+     * existing log are kept, up to the first one that was not written whole.
+     *
+     * @param groupCommitDelay
+     *            how long a force waits for more commits to join it; longer
+     *            delays save forces when many transactions commit at once, at
+     *            the cost of commit latency
+     * @param unit
+     *            the unit of groupCommitDelay
+     * @throws IOException if the file cannot be opened or is not a log
+     */
+    public LogMgr(String path, long groupCommitDelay, TimeUnit unit) throws IOException {
+        groupCommitNanos = unit.toNanos(groupCommitDelay);
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate((int) FIRST_LSN);
+                header.putInt(MAGIC).putInt(VERSION).putLong(0).flip();
+                channel.write(header, 0);
+                channel.force(true);
+                endLsn = FIRST_LSN;
+            } else {
+                //drop a torn record at the end, which was never durable
+                try (LogReader reader = new LogReader(path, FIRST_LSN)) {
+                    while (reader.next() != null) {
+                        //just finding the end
+                    }
+                    endLsn = reader.getNextLsn();
+                    checkpointLsn = reader.getCheckpointLsn();
+                }
+                channel.truncate(endLsn);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        bufferStart = endLsn;
+        flushedLsn = endLsn;
+
+        flusher = new Thread(this::runFlusher, "logmgr-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Logs a change of the bytes of a page starting at offset from before to
+     * after, by a transaction. The record is not durable yet.
+     *
+     * @return the LSN of the record
+     * @throws IOException if the log is closed or could not be written
+     */
+    public long logUpdate(int txId, int pageno, int offset, byte[] before, byte[] after) throws IOException {
+        return append(LogRecord.update(txId, pageno, offset, before, after));
+    }
+
+    /**
+     * Commits a transaction: logs its COMMIT record and waits until the log is
+     * durable up to it.
+     *
+     * @return the LSN of the COMMIT record
+     * @throws IOException if the log is closed or could not be written
+     */
+    public long commit(int txId) throws IOException {
+        long lsn = append(LogRecord.of(LogRecord.COMMIT, txId));
+        flush(lsn);
+        lock.lock();
+        try {
+            commits++;
+        } finally {
+            lock.unlock();
+        }
+        return lsn;
+    }
+
+    /**
+     * Logs that a transaction aborted, once its changes have been undone. The
+     * record is not durable yet.
+     *
+     * @return the LSN of the ABORT record
+     * @throws IOException if the log is closed or could not be written
+     */
+    public long abort(int txId) throws IOException {
+        return append(LogRecord.of(LogRecord.ABORT, txId));
+    }
+
+    /**
+     * Logs the beginning of a checkpoint. The dirty page table of the
+     * checkpoint is to be taken after this returns, so that the restart
+     * analysis, scanning the log from here, sees every change the table
+     * misses.
+     *
+     * @return the LSN of the BEGIN_CHECKPOINT record
+     * @throws IOException if the log is closed or could not be written
+     */
+    public long beginCheckpoint() throws IOException {
+        return append(LogRecord.of(LogRecord.BEGIN_CHECKPOINT, 0));
+    }
+
+    /**
+     * Logs the end of a checkpoint with its dirty page table and the
+     * transactions active now, waits until it is durable and makes it the
+     * master record, unless a later checkpoint got there first.
+     *
+     * @param beginLsn
+     *            the LSN beginCheckpoint returned
+     * @param dirtyPages
+     *            the pages dirty as of beginLsn, each with its recLSN, the LSN
+     *            of the first change since it was last written
+     * @return the LSN restart recovery begins redo at: the smallest recLSN, or
+     *         beginLsn if no page was dirty
+     * @throws IOException if the log is closed or could not be written
+     */
+    public long endCheckpoint(long beginLsn, Map<Integer, Long> dirtyPages) throws IOException {
+        long redoLsn = beginLsn;
+        for (long recLsn : dirtyPages.values()) {
+            redoLsn = Math.min(redoLsn, recLsn);
+        }
+        long lsn;
+        lock.lock();
+        try {
+            lsn = append(LogRecord.endCheckpoint(beginLsn, redoLsn, dirtyPages, lastLsn));
+        } finally {
+            lock.unlock();
+        }
+        flush(lsn);
+
+        synchronized (masterLock) {
+            if (lsn > checkpointLsn) {
+                ByteBuffer master = ByteBuffer.allocate(8);
+                master.putLong(lsn).flip();
+                while (master.hasRemaining()) {
+                    channel.write(master, MASTER_OFFSET + master.position());
+                }
+                channel.force(false);
+                checkpointLsn = lsn;
+            }
+        }
+        return redoLsn;
+    }
+
+    /**
+     * Appends a record to the log buffer, chaining it to its transaction's
+     * previous record.
+     */
+    long append(LogRecord r) throws IOException {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new IOException("LogMgr: the log is closed");
+            }
+            Long prev = r.isTransactional() ? lastLsn.get(r.getTxId()) : null;
+            r.prevLsn = prev == null ? 0 : prev;
+            int size = r.size();
+            if (buffer.remaining() < size) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + size));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            r.lsn = endLsn;
+            r.writeTo(buffer);
+            endLsn += size;
+            records++;
+            if (r.getType() == LogRecord.COMMIT || r.getType() == LogRecord.ABORT) {
+                lastLsn.remove(r.getTxId());
+            } else if (r.isTransactional()) {
+                lastLsn.put(r.getTxId(), r.lsn);
+            }
+
+            //write out full buffers without waiting for a commit
+            if (buffer.position() >= BUFFER_SIZE) {
+                work.signal();
+            }
+            return r.lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record at the given LSN and every one before it are
+     * durable. Returns at once for LSN 0 and for records already durable.
+     *
+     * @throws IOException if the log could not be written
+     */
+    public void flush(long lsn) throws IOException {
+        if (flushedLsn > lsn) {
+            return;
+        }
+        lock.lock();
+        try {
+            long upTo = Math.min(lsn + 1, endLsn);
+            if (upTo > requested) {
+                requested = upTo;
+                work.signal();
+            }
+            while (flushedLsn < upTo) {
+                if (failure != null) {
+                    throw failure;
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is durable.
+     *
+     * @throws IOException if the log could not be written
+     */
+    public void flushAll() throws IOException {
+        flush(getEndLsn() - 1);
+    }
+
+    /**
+     * Writes out the log buffer whenever a flush is waited for or the buffer
+     * is full, forcing the log file after each write.
+     */
+    private void runFlusher() {
+        lock.lock();
+        try {
+            while (true) {
+                while (!closed && requested <= flushedLsn && buffer.position() < BUFFER_SIZE) {
+                    work.awaitUninterruptibly();
+                }
+                if (buffer.position() == 0) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+
+                //give commits coming in right behind a moment to join this force
+                long wait = closed ? 0 : groupCommitNanos;
+                while (wait > 0) {
+                    try {
+                        wait = work.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+
+                ByteBuffer out = buffer;
+                buffer = spare;
+                buffer.clear();
+                spare = out;
+                long start = bufferStart;
+                long end = endLsn;
+                bufferStart = end;
+                IOException error = null;
+                lock.unlock();
+                try {
+                    out.flip();
+                    while (out.hasRemaining()) {
+                        channel.write(out, start + out.position());
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                if (error != null) {
+                    failure = error;
+                    flushed.signalAll();
+                    return;
+                }
+                flushedLsn = end;
+                forces++;
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns where the next record is going to start.
+     */
+    public long getEndLsn() {
+        lock.lock();
+        try {
+            return endLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the master record: the LSN of the END_CHECKPOINT record of the
+     * last checkpoint, or 0 if there was none.
+     */
+    public long getCheckpointLsn() {
+        return checkpointLsn;
+    }
+
+    /**
+     * Returns the LSN up to which, exclusive, the log is durable.
+     */
+    public long getFlushedLsn() {
+        return flushedLsn;
+    }
+
+    /**
+     * Returns the number of records appended since the log was opened.
+     */
+    public long getRecords() {
+        lock.lock();
+        try {
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of transactions committed since the log was opened.
+     */
+    public long getCommits() {
+        lock.lock();
+        try {
+            return commits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how often the log file was forced to disk since it was opened;
+     * with group commit, less often than transactions committed.
+     */
+    public long getForces() {
+        lock.lock();
+        try {
+            return forces;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes every record appended durable, stops the flusher and closes the
+     * log file.
+     *
+     * @throws IOException if the log could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package logmgr;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the records of a log written by a LogMgr in order, from a given LSN
+ * on. The log ends at the end of the file or at the first record that was
+ * not written whole, as happens when the system crashes while the log is
+ * written. Records appended after the reader was opened are not read.
+ */
+public class LogReader implements Closeable {
+
+    /** in: the log file, positioned at the next record */
+    private final DataInputStream in;
+
+    /** next: the LSN of the next record */
+    private long next;
+
+    /** checkpointLsn: the master record of the log */
+    private final long checkpointLsn;
+
+    /** end: the length of the file when the reader was opened, which no record reaches past */
+    private final long end;
+
+    /**
+     * Opens a log to read the records from the given LSN on, which must be
+     * where a record starts, or 0 for the first one.
+     *
+     * @throws IOException if the file cannot be read or is not a log
+     */
+    public LogReader(String path, long fromLsn) throws IOException {
+        FileInputStream file = new FileInputStream(path);
+        in = new DataInputStream(new BufferedInputStream(file, 1 << 16));
+        try {
+            end = file.getChannel().size();
+            if (in.readInt() != LogMgr.MAGIC) {
+                throw new IOException("LogReader: " + path + " is not a log");
+            }
+            int version = in.readInt();
+            if (version != LogMgr.VERSION) {
+                throw new IOException("LogReader: unsupported log version " + version);
+            }
+            checkpointLsn = in.readLong();
+            next = Math.max(fromLsn, LogMgr.FIRST_LSN);
+            long skip = next - LogMgr.FIRST_LSN;
+            while (skip > 0) {
+                long skipped = in.skip(skip);
+                if (skipped <= 0) {
+                    throw new EOFException("LogReader: LSN " + fromLsn + " is past the end of the log");
+                }
+                skip -= skipped;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the next record, or null at the end of the log.
+     *
+     * @throws IOException if the log cannot be read
+     */
+    public LogRecord next() throws IOException {
+        int length;
+        byte[] body;
+        try {
+            length = in.readInt();
+            //a length that was torn or never written may be anything; read no more than the file holds
+            if (length < LogRecord.HEADER_SIZE + LogRecord.CRC_SIZE || length > end - next) {
+                return null;
+            }
+            body = new byte[length - 4];
+            in.readFully(body);
+        } catch (EOFException e) {
+            //a record cut short
+            return null;
+        }
+        LogRecord r = LogRecord.readFrom(ByteBuffer.wrap(body), length, next);
+        if (r != null) {
+            next += length;
+        }
+        return r;
+    }
+
+    /**
+     * Returns the LSN of the END_CHECKPOINT record of the log's last
+     * checkpoint, or 0 if there was none, as of when the reader was opened.
+     */
+    public long getCheckpointLsn() {
+        return checkpointLsn;
+    }
+
+    /**
+     * Returns the LSN after the last record returned, where the next one
+     * would start.
+     */
+    public long getNextLsn() {
+        return next;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,314 @@
+package logmgr;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A record of the write-ahead log. An UPDATE record holds the bytes of a page
+ * range before and after a change, so that the change can be redone on the
+ * page as written before it, or undone on the page as written after it. COMMIT
+ * and ABORT records end a transaction. A checkpoint is a BEGIN_CHECKPOINT
+ * record followed by an END_CHECKPOINT record holding the dirty page table,
+ * taken after the begin record, the transactions active at the end record and
+ * the LSN redo starts at; checkpoint records belong to no transaction.
+ * <p>
+ * Each record is written as its length, its type, the transaction, the LSN of
+ * the transaction's previous record, the type's own fields and a CRC32 of
+ * everything between the length and the CRC, so that a record torn by a crash
+ * while the log was written is recognized as the end of the log.
+ */
+public class LogRecord {
+
+    /** the types of records */
+    public static final byte UPDATE = 1;
+    public static final byte COMMIT = 2;
+    public static final byte ABORT = 3;
+    public static final byte BEGIN_CHECKPOINT = 4;
+    public static final byte END_CHECKPOINT = 5;
+
+    /** HEADER_SIZE: bytes of a record before the fields of its type: length, type, transaction, previous LSN */
+    static final int HEADER_SIZE = 4 + 1 + 4 + 8;
+
+    /** CRC_SIZE: bytes of the CRC ending a record */
+    static final int CRC_SIZE = 4;
+
+    /** lsn: where the record starts in the log, set once it is appended or read */
+    long lsn;
+
+    private final byte type;
+    private final int txId;
+
+    /** prevLsn: the transaction's previous record, 0 for its first */
+    long prevLsn;
+
+    /** pageno, offset, before and after: the change an UPDATE record holds */
+    private final int pageno;
+    private final int offset;
+    private final byte[] before;
+    private final byte[] after;
+
+    /** beginLsn, redoLsn, dirtyPages and activeTransactions: the checkpoint an END_CHECKPOINT record ends;
+     * dirty pages map to their recLSN, transactions to their last record */
+    private long beginLsn;
+    private long redoLsn;
+    private Map<Integer, Long> dirtyPages;
+    private Map<Integer, Long> activeTransactions;
+
+    private LogRecord(byte type, int txId, long prevLsn, int pageno, int offset, byte[] before, byte[] after) {
+        this.type = type;
+        this.txId = txId;
+        this.prevLsn = prevLsn;
+        this.pageno = pageno;
+        this.offset = offset;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Makes an UPDATE record of a change of the bytes of a page starting at
+     * offset from before to after.
+     *
+     * @throws IllegalArgumentException if before and after differ in length or offset is negative
+     */
+    static LogRecord update(int txId, int pageno, int offset, byte[] before, byte[] after) {
+        if (before.length != after.length || offset < 0) {
+            throw new IllegalArgumentException("LogRecord: before and after images do not match");
+        }
+        return new LogRecord(UPDATE, txId, 0, pageno, offset, before.clone(), after.clone());
+    }
+
+    /**
+     * Makes a record of a type without fields of its own, such as COMMIT.
+     */
+    static LogRecord of(byte type, int txId) {
+        return new LogRecord(type, txId, 0, -1, 0, null, null);
+    }
+
+    /**
+     * Makes an END_CHECKPOINT record for the checkpoint begun at beginLsn.
+     */
+    static LogRecord endCheckpoint(long beginLsn, long redoLsn, Map<Integer, Long> dirtyPages,
+            Map<Integer, Long> activeTransactions) {
+        LogRecord r = of(END_CHECKPOINT, 0);
+        r.beginLsn = beginLsn;
+        r.redoLsn = redoLsn;
+        r.dirtyPages = Collections.unmodifiableMap(new TreeMap<Integer, Long>(dirtyPages));
+        r.activeTransactions = Collections.unmodifiableMap(new TreeMap<Integer, Long>(activeTransactions));
+        return r;
+    }
+
+    /**
+     * Returns whether the record belongs to a transaction, rather than to a
+     * checkpoint.
+     */
+    boolean isTransactional() {
+        return type == UPDATE || type == COMMIT || type == ABORT;
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getTxId() {
+        return txId;
+    }
+
+    public long getPrevLsn() {
+        return prevLsn;
+    }
+
+    /** Returns the page an UPDATE record changed, or -1. */
+    public int getPageno() {
+        return pageno;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /** Returns the LSN of the BEGIN_CHECKPOINT record an END_CHECKPOINT record ends. */
+    public long getBeginLsn() {
+        return beginLsn;
+    }
+
+    /**
+     * Returns where redo starts when recovering from the checkpoint an
+     * END_CHECKPOINT record ends: the smallest recLSN of its dirty pages, or
+     * its begin record if no page was dirty.
+     */
+    public long getRedoLsn() {
+        return redoLsn;
+    }
+
+    /** Returns the dirty pages of an END_CHECKPOINT record, each with its recLSN, by page. */
+    public Map<Integer, Long> getDirtyPages() {
+        return dirtyPages;
+    }
+
+    /** Returns the active transactions of an END_CHECKPOINT record, each with its last record. */
+    public Map<Integer, Long> getActiveTransactions() {
+        return activeTransactions;
+    }
+
+    /**
+     * Applies the change of an UPDATE record to the bytes of its page.
+     */
+    public void redo(byte[] page) {
+        System.arraycopy(after, 0, page, offset, after.length);
+    }
+
+    /**
+     * Takes the change of an UPDATE record back on the bytes of its page.
+     */
+    public void undo(byte[] page) {
+        System.arraycopy(before, 0, page, offset, before.length);
+    }
+
+    /**
+     * Returns the number of bytes the record takes in the log.
+     */
+    int size() {
+        int fields = 0;
+        if (type == UPDATE) {
+            fields = 4 + 4 + 4 + 2 * after.length;
+        } else if (type == END_CHECKPOINT) {
+            fields = (int) checkpointSize(dirtyPages.size(), activeTransactions.size());
+        }
+        return HEADER_SIZE + fields + CRC_SIZE;
+    }
+
+    /**
+     * Returns the bytes of the fields of an END_CHECKPOINT record: the begin and
+     * redo LSNs and the two tables, each a count and pairs of an int and an LSN.
+     */
+    private static long checkpointSize(long dirty, long active) {
+        return 8 + 8 + 4 + 12 * dirty + 4 + 12 * active;
+    }
+
+    /**
+     * Appends the record to a buffer with room for it.
+     */
+    void writeTo(ByteBuffer buf) {
+        int start = buf.position();
+        buf.putInt(size());
+        buf.put(type);
+        buf.putInt(txId);
+        buf.putLong(prevLsn);
+        if (type == UPDATE) {
+            buf.putInt(pageno);
+            buf.putInt(offset);
+            buf.putInt(after.length);
+            buf.put(before);
+            buf.put(after);
+        } else if (type == END_CHECKPOINT) {
+            buf.putLong(beginLsn);
+            buf.putLong(redoLsn);
+            putTable(buf, dirtyPages);
+            putTable(buf, activeTransactions);
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer covered = buf.duplicate();
+        covered.position(start + 4).limit(buf.position());
+        crc.update(covered);
+        buf.putInt((int) crc.getValue());
+    }
+
+    private static void putTable(ByteBuffer buf, Map<Integer, Long> table) {
+        buf.putInt(table.size());
+        for (Map.Entry<Integer, Long> e : table.entrySet()) {
+            buf.putInt(e.getKey());
+            buf.putLong(e.getValue());
+        }
+    }
+
+    private static Map<Integer, Long> getTable(ByteBuffer buf, int count) {
+        Map<Integer, Long> table = new TreeMap<Integer, Long>();
+        for (int i = 0; i < count; i++) {
+            table.put(buf.getInt(), buf.getLong());
+        }
+        return Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Reads the record at the start of a buffer holding it whole, given its
+     * length, which has been read off it already.
+     *
+     * @return the record, or null if it is torn or corrupt
+     */
+    static LogRecord readFrom(ByteBuffer buf, int length, long lsn) {
+        if (length < HEADER_SIZE + CRC_SIZE || buf.remaining() < length - 4) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer covered = buf.duplicate();
+        covered.limit(covered.position() + length - 4 - CRC_SIZE);
+        crc.update(covered);
+        int end = buf.position() + length - 4 - CRC_SIZE;
+        if (buf.getInt(end) != (int) crc.getValue()) {
+            return null;
+        }
+
+        byte type = buf.get();
+        int txId = buf.getInt();
+        long prevLsn = buf.getLong();
+        LogRecord r;
+        if (type == UPDATE) {
+            int pageno = buf.getInt();
+            int offset = buf.getInt();
+            int len = buf.getInt();
+            if (len < 0 || 4 + 4 + 4 + 2L * len != length - HEADER_SIZE - CRC_SIZE) {
+                return null;
+            }
+            byte[] before = new byte[len];
+            byte[] after = new byte[len];
+            buf.get(before);
+            buf.get(after);
+            r = new LogRecord(type, txId, prevLsn, pageno, offset, before, after);
+        } else if (type == END_CHECKPOINT) {
+            int fields = length - HEADER_SIZE - CRC_SIZE;
+            if (fields < checkpointSize(0, 0)) {
+                return null;
+            }
+            r = of(type, txId);
+            r.prevLsn = prevLsn;
+            r.beginLsn = buf.getLong();
+            r.redoLsn = buf.getLong();
+            int dirty = buf.getInt();
+            if (dirty < 0 || checkpointSize(dirty, 0) > fields) {
+                return null;
+            }
+            r.dirtyPages = getTable(buf, dirty);
+            int active = buf.getInt();
+            if (active < 0 || checkpointSize(dirty, active) != fields) {
+                return null;
+            }
+            r.activeTransactions = getTable(buf, active);
+        } else if (length == HEADER_SIZE + CRC_SIZE) {
+            r = new LogRecord(type, txId, prevLsn, -1, 0, null, null);
+        } else {
+            return null;
+        }
+        buf.position(end + CRC_SIZE);
+        r.lsn = lsn;
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        String[] names = { "UPDATE", "COMMIT", "ABORT", "BEGIN_CHECKPOINT", "END_CHECKPOINT" };
+        String name = type >= UPDATE && type <= END_CHECKPOINT ? names[type - 1] : "type " + type;
+        if (type == END_CHECKPOINT) {
+            return lsn + ": " + name + " begin=" + beginLsn + " redo=" + redoLsn + " dirtyPages=" + dirtyPages
+                    + " activeTransactions=" + activeTransactions;
+        }
+        return lsn + ": " + name + " tx=" + txId + " prev=" + prevLsn
+                + (type == UPDATE ? " page=" + pageno + " offset=" + offset + " length=" + after.length : "");
+    }
+}
@@ -0,0 +1,188 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+import bufmgr.BufferPoolExceededException;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that pinPageAsync pins pages on the I/O executor, once per call, and
+ * that calls for a page already being read share that read.
+ */
+public class AsyncPinTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so that only the pages pinned are read */
+	private final static int LAH_SIZE = 0;
+
+	private static PageId first_pid;
+
+	public AsyncPinTest() {
+		super("async");
+	}
+
+	/**
+	 * Starts Minibase and writes pages holding their own page numbers, pushing
+	 * them out of the pool afterwards.
+	 */
+	private void writeRun() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, 3 * BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < 3 * BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, 0, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		for (int i = 0; i < BUF_SIZE; i++) {
+			assertTrue(Minibase.BufferManager.getFrameFromPage(new PageId(first_pid.pid + i)) == null);
+		}
+		Minibase.BufferManager.getMetrics().reset();
+	}
+
+	/**
+	 * An executor that only runs its tasks when asked to.
+	 */
+	private static class ManualExecutor implements Executor {
+
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public synchronized void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		/** Runs tasks, including the ones they submit, until there are none left. */
+		void runAll() {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					if (tasks.isEmpty()) {
+						return;
+					}
+					task = tasks.remove(0);
+				}
+				task.run();
+			}
+		}
+	}
+
+	@Test
+	public void testReadsInFlight() throws Throwable {
+		writeRun();
+		List<CompletableFuture<Page>> futures = new ArrayList<CompletableFuture<Page>>();
+		for (int i = 0; i < BUF_SIZE / 2; i++) {
+			futures.add(Minibase.BufferManager.pinPageAsync(new PageId(first_pid.pid + i)));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Page pg = futures.get(i).get();
+			assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+			Integer frame = Minibase.BufferManager.getFrameFromPage(pid);
+			assertEquals(1, Minibase.BufferManager.getFrameDesc(frame).pinCount);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		assertEquals(BUF_SIZE / 2, Minibase.BufferManager.getMetrics().getMisses());
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testResidentPageDoneAtOnce() throws Throwable {
+		writeRun();
+		PageId pid = new PageId(first_pid.pid + 2 * BUF_SIZE);
+		CompletableFuture<Page> future = Minibase.BufferManager.pinPageAsync(pid);
+		assertTrue(future.isDone());
+		assertEquals(pid.pid, Convert.getIntValue(0, future.get().getpage()));
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+	}
+
+	@Test
+	public void testSharedRead() throws Throwable {
+		writeRun();
+		ManualExecutor executor = new ManualExecutor();
+		Minibase.BufferManager.setIoExecutor(executor);
+
+		// while the first read has not run, the other pins only wait for it
+		PageId pid = new PageId(first_pid.pid);
+		List<CompletableFuture<Page>> futures = new ArrayList<CompletableFuture<Page>>();
+		for (int i = 0; i < 5; i++) {
+			futures.add(Minibase.BufferManager.pinPageAsync(pid));
+		}
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+		for (CompletableFuture<Page> future : futures) {
+			assertEquals(pid.pid, Convert.getIntValue(0, future.get().getpage()));
+		}
+		assertEquals(1, Minibase.BufferManager.getMetrics().getMisses());
+		Integer frame = Minibase.BufferManager.getFrameFromPage(pid);
+		assertEquals(futures.size(), Minibase.BufferManager.getFrameDesc(frame).pinCount);
+		for (int i = 0; i < futures.size(); i++) {
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+
+	@Test
+	public void testCancelledBeforeRead() throws Throwable {
+		writeRun();
+		ManualExecutor executor = new ManualExecutor();
+		Minibase.BufferManager.setIoExecutor(executor);
+		PageId pid = new PageId(first_pid.pid);
+		CompletableFuture<Page> future = Minibase.BufferManager.pinPageAsync(pid);
+		future.cancel(false);
+		executor.runAll();
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testSharedReadCancelled() throws Throwable {
+		writeRun();
+		ManualExecutor executor = new ManualExecutor();
+		Minibase.BufferManager.setIoExecutor(executor);
+
+		// a pin that joined the read and was cancelled holds nothing once the read is done
+		PageId pid = new PageId(first_pid.pid);
+		CompletableFuture<Page> first = Minibase.BufferManager.pinPageAsync(pid);
+		CompletableFuture<Page> joined = Minibase.BufferManager.pinPageAsync(pid);
+		joined.cancel(false);
+		executor.runAll();
+		assertEquals(pid.pid, Convert.getIntValue(0, first.get().getpage()));
+		Integer frame = Minibase.BufferManager.getFrameFromPage(pid);
+		assertEquals(1, Minibase.BufferManager.getFrameDesc(frame).pinCount);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testPoolExceeded() throws Throwable {
+		writeRun();
+		Page pg = new Page();
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+		try {
+			Minibase.BufferManager.pinPageAsync(new PageId(first_pid.pid + BUF_SIZE)).get();
+			assertTrue("Failed: pool should be full", false);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BufferPoolExceededException);
+		}
+	}
+}
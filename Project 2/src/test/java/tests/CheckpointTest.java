@@ -0,0 +1,211 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import bufmgr.Checkpointer;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import logmgr.LogMgr;
+import logmgr.LogReader;
+import logmgr.LogRecord;
+
+/**
+ * Checks the dirty page table and fuzzy checkpoints: the pages dirty when a
+ * checkpoint starts are written at the given rate while pins go on, and the
+ * checkpoint is logged with where restart recovery begins.
+ */
+public class CheckpointTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 50;
+
+	/** No read-ahead, so that each miss is one page */
+	private final static int LAH_SIZE = 0;
+
+	private final String logpath = scratchFile(".minibase-checkpoint-db.log");
+
+	public CheckpointTest() {
+		super("checkpoint");
+	}
+
+	/**
+	 * Allocates count pages and changes each through the log, leaving them
+	 * unpinned and dirty; returns the first.
+	 */
+	private static PageId dirtyPages(int txId, int count) throws Throwable {
+		Page pg = new Page();
+		PageId first = Minibase.BufferManager.newPage(pg, count);
+		Minibase.BufferManager.unpinPage(first, UNPIN_CLEAN);
+		for (int i = 0; i < count; i++) {
+			PageId pid = new PageId(first.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.updatePage(txId, pid, 0, new byte[] { 1, 2, 3, 4 });
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		return first;
+	}
+
+	@Test
+	public void testDirtyPageTable() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		LogMgr log = new LogMgr(logpath);
+		Minibase.BufferManager.setLogManager(log);
+		Page pg = new Page();
+		PageId pid = Minibase.BufferManager.newPage(pg, 1);
+		assertTrue(Minibase.BufferManager.getDirtyPageTable().isEmpty());
+
+		long first = Minibase.BufferManager.updatePage(1, pid, 0, new byte[] { 1 });
+		Minibase.BufferManager.updatePage(1, pid, 1, new byte[] { 2 });
+		Map<Integer, Long> table = Minibase.BufferManager.getDirtyPageTable();
+		assertEquals(1, table.size());
+		assertEquals("Failed: recLSN is not the first change", first, (long) table.get(pid.pid));
+
+		Minibase.BufferManager.flushPage(pid);
+		assertTrue("Failed: written page still in the table", Minibase.BufferManager.getDirtyPageTable().isEmpty());
+		long again = Minibase.BufferManager.updatePage(1, pid, 2, new byte[] { 3 });
+		assertEquals(again, (long) Minibase.BufferManager.getDirtyPageTable().get(pid.pid));
+		Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+
+		Minibase.BufferManager.setLogManager(null);
+		log.close();
+	}
+
+	@Test
+	public void testCheckpointLogged() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		LogMgr log = new LogMgr(logpath);
+		Minibase.BufferManager.setLogManager(log);
+		dirtyPages(1, 10);
+		dirtyPages(2, 5);
+		log.commit(2);
+		Page pg = new Page();
+		PageId pid = Minibase.BufferManager.newPage(pg, 1);
+		long last = Minibase.BufferManager.updatePage(1, pid, 4, new byte[] { 5 });
+		Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+
+		Minibase.BufferManager.getMetrics().reset();
+		long redo = Minibase.BufferManager.checkpoint(0);
+		assertEquals(16, Minibase.BufferManager.getMetrics().getCheckpointPages());
+		assertTrue(Minibase.BufferManager.getDirtyPageTable().isEmpty());
+		long checkpoint = log.getCheckpointLsn();
+		assertTrue(checkpoint > redo);
+		Minibase.BufferManager.setLogManager(null);
+		log.close();
+
+		// the master record survives the log being opened again
+		log = new LogMgr(logpath);
+		assertEquals(checkpoint, log.getCheckpointLsn());
+		log.close();
+		try (LogReader reader = new LogReader(logpath, checkpoint)) {
+			LogRecord end = reader.next();
+			assertEquals(LogRecord.END_CHECKPOINT, end.getType());
+			assertEquals("Failed: redo does not start at the checkpoint", end.getBeginLsn(), redo);
+			assertEquals(redo, end.getRedoLsn());
+			assertTrue(end.getDirtyPages().isEmpty());
+			assertEquals(1, end.getActiveTransactions().size());
+			assertEquals("Failed: active transaction's last record", last, (long) end.getActiveTransactions().get(1));
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testRateLimitedWhilePinning() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		LogMgr log = new LogMgr(logpath);
+		Minibase.BufferManager.setLogManager(log);
+		dirtyPages(1, 20);
+		Page pg = new Page();
+		PageId other = Minibase.BufferManager.newPage(pg, 1);
+		Minibase.BufferManager.unpinPage(other, UNPIN_CLEAN);
+
+		// 20 pages at 200 a second take at least 95 ms
+		final Throwable[] error = new Throwable[1];
+		final long[] redo = new long[1];
+		Thread checkpoint = new Thread(() -> {
+			try {
+				redo[0] = Minibase.BufferManager.checkpoint(200);
+			} catch (Throwable e) {
+				error[0] = e;
+			}
+		});
+		long start = System.nanoTime();
+		checkpoint.start();
+		int pins = 0;
+		while (checkpoint.isAlive()) {
+			Minibase.BufferManager.pinPage(other, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(other, UNPIN_CLEAN);
+			pins++;
+		}
+		long elapsed = System.nanoTime() - start;
+		checkpoint.join();
+		if (error[0] != null) {
+			throw error[0];
+		}
+		assertTrue("Failed: checkpoint not rate limited, " + elapsed + " ns", elapsed >= 80000000L);
+		assertTrue("Failed: no pins during the checkpoint", pins > 0);
+		assertTrue(Minibase.BufferManager.getDirtyPageTable().isEmpty());
+		assertTrue(log.getCheckpointLsn() > redo[0]);
+
+		Minibase.BufferManager.setLogManager(null);
+		log.close();
+	}
+
+	@Test
+	public void testStopMidCheckpoint() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, 10 * BUF_SIZE, LAH_SIZE, "LRU", false);
+		LogMgr log = new LogMgr(logpath);
+		Minibase.BufferManager.setLogManager(log);
+		PageId first = dirtyPages(1, 8 * BUF_SIZE);
+
+		// stopping the checkpointer while it writes leaves the database and the log usable
+		for (int round = 0; round < 5; round++) {
+			Checkpointer checkpointer = Minibase.BufferManager.startCheckpointer(1, 0);
+			Thread.sleep(3);
+			Minibase.BufferManager.stopCheckpointer();
+			assertNull(checkpointer.getLastError());
+			dirtyPages(round + 2, 10);
+		}
+		Minibase.BufferManager.flushAllPages();
+		assertTrue(Minibase.BufferManager.getDirtyPageTable().isEmpty());
+		Page pg = new Page();
+		Minibase.BufferManager.pinPage(first, pg, PIN_DISKIO);
+		assertEquals(1, pg.getpage()[0]);
+		Minibase.BufferManager.unpinPage(first, UNPIN_CLEAN);
+		log.commit(1);
+
+		Minibase.BufferManager.setLogManager(null);
+		log.close();
+	}
+
+	@Test
+	public void testBackgroundCheckpointer() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		LogMgr log = new LogMgr(logpath);
+		Minibase.BufferManager.setLogManager(log);
+		dirtyPages(1, 10);
+		Checkpointer checkpointer = Minibase.BufferManager.startCheckpointer(10, 0);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (checkpointer.getCheckpoints() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Minibase.BufferManager.stopCheckpointer();
+		assertNull(checkpointer.getLastError());
+		assertTrue("Failed: no checkpoints taken", checkpointer.getCheckpoints() >= 2);
+		assertTrue(Minibase.BufferManager.getDirtyPageTable().isEmpty());
+		assertTrue(checkpointer.getRedoLsn() > 0);
+		assertNull(Minibase.BufferManager.getCheckpointer());
+
+		Minibase.BufferManager.setLogManager(null);
+		log.close();
+	}
+}
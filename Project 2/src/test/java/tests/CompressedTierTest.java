@@ -0,0 +1,184 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bufmgr.BufMgrMetrics;
+import bufmgr.CompressedTier;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that pages evicted from the pool are kept compressed within the
+ * tier's budget and read back from there, whole and up to date, instead of
+ * from disk.
+ */
+public class CompressedTierTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 10;
+
+	/** No read-ahead, so that each miss is one page */
+	private final static int LAH_SIZE = 0;
+
+	/** Bytes of a tuple written to the pages, of which each page holds a few */
+	private final static int TUPLE_SIZE = 32;
+
+	private static PageId first_pid;
+
+	public CompressedTierTest() {
+		super("tier");
+	}
+
+	/**
+	 * Fills a page with a few tuples of its page number and the given value,
+	 * leaving the rest of it empty.
+	 */
+	private static void fillSparse(Page pg, int pid, int value) throws IOException {
+		for (int t = 0; t < 4; t++) {
+			for (int i = 0; i < TUPLE_SIZE; i += 8) {
+				Convert.setIntValue(pid, t * TUPLE_SIZE + i, pg.getpage());
+				Convert.setIntValue(value, t * TUPLE_SIZE + i + 4, pg.getpage());
+			}
+		}
+	}
+
+	/**
+	 * Starts Minibase with a compressed tier of the given budget and writes
+	 * sparse pages holding 0, pushing most of them out of the pool.
+	 */
+	private void writeRun(int count, long budget) throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Minibase.BufferManager.setCompressedTierBudget(budget);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, count);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < count; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			fillSparse(pg, pid.pid, 0);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		Minibase.BufferManager.getMetrics().reset();
+	}
+
+	/**
+	 * Pins a page and checks it holds the given value, and nothing but its tuples.
+	 */
+	private static void checkPage(int offset, int value) throws Throwable {
+		Page pg = new Page();
+		PageId pid = new PageId(first_pid.pid + offset);
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		Page expected = new Page();
+		fillSparse(expected, pid.pid, value);
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			assertEquals(expected.getpage()[i], pg.getpage()[i]);
+		}
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+	}
+
+	@Test
+	public void testMissesReadFromTier() throws Throwable {
+		writeRun(3 * BUF_SIZE, 1 << 20);
+		CompressedTier tier = Minibase.BufferManager.getCompressedTier();
+		assertTrue(tier.getPages() >= 2 * BUF_SIZE);
+		assertTrue(tier.getCompressionRatio() > 3);
+
+		// every page that was pushed out comes back from the tier, and leaves it
+		for (int i = 0; i < 2 * BUF_SIZE; i++) {
+			checkPage(i, 0);
+		}
+		BufMgrMetrics metrics = Minibase.BufferManager.getMetrics();
+		assertEquals(2 * BUF_SIZE, metrics.getMisses());
+		assertEquals(2 * BUF_SIZE, metrics.getCompressedHits());
+
+		// a page changed in the pool, which it came back to from the tier once more, is kept
+		// as it was when it left again
+		Page pg = new Page();
+		Minibase.BufferManager.pinPage(first_pid, pg, PIN_DISKIO);
+		fillSparse(pg, first_pid.pid, 7);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_DIRTY);
+		for (int i = 2 * BUF_SIZE; i < 3 * BUF_SIZE; i++) {
+			checkPage(i, 0);
+		}
+		assertTrue(Minibase.BufferManager.getFrameFromPage(first_pid) == null);
+		checkPage(0, 7);
+		assertEquals(3 * BUF_SIZE + 2, metrics.getCompressedHits());
+	}
+
+	@Test
+	public void testBudget() throws Throwable {
+		// room for a handful of sparse pages only
+		long budget = 1000;
+		writeRun(3 * BUF_SIZE, budget);
+		CompressedTier tier = Minibase.BufferManager.getCompressedTier();
+		assertTrue(tier.getBytes() <= budget);
+		assertTrue(tier.getPages() > 0 && tier.getPages() < 2 * BUF_SIZE);
+
+		// the pages kept are the ones evicted last, so the first ones come from disk
+		checkPage(0, 0);
+		assertEquals(0, Minibase.BufferManager.getMetrics().getCompressedHits());
+
+		// a freed page is dropped, and a smaller budget drops the oldest pages
+		int last = first_pid.pid + 2 * BUF_SIZE - 1;
+		assertTrue(tier.contains(last));
+		Minibase.BufferManager.freePage(new PageId(last));
+		assertTrue(!tier.contains(last));
+		int pages = tier.getPages();
+		Minibase.BufferManager.setCompressedTierBudget(tier.getBytes() / 2);
+		assertTrue(tier.getPages() < pages);
+		Minibase.BufferManager.setCompressedTierBudget(0);
+		assertTrue(Minibase.BufferManager.getCompressedTier() == null);
+	}
+
+	@Test
+	public void testIncompressiblePages() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Minibase.BufferManager.setCompressedTierBudget(1 << 20);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, 3 * BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+
+		// random pages are not kept, pages of other patterns come back whole
+		Random random = new Random(448);
+		byte[][] contents = new byte[3 * BUF_SIZE][PAGE_SIZE];
+		for (int i = 0; i < contents.length; i++) {
+			if (i % 3 == 0) {
+				random.nextBytes(contents[i]);
+			} else if (i % 3 == 1) {
+				for (int b = 0; b < PAGE_SIZE; b++) {
+					contents[i][b] = (byte) (b % (i + 3));
+				}
+			} else {
+				byte[] block = new byte[64];
+				random.nextBytes(block);
+				for (int b = 0; b < PAGE_SIZE; b++) {
+					contents[i][b] = block[b % block.length];
+				}
+			}
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			System.arraycopy(contents[i], 0, pg.getpage(), 0, PAGE_SIZE);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		for (int i = 0; i < contents.length; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			for (int b = 0; b < PAGE_SIZE; b++) {
+				assertEquals(contents[i][b], pg.getpage()[b]);
+			}
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		assertEquals(2 * BUF_SIZE, Minibase.BufferManager.getMetrics().getCompressedHits());
+	}
+}
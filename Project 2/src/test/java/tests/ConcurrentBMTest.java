@@ -0,0 +1,327 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bufmgr.FrameDescriptor;
+import bufmgr.PageWriter;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Pins, changes and unpins pages of a working set several times the size of the
+ * pool from many threads at once, then checks that no update was lost and that
+ * every pin was released.
+ */
+public class ConcurrentBMTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 50;
+
+	/** Default number of pages to be looked ahead */
+	private final static int LAH_SIZE = 10;
+
+	/** Number of pages the threads work on; four times the pool so pages are evicted all the time */
+	private final static int NUM_PAGES = 4 * BUF_SIZE;
+
+	private final static int NUM_THREADS = 8;
+
+	private final static int OPS_PER_THREAD = 4000;
+
+	public ConcurrentBMTest() {
+		super("concurrent");
+	}
+
+	/**
+	 * Runs the threads against the current pool. Each page holds its
+	 * own page number at offset 0 followed by one counter per thread; a thread
+	 * only ever touches its own counter, so the final values must match what the
+	 * threads counted themselves.
+	 *
+	 * @param flushing
+	 *            whether one more thread keeps flushing the whole pool meanwhile
+	 */
+	private void runThreads(boolean flushing) throws Throwable {
+		// allocate and initialize the working set
+		Page pg = new Page();
+		final PageId first_pid = Minibase.BufferManager.newPage(pg, NUM_PAGES);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, 0, pg.getpage());
+			for (int t = 0; t < NUM_THREADS; t++) {
+				Convert.setIntValue(0, 4 + 4 * t, pg.getpage());
+			}
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+
+		final int[][] expected = new int[NUM_THREADS][NUM_PAGES];
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[flushing ? NUM_THREADS + 1 : NUM_THREADS];
+		if (flushing) {
+			threads[NUM_THREADS] = new Thread() {
+				public void run() {
+					try {
+						// keep flushing until the last worker is done
+						while (threads[NUM_THREADS - 1].isAlive()) {
+							Minibase.BufferManager.flushAllPages();
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+		}
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						work(id, first_pid.pid, expected[id]);
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		if (flushing) {
+			threads[NUM_THREADS].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+
+		assertEquals("Failed: pages left pinned", Minibase.BufferManager.getNumBuffers(),
+				Minibase.BufferManager.getNumUnpinned());
+
+		// every change must have survived, whether the page stayed in the pool or not
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals("Failed: wrong page in frame", pid.pid, Convert.getIntValue(0, pg.getpage()));
+			for (int t = 0; t < NUM_THREADS; t++) {
+				assertEquals("Failed: lost update on page " + pid.pid, expected[t][i],
+						Convert.getIntValue(4 + 4 * t, pg.getpage()));
+			}
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+
+	/**
+	 * One thread's share of the work: pins two random pages at a time, checks
+	 * them, and bumps its counter on one of them every other time.
+	 */
+	private void work(int id, int first, int[] counts) throws Throwable {
+		Random random = new Random(id);
+		Page pg1 = new Page();
+		Page pg2 = new Page();
+		for (int op = 0; op < OPS_PER_THREAD; op++) {
+			int i1 = random.nextInt(NUM_PAGES);
+			int i2 = random.nextInt(NUM_PAGES);
+			PageId pid1 = new PageId(first + i1);
+			PageId pid2 = new PageId(first + i2);
+			Minibase.BufferManager.pinPage(pid1, pg1, PIN_DISKIO);
+			Minibase.BufferManager.pinPage(pid2, pg2, PIN_DISKIO);
+			assertEquals(pid1.pid, Convert.getIntValue(0, pg1.getpage()));
+			assertEquals(pid2.pid, Convert.getIntValue(0, pg2.getpage()));
+
+			boolean dirty = (op & 1) == 0;
+			if (dirty) {
+				int offset = 4 + 4 * id;
+				Convert.setIntValue(Convert.getIntValue(offset, pg1.getpage()) + 1, offset, pg1.getpage());
+				counts[i1]++;
+			}
+			Minibase.BufferManager.unpinPage(pid2, UNPIN_CLEAN);
+			Minibase.BufferManager.unpinPage(pid1, dirty);
+		}
+	}
+
+	@Test
+	public void testFIFO() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "FIFO", false);
+		runThreads(false);
+	}
+
+	@Test
+	public void testLRU() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		runThreads(false);
+	}
+
+	@Test
+	public void testClock() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "Clock", false);
+		runThreads(false);
+	}
+
+	@Test
+	public void testLRUK() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU-2", false);
+		runThreads(false);
+	}
+
+	@Test
+	public void testARC() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "ARC", false);
+		runThreads(false);
+	}
+
+	@Test
+	public void testFlushWhileRunning() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		runThreads(true);
+	}
+
+	@Test
+	public void testWithPageWriter() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "Clock", false);
+		Minibase.BufferManager.startPageWriter(0.1, 0.3, 1);
+		try {
+			runThreads(false);
+		} finally {
+			Minibase.BufferManager.stopPageWriter();
+		}
+	}
+
+	@Test
+	public void testPageWriterWatermarks() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+
+		// dirty a pool full of pages of one run
+		Page pg = new Page();
+		PageId first_pid = Minibase.BufferManager.newPage(pg, BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, 0, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		assertEquals(BUF_SIZE, countDirty());
+
+		PageWriter writer = Minibase.BufferManager.startPageWriter(0.2, 0.5, 1);
+		try {
+			for (int n = 0; n < 500 && countDirty() > 0.2 * BUF_SIZE; n++) {
+				Thread.sleep(10);
+			}
+			assertTrue("Failed: writer did not clean down to the low watermark", countDirty() <= 0.2 * BUF_SIZE);
+			assertTrue("Failed: writer cleaned too much", countDirty() > 0);
+			assertTrue(writer.getLastError() == null);
+			assertTrue("Failed: writer did not write adjacent pages as runs",
+					writer.getRunsWritten() < writer.getPagesWritten());
+		} finally {
+			Minibase.BufferManager.stopPageWriter();
+		}
+
+		// the cleaned pages are on disk: read them back after pushing the run out of the pool
+		PageId other = Minibase.BufferManager.newPage(pg, BUF_SIZE);
+		Minibase.BufferManager.unpinPage(other, UNPIN_CLEAN);
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(other.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+
+	@Test
+	public void testHitsDoNotTakeReplacerLock() throws Throwable {
+		// no read-ahead, which would bring in pages past the run
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, 0, "LRU", false);
+
+		// fill the pool with a run, pinned in order; the pages of the disk manager go first
+		Page pg = new Page();
+		final PageId first_pid = Minibase.BufferManager.newPage(pg, BUF_SIZE + 1);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+
+		// hit every page again, the first one last, while another thread holds the replacer's monitor
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread hitter = new Thread() {
+			public void run() {
+				try {
+					Page page = new Page();
+					for (int i = 1; i <= BUF_SIZE; i++) {
+						PageId pid = new PageId(first_pid.pid + i % BUF_SIZE);
+						Minibase.BufferManager.pinPage(pid, page, PIN_DISKIO);
+						Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+					}
+				} catch (Throwable e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			}
+		};
+		synchronized (Minibase.BufferManager.getReplacer()) {
+			hitter.start();
+			hitter.join(10000);
+			assertTrue("Failed: hits waited for the replacer's monitor", !hitter.isAlive());
+		}
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+
+		// the replacer learns of the hits in order before it picks a victim
+		PageId pid = new PageId(first_pid.pid + BUF_SIZE);
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		assertTrue("Failed: least recently hit page not evicted", !isResident(first_pid.pid + 1));
+		assertTrue("Failed: most recently hit page evicted", isResident(first_pid.pid));
+	}
+
+	/**
+	 * Returns whether a frame holds the given page.
+	 */
+	private static boolean isResident(int pid) {
+		for (int i = 0; i < Minibase.BufferManager.getNumBuffers(); i++) {
+			if (Minibase.BufferManager.getFrameDesc(i).pageno == pid) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of frames holding a dirty page.
+	 */
+	private static int countDirty() {
+		int dirty = 0;
+		for (int i = 0; i < Minibase.BufferManager.getNumBuffers(); i++) {
+			FrameDescriptor fd = Minibase.BufferManager.getFrameDesc(i);
+			if (fd.pageno != -1 && fd.dirtyBit) {
+				dirty++;
+			}
+		}
+		return dirty;
+	}
+}
@@ -0,0 +1,131 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+import bufmgr.BufMgr;
+import bufmgr.BufMgrMetrics;
+import bufmgr.BufMgrMetricsMXBean;
+import bufmgr.BufferPoolExceededException;
+import bufmgr.MetricsSnapshot;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks the buffer manager's counters against a known sequence of pins, and
+ * that they are published over JMX.
+ */
+public class MetricsTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so every page pinned for the first time is a miss of its own */
+	private final static int LAH_SIZE = 0;
+
+	public MetricsTest() {
+		super("metrics");
+	}
+
+	@Test
+	public void testCounters() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "FIFO", false);
+		BufMgrMetrics metrics = Minibase.BufferManager.getMetrics();
+		Page pg = new Page();
+		PageId first_pid = Minibase.BufferManager.newPage(pg, 2 * BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		metrics.reset();
+		assertEquals(0, metrics.getHits() + metrics.getMisses());
+
+		// fill the pool: one miss per page but the first, which newPage brought in,
+		// and one hit per page pinning them again
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		}
+		assertEquals(BUF_SIZE - 1, metrics.getMisses());
+		assertEquals(BUF_SIZE + 1, metrics.getHits());
+		assertEquals((BUF_SIZE + 1) / (2.0 * BUF_SIZE), metrics.getHitRatio(), 1e-9);
+
+		// with everything pinned, one more page does not fit
+		try {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + BUF_SIZE), pg, PIN_DISKIO);
+			assertTrue("Failed: pool should be full", false);
+		} catch (BufferPoolExceededException e) {
+			assertEquals(1, metrics.getPoolExceeded());
+		}
+
+		// make every other page dirty and replace the first half of them; the disk
+		// manager's own pages were evicted while filling the pool, so start counting here
+		metrics.reset();
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+			Minibase.BufferManager.unpinPage(pid, i % 2 == 0);
+		}
+		for (int i = 0; i < BUF_SIZE / 2; i++) {
+			PageId pid = new PageId(first_pid.pid + BUF_SIZE + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		MetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(BUF_SIZE / 2, snapshot.getEvictions());
+		assertEquals(BUF_SIZE / 4, snapshot.getDirtyEvictions());
+		assertEquals(BUF_SIZE / 2, snapshot.getMisses());
+		assertTrue(snapshot.getMissLatencyP50Nanos() > 0);
+		assertTrue(snapshot.getMissLatencyP50Nanos() <= snapshot.getMissLatencyP99Nanos());
+		assertTrue(snapshot.getWriteBackLatencyP99Nanos() > 0);
+
+		// the rest of the dirty pages are flushed in runs
+		Minibase.BufferManager.flushAllPages();
+		assertEquals(BUF_SIZE / 4, metrics.getPagesFlushed());
+		assertEquals(Minibase.BufferManager.getLastFlushReport().getRuns(), metrics.getFlushRuns());
+
+		metrics.reset();
+		assertEquals(0, metrics.snapshot().getMisses());
+		assertEquals(0, metrics.getMissLatencyP99Nanos());
+	}
+
+	@Test
+	public void testPublishedOverJMX() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		BufMgr bufmgr = Minibase.BufferManager;
+		bufmgr.registerMBean();
+		try {
+			Page pg = new Page();
+			PageId first_pid = bufmgr.newPage(pg, 1);
+			bufmgr.unpinPage(first_pid, UNPIN_CLEAN);
+			bufmgr.pinPage(first_pid, pg, PIN_DISKIO);
+			bufmgr.unpinPage(first_pid, UNPIN_CLEAN);
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(BufMgr.MBEAN_NAME);
+			assertEquals(BUF_SIZE, server.getAttribute(name, "NumBuffers"));
+			assertEquals(bufmgr.getMetrics().getHits(), server.getAttribute(name, "Hits"));
+			CompositeData snapshot = (CompositeData) server.invoke(name, "snapshot", null, null);
+			assertEquals(bufmgr.getMetrics().getMisses(), snapshot.get("misses"));
+			BufMgrMetricsMXBean proxy = JMX.newMXBeanProxy(server, name, BufMgrMetricsMXBean.class);
+			assertEquals(bufmgr.getMetrics().getHits(), proxy.snapshot().getHits());
+
+			server.invoke(name, "reset", null, null);
+			assertEquals(0L, server.getAttribute(name, "Hits"));
+		} finally {
+			bufmgr.unregisterMBean();
+		}
+		assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(BufMgr.MBEAN_NAME)));
+	}
+}
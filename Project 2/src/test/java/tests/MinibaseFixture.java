@@ -0,0 +1,58 @@
+package tests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+
+import global.GlobalConst;
+
+/**
+ * The files of a test class that starts Minibase: a database in /tmp named
+ * after the class, and any other files its tests write. They are removed
+ * after each test, and the removal is done before the next test starts, so
+ * that it cannot hit the files the next test creates.
+ */
+public abstract class MinibaseFixture implements GlobalConst {
+
+	/** The database file of the test class */
+	protected final String dbpath;
+
+	/** Files removed after each test, the database first */
+	private final List<String> files = new ArrayList<String>();
+
+	/**
+	 * @param name
+	 *            names the database of the test class, /tmp/user.minibase-name-db
+	 */
+	protected MinibaseFixture(String name) {
+		dbpath = scratchFile(".minibase-" + name + "-db");
+	}
+
+	/**
+	 * Returns the path in /tmp of a file a test writes, which is removed after
+	 * each test along with the database.
+	 *
+	 * @param suffix
+	 *            what follows the user name in the file name
+	 */
+	protected String scratchFile(String suffix) {
+		String path = "/tmp/" + System.getProperty("user.name") + suffix;
+		files.add(path);
+		return path;
+	}
+
+	@After
+	public void removeFiles() {
+		for (String path : files) {
+			try {
+				Files.deleteIfExists(Paths.get(path));
+			} catch (IOException e) {
+				System.err.println("" + e);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bufmgr.BufferPoolExceededException;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that new pages are pinned zero-filled without a read, singly and a
+ * whole run at once.
+ */
+public class NewPageTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so that each miss is one page */
+	private final static int LAH_SIZE = 0;
+
+	public NewPageTest() {
+		super("newpage");
+	}
+
+	private static boolean isZero(Page pg) {
+		for (byte b : pg.getpage()) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Test
+	public void testNewPageSkipsRead() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Page pg = new Page();
+
+		// leave something on disk where the new page is going to be
+		PageId pid = Minibase.BufferManager.newPage(pg, 1);
+		for (int i = 0; i < pg.getpage().length; i += 4) {
+			Convert.setIntValue(-1, i, pg.getpage());
+		}
+		Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		Minibase.BufferManager.flushPage(pid);
+		Minibase.BufferManager.freePage(pid);
+
+		Minibase.BufferManager.getMetrics().reset();
+		PageId again = Minibase.BufferManager.newPage(pg, 1);
+		assertEquals("Failed: the freed page was not allocated again", pid.pid, again.pid);
+		assertTrue("Failed: new page not zero-filled", isZero(pg));
+		assertEquals(1, Minibase.BufferManager.getMetrics().getZeroFills());
+		Minibase.BufferManager.unpinPage(again, UNPIN_CLEAN);
+	}
+
+	@Test
+	public void testNewPagesPinsRun() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Minibase.BufferManager.getMetrics().reset();
+		int unpinned = Minibase.BufferManager.getNumUnpinned();
+
+		Page[] pages = new Page[BUF_SIZE / 2];
+		for (int i = 0; i < pages.length; i++) {
+			pages[i] = new Page();
+		}
+		PageId first_pid = Minibase.BufferManager.newPages(pages);
+		assertEquals(pages.length, Minibase.BufferManager.getMetrics().getZeroFills());
+		assertEquals(unpinned - pages.length, Minibase.BufferManager.getNumUnpinned());
+		for (int i = 0; i < pages.length; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			assertTrue("Failed: page " + pid.pid + " not pinned", Minibase.BufferManager.getFrameFromPage(pid) != null);
+			assertTrue("Failed: page " + pid.pid + " not zero-filled", isZero(pages[i]));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+
+		// a run larger than the pool is given back whole
+		Page[] tooMany = new Page[BUF_SIZE + 1];
+		for (int i = 0; i < tooMany.length; i++) {
+			tooMany[i] = new Page();
+		}
+		try {
+			Minibase.BufferManager.newPages(tooMany);
+			assertTrue("Failed: a run larger than the pool was pinned", false);
+		} catch (BufferPoolExceededException e) {
+			// expected
+		}
+		assertEquals(unpinned, Minibase.BufferManager.getNumUnpinned());
+		PageId next = Minibase.BufferManager.newPages(new Page[] { new Page() });
+		assertEquals("Failed: the run was not deallocated", first_pid.pid + pages.length, next.pid);
+		Minibase.BufferManager.unpinPage(next, UNPIN_CLEAN);
+	}
+}
@@ -0,0 +1,185 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import bufmgr.BufMgrMetrics;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that readOptimistic reads pages in the pool without pinning them,
+ * pins those that are not, and never returns what it read from a page while
+ * it was being replaced, nor, without pinning it, while it was being changed.
+ */
+public class OptimisticReadTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so that only the pages pinned are in the pool */
+	private final static int LAH_SIZE = 0;
+
+	/** Offset of the second copy of a page's value, far from the first one */
+	private final static int MIRROR = 512;
+
+	private static PageId first_pid;
+
+	public OptimisticReadTest() {
+		super("optimistic");
+	}
+
+	/**
+	 * Starts Minibase and writes pages holding their own page number at offset
+	 * 0 and its complement at MIRROR; the last BUF_SIZE of them stay in the pool.
+	 */
+	private void writeRun(int count) throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, count);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < count; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, 0, pg.getpage());
+			Convert.setIntValue(~pid.pid, MIRROR, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		Minibase.BufferManager.getMetrics().reset();
+	}
+
+	/**
+	 * Reads a page's value, or null if the two copies of it do not agree.
+	 */
+	private static Integer readValue(PageId pid) throws Throwable {
+		return Minibase.BufferManager.readOptimistic(pid, data -> {
+			int value = Convert.getIntValue(0, data);
+			if (Convert.getIntValue(MIRROR, data) != ~value) {
+				return null;
+			}
+			return value;
+		});
+	}
+
+	@Test
+	public void testResidentPageNotPinned() throws Throwable {
+		writeRun(BUF_SIZE);
+		PageId pid = new PageId(first_pid.pid + BUF_SIZE / 2);
+		assertEquals(pid.pid, (int) readValue(pid));
+
+		// no pin was taken, so nothing was counted
+		BufMgrMetrics metrics = Minibase.BufferManager.getMetrics();
+		assertEquals(0, metrics.getHits() + metrics.getMisses());
+		assertEquals(0, metrics.getOptimisticFallbacks());
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testFallsBackToPin() throws Throwable {
+		writeRun(2 * BUF_SIZE);
+
+		// a page that is not in the pool is read in
+		assertTrue(Minibase.BufferManager.getFrameFromPage(first_pid) == null);
+		assertEquals(first_pid.pid, (int) readValue(first_pid));
+		BufMgrMetrics metrics = Minibase.BufferManager.getMetrics();
+		assertEquals(1, metrics.getOptimisticFallbacks());
+		assertEquals(1, metrics.getMisses());
+
+		// and so is one pinned by someone else, who might be changing it
+		Page pg = new Page();
+		PageId pid = new PageId(first_pid.pid + 2 * BUF_SIZE - 1);
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		assertEquals(pid.pid, (int) readValue(pid));
+		assertEquals(2, metrics.getOptimisticFallbacks());
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testReadersSeeWholePages() throws Throwable {
+		final int numPages = 2 * BUF_SIZE;
+		writeRun(numPages);
+		final long stop = System.currentTimeMillis() + 500;
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		final AtomicInteger torn = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		// writers change both copies of a page's value, one at a time, and pin pages all over
+		// the run, so that pages are evicted and read back in all the time; each has pages of
+		// its own, as two writers changing the same page would leave it torn for good
+		for (int t = 0; t < 2; t++) {
+			final int id = t;
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						Random random = new Random(id);
+						Page pg = new Page();
+						while (System.currentTimeMillis() < stop) {
+							PageId pid = new PageId(first_pid.pid + 2 * random.nextInt(numPages / 2) + id);
+							Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+							int value = Convert.getIntValue(0, pg.getpage()) + numPages;
+							Convert.setIntValue(value, 0, pg.getpage());
+							Thread.yield();
+							Convert.setIntValue(~value, MIRROR, pg.getpage());
+							Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			});
+		}
+		for (int t = 0; t < 4; t++) {
+			final int id = t;
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						Random random = new Random(100 + id);
+						while (System.currentTimeMillis() < stop) {
+							int i = random.nextInt(numPages);
+							Integer value = readValue(new PageId(first_pid.pid + i));
+							if (value == null) {
+								torn.incrementAndGet();
+							} else {
+								assertEquals("Failed: read the wrong page", i, (value - first_pid.pid) % numPages);
+							}
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+
+		// a pin does not keep others from changing a page, so only reads that fell back to
+		// pinning it may have caught a writer halfway
+		assertTrue("Failed: read a page halfway through a change",
+				torn.get() <= Minibase.BufferManager.getMetrics().getOptimisticFallbacks());
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+}
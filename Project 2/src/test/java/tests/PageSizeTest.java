@@ -0,0 +1,104 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bufmgr.BufMgr;
+import diskmgr.DiskMgr;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that a database keeps the page size it was created with, and that
+ * the buffer pool's frames and the disk manager's space map and file
+ * directory follow it.
+ */
+public class PageSizeTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	private final static int LAH_SIZE = 0;
+
+	/** The page size of the databases created here */
+	private final static int LARGE_PAGE = 8192;
+
+	public PageSizeTest() {
+		super("pagesize");
+	}
+
+	/**
+	 * Creates a database with large pages, as Minibase does with the default
+	 * page size.
+	 */
+	private void createLargePageDB() throws Throwable {
+		Minibase.DatabaseName = dbpath;
+		Minibase.DiskManager = new DiskMgr();
+		Minibase.BufferManager = new BufMgr(BUF_SIZE, LAH_SIZE, "LRU");
+		Minibase.DiskManager.openDB(dbpath, DB_SIZE, LARGE_PAGE);
+	}
+
+	@Test
+	public void testLargePages() throws Throwable {
+		createLargePageDB();
+		assertEquals(LARGE_PAGE, Minibase.DiskManager.db_page_size());
+
+		// write to the end of pages, pushing them out of the pool
+		Page pg = new Page();
+		PageId first_pid = Minibase.BufferManager.newPage(pg, 2 * BUF_SIZE);
+		assertEquals(LARGE_PAGE, pg.getpage().length);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < 2 * BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, LARGE_PAGE - 4, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		Minibase.DiskManager.add_file_entry("large", first_pid);
+		Minibase.BufferManager.flushAllPages();
+		Minibase.DiskManager.closeDB();
+
+		// opened again, the database has the same page size and contents
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", true);
+		assertEquals(LARGE_PAGE, Minibase.DiskManager.db_page_size());
+		assertEquals(DB_SIZE, Minibase.DiskManager.db_num_pages());
+		assertEquals(first_pid.pid, Minibase.DiskManager.get_file_entry("large").pid);
+		for (int i = 0; i < 2 * BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(pid.pid, Convert.getIntValue(LARGE_PAGE - 4, pg.getpage()));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+
+		// one space-map page covers the whole database, so the first run starts right after it
+		PageId pid = Minibase.DiskManager.allocate_page(DB_SIZE - first_pid.pid - 2 * BUF_SIZE);
+		assertEquals(first_pid.pid + 2 * BUF_SIZE, pid.pid);
+		assertEquals(2, first_pid.pid);
+	}
+
+	@Test
+	public void testDefaultAndInvalidSizes() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		assertEquals(PAGE_SIZE, Minibase.DiskManager.db_page_size());
+		Page pg = new Page();
+		PageId pid = Minibase.BufferManager.newPage(pg, 1);
+		assertEquals(PAGE_SIZE, pg.getpage().length);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+
+		for (int size : new int[] { 512, 3000, 64 * 1024 }) {
+			try {
+				new DiskMgr().openDB(dbpath, DB_SIZE, size);
+				assertTrue("Failed: page size " + size + " accepted", false);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		assertTrue(DiskMgr.validPageSize(4096) && DiskMgr.validPageSize(32 * 1024));
+	}
+}
@@ -0,0 +1,108 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bufmgr.PoolPartition;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that a partition of the pool keeps its quota of frames against scans
+ * of other pages, borrows frames nobody uses and gives them back when they are
+ * wanted, and counts its own hits and misses.
+ */
+public class PartitionTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so that the pool holds exactly the pages pinned */
+	private final static int LAH_SIZE = 0;
+
+	private static PageId first_pid;
+
+	public PartitionTest() {
+		super("partition");
+	}
+
+	/**
+	 * Starts Minibase and allocates a run of pages. The first page of the run,
+	 * which newPage reads in before the run can be assigned, is not used.
+	 */
+	private void allocate(int count) throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		first_pid = Minibase.BufferManager.newPage(new Page(), count + 1);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+	}
+
+	/** Pins and unpins pages first_pid + from to first_pid + to - 1 in order. */
+	private void scan(int from, int to) throws Throwable {
+		Page pg = new Page();
+		for (int i = from; i < to; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+
+	@Test
+	public void testQuotaProtectsPartition() throws Throwable {
+		allocate(5 * BUF_SIZE / 2);
+		PoolPartition hot = Minibase.BufferManager.createPartition("hot", BUF_SIZE / 2);
+		Minibase.BufferManager.assignPages(new PageId(first_pid.pid + 1), BUF_SIZE / 2, hot);
+
+		scan(1, 1 + BUF_SIZE / 2);
+		// a scan of twice as many other pages as the pool holds, twice
+		scan(1 + BUF_SIZE / 2, 1 + 5 * BUF_SIZE / 2);
+		scan(1 + BUF_SIZE / 2, 1 + 5 * BUF_SIZE / 2);
+		scan(1, 1 + BUF_SIZE / 2);
+
+		assertEquals(BUF_SIZE / 2, hot.getFrames());
+		assertEquals(BUF_SIZE / 2, hot.getMisses());
+		assertEquals(BUF_SIZE / 2, hot.getHits());
+		assertEquals(0.5, hot.getHitRatio(), 0);
+		PoolPartition other = Minibase.BufferManager.getPartition(PoolPartition.DEFAULT);
+		assertTrue("Failed: the scan hit in a pool too small for it", other.getMisses() >= 4 * BUF_SIZE);
+	}
+
+	@Test
+	public void testIdleFramesLent() throws Throwable {
+		allocate(3 * BUF_SIZE);
+		PoolPartition small = Minibase.BufferManager.createPartition("small", BUF_SIZE / 4);
+		Minibase.BufferManager.assignPages(new PageId(first_pid.pid + 1), 3 * BUF_SIZE / 4, small);
+
+		// the frames nobody uses are lent to the partition beyond its quota
+		scan(1, 1 + 3 * BUF_SIZE / 4);
+		assertEquals(3 * BUF_SIZE / 4, small.getFrames());
+
+		// and taken back once the rest of the pool wants them
+		scan(1 + 3 * BUF_SIZE / 4, 1 + 3 * BUF_SIZE);
+		assertEquals(BUF_SIZE / 4, small.getFrames());
+	}
+
+	@Test
+	public void testQuotasChecked() throws Throwable {
+		allocate(1);
+		Minibase.BufferManager.createPartition("a", BUF_SIZE / 2);
+		try {
+			Minibase.BufferManager.createPartition("a", 1);
+			assertTrue("Failed: a partition name was taken twice", false);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			Minibase.BufferManager.createPartition("b", BUF_SIZE / 2 + 1);
+			assertTrue("Failed: more frames reserved than the pool has", false);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(2, Minibase.BufferManager.getPartitions().length);
+	}
+}
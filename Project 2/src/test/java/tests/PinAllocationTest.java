@@ -0,0 +1,120 @@
+package tests;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import bufmgr.BufMgr;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Profiles the heap allocations of the buffer manager: pinning and unpinning
+ * pages that are already in the buffer pool should not allocate at all, and a
+ * new pool should not allocate its frames before they are used.
+ */
+public class PinAllocationTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 100;
+
+	/** Default number of pages to be looked ahead */
+	private final static int LAH_SIZE = 10;
+
+	/** Number of pin/unpin pairs measured */
+	private final static int NUM_HITS = 100000;
+
+	/** Allowance for what the measurement itself allocates */
+	private final static long SLACK_BYTES = 1024;
+
+	public PinAllocationTest() {
+		super("alloc");
+	}
+
+	/**
+	 * Returns the bytes allocated so far by the current thread, or -1 if the
+	 * JVM cannot tell.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Pins and unpins a pool full of resident pages over and over, in turns
+	 * clean and dirty.
+	 */
+	private void hitLoop(PageId[] pids, Page pg, int count) throws Throwable {
+		for (int i = 0; i < count; i++) {
+			PageId pid = pids[i % pids.length];
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, (i & 1) == 0);
+		}
+	}
+
+	private void checkHitPath(String policy) throws Throwable {
+		Assume.assumeTrue("thread allocation counters not available", allocatedBytes() >= 0);
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, policy, false);
+
+		// bring a pool's worth of pages in, numbered past the small values that boxing caches
+		Page pg = new Page();
+		PageId first_pid = Minibase.BufferManager.newPage(pg, BUF_SIZE + 128);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		PageId[] pids = new PageId[BUF_SIZE];
+		for (int i = 0; i < BUF_SIZE; i++) {
+			pids[i] = new PageId(first_pid.pid + 128 + i);
+		}
+		hitLoop(pids, pg, NUM_HITS);
+
+		long before = allocatedBytes();
+		hitLoop(pids, pg, NUM_HITS);
+		long allocated = allocatedBytes() - before;
+		assertTrue("Failed: " + policy + " hit path allocated " + allocated + " bytes", allocated < SLACK_BYTES);
+	}
+
+	@Test
+	public void testFIFOHits() throws Throwable {
+		checkHitPath("FIFO");
+	}
+
+	@Test
+	public void testLRUHits() throws Throwable {
+		checkHitPath("LRU");
+	}
+
+	@Test
+	public void testClockHits() throws Throwable {
+		checkHitPath("Clock");
+	}
+
+	@Test
+	public void testARCHits() throws Throwable {
+		checkHitPath("ARC");
+	}
+
+	@Test
+	public void testLargePoolAllocatesFramesOnDemand() throws Throwable {
+		Assume.assumeTrue("thread allocation counters not available", allocatedBytes() >= 0);
+		int numbufs = 100000;
+		long before = allocatedBytes();
+		BufMgr bufmgr = new BufMgr(numbufs, LAH_SIZE, "LRU");
+		long allocated = allocatedBytes() - before;
+		assertTrue("Failed: pool allocated " + allocated + " bytes up front",
+				allocated < (long) numbufs * PAGE_SIZE / 4);
+		assertTrue(bufmgr.getNumUnpinned() == numbufs);
+	}
+}
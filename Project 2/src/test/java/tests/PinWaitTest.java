@@ -0,0 +1,269 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bufmgr.BufMgrMetrics;
+import bufmgr.BufferPoolExceededException;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that pins with a timeout wait for a frame when every frame is
+ * pinned, in the order they started waiting, give up when their time runs
+ * out, and are counted.
+ */
+public class PinWaitTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 10;
+
+	/** No read-ahead, so that each miss takes exactly one frame */
+	private final static int LAH_SIZE = 0;
+
+	private static PageId first_pid;
+
+	public PinWaitTest() {
+		super("pinwait");
+	}
+
+	/**
+	 * Starts Minibase, writes pages holding their own page numbers and pins the
+	 * first BUF_SIZE of them, which fills the pool.
+	 */
+	private void fillPool() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, 4 * BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < 4 * BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, 0, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+		assertEquals(0, Minibase.BufferManager.getNumUnpinned());
+		Minibase.BufferManager.getMetrics().reset();
+	}
+
+	/**
+	 * Starts a thread pinning the given page with a long timeout, then unpinning
+	 * it once done is set; records the page in order once it has it.
+	 */
+	private static Thread startWaiter(final int offset, final List<Integer> order, final List<Throwable> failures) {
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					PageId pid = new PageId(first_pid.pid + offset);
+					Page pg = new Page();
+					Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, 10, TimeUnit.SECONDS);
+					assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+					synchronized (order) {
+						order.add(offset);
+					}
+				} catch (Throwable e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			}
+		};
+		waiter.start();
+		return waiter;
+	}
+
+	/**
+	 * Waits until the given number of pins are queued.
+	 */
+	private static void awaitQueueDepth(int depth) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (Minibase.BufferManager.getPinQueueDepth() != depth) {
+			assertTrue("Failed: pins not queued", System.currentTimeMillis() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testWaitsForUnpin() throws Throwable {
+		fillPool();
+		List<Integer> order = new ArrayList<Integer>();
+		List<Throwable> failures = new ArrayList<Throwable>();
+		Thread waiter = startWaiter(BUF_SIZE, order, failures);
+		awaitQueueDepth(1);
+		Thread.sleep(20);
+		assertTrue("Failed: pin did not wait", waiter.isAlive());
+
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		waiter.join();
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		assertEquals(1, order.size());
+
+		BufMgrMetrics metrics = Minibase.BufferManager.getMetrics();
+		assertEquals(1, metrics.getPinWaits());
+		assertEquals(0, metrics.getPinWaitTimeouts());
+		assertEquals(0, metrics.getPinQueueDepth());
+		assertEquals(0, metrics.getPoolExceeded());
+		assertTrue(metrics.getPinWaitP50Nanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
+	@Test
+	public void testTimeout() throws Throwable {
+		fillPool();
+		Page pg = new Page();
+		long start = System.nanoTime();
+		try {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + BUF_SIZE), pg, PIN_DISKIO, 50,
+					TimeUnit.MILLISECONDS);
+			assertTrue("Failed: pool should be full", false);
+		} catch (BufferPoolExceededException e) {
+		}
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		BufMgrMetrics metrics = Minibase.BufferManager.getMetrics();
+		assertEquals(1, metrics.getPinWaitTimeouts());
+		assertEquals(1, metrics.getPoolExceeded());
+		assertEquals(0, metrics.getPinQueueDepth());
+
+		// a page in the pool needs no frame, so it is pinned at once however full the pool is
+		Minibase.BufferManager.pinPage(first_pid, pg, PIN_DISKIO, 0, TimeUnit.MILLISECONDS);
+		assertEquals(first_pid.pid, Convert.getIntValue(0, pg.getpage()));
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+	}
+
+	@Test
+	public void testServedInOrder() throws Throwable {
+		fillPool();
+		List<Integer> order = new ArrayList<Integer>();
+		List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] waiters = new Thread[BUF_SIZE / 2];
+		for (int i = 0; i < waiters.length; i++) {
+			waiters[i] = startWaiter(BUF_SIZE + i, order, failures);
+			awaitQueueDepth(i + 1);
+		}
+
+		// free one frame at a time; each goes to the pin that has waited longest
+		for (int i = 0; i < waiters.length; i++) {
+			Minibase.BufferManager.unpinPage(new PageId(first_pid.pid + i), UNPIN_CLEAN);
+			waiters[i].join();
+			if (!failures.isEmpty()) {
+				throw failures.get(0);
+			}
+			assertEquals(BUF_SIZE + i, (int) order.get(i));
+			assertEquals(waiters.length - i - 1, Minibase.BufferManager.getPinQueueDepth());
+		}
+	}
+
+	@Test
+	public void testUntimedPinDoesNotWait() throws Throwable {
+		fillPool();
+		List<Integer> order = new ArrayList<Integer>();
+		List<Throwable> failures = new ArrayList<Throwable>();
+		Thread waiter = startWaiter(BUF_SIZE, order, failures);
+		awaitQueueDepth(1);
+
+		// a pin without a timeout neither queues behind the waiter nor waits for its turn
+		long start = System.nanoTime();
+		try {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + BUF_SIZE + 1), new Page(), PIN_DISKIO);
+			assertTrue("Failed: untimed pin got a frame from a full pool", false);
+		} catch (BufferPoolExceededException e) {
+			// expected
+		}
+		assertTrue("Failed: untimed pin waited", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertEquals(1, Minibase.BufferManager.getPinQueueDepth());
+		assertEquals(1, Minibase.BufferManager.getMetrics().getPoolExceeded());
+
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		waiter.join();
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		assertEquals(1, order.size());
+		assertEquals(0, Minibase.BufferManager.getPinQueueDepth());
+	}
+
+	@Test
+	public void testInterrupted() throws Throwable {
+		fillPool();
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					Minibase.BufferManager.pinPage(new PageId(first_pid.pid + BUF_SIZE), new Page(), PIN_DISKIO, 10,
+							TimeUnit.SECONDS);
+				} catch (Throwable e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			}
+		};
+		waiter.start();
+		awaitQueueDepth(1);
+		waiter.interrupt();
+		waiter.join();
+		assertEquals(1, failures.size());
+		assertTrue(failures.get(0) instanceof InterruptedException);
+		assertEquals(0, Minibase.BufferManager.getPinQueueDepth());
+	}
+
+	@Test
+	public void testMoreThreadsThanFrames() throws Throwable {
+		fillPool();
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.unpinPage(new PageId(first_pid.pid + i), UNPIN_CLEAN);
+		}
+
+		// three threads per frame, each holding a page for a while; none may fail
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[3 * BUF_SIZE];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						Random random = new Random(id);
+						Page pg = new Page();
+						for (int n = 0; n < 200; n++) {
+							PageId pid = new PageId(first_pid.pid + random.nextInt(4 * BUF_SIZE));
+							Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, 10, TimeUnit.SECONDS);
+							assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+							Thread.yield();
+							Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+		assertEquals(0, Minibase.BufferManager.getPinQueueDepth());
+		assertEquals(0, Minibase.BufferManager.getMetrics().getPoolExceeded());
+	}
+}
@@ -0,0 +1,337 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import bufmgr.ARCReplacer;
+import bufmgr.BufferRing;
+import bufmgr.FlushReport;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that I/O on runs of adjacent pages is batched: pages following the
+ * ones pinned by a sequential reader are read into the pool ahead of time,
+ * unpinned and with the right contents, and flushing writes each run of dirty
+ * pages at once. Scans through a buffer ring leave the rest of the pool alone.
+ */
+public class ReadAheadTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 50;
+
+	/** Number of pages to be looked ahead */
+	private final static int LAH_SIZE = 10;
+
+	/** Number of pages in the file that is scanned */
+	private final static int NUM_PAGES = 4 * BUF_SIZE;
+
+	private static PageId first_pid;
+
+	public ReadAheadTest() {
+		super("readahead");
+	}
+
+	/**
+	 * Starts Minibase and writes a run of pages holding their own page numbers,
+	 * pushing them all out of the pool afterwards.
+	 */
+	private void writeRun() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, NUM_PAGES + BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, 0, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		Minibase.BufferManager.flushAllPages();
+
+		// fill the pool with the pages after the run, in random order so nothing is read ahead
+		for (int i = BUF_SIZE - 1; i >= 0; i--) {
+			PageId pid = new PageId(first_pid.pid + NUM_PAGES + (i * 7) % BUF_SIZE);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		for (int i = 0; i < NUM_PAGES; i++) {
+			assertTrue(Minibase.BufferManager.getFrameFromPage(new PageId(first_pid.pid + i)) == null);
+		}
+	}
+
+	/**
+	 * Returns whether the page is in the pool and unpinned.
+	 */
+	private static boolean residentUnpinned(int pid) {
+		Integer frame = Minibase.BufferManager.getFrameFromPage(new PageId(pid));
+		return frame != null && Minibase.BufferManager.getFrameDesc(frame).pinCount == 0;
+	}
+
+	@Test
+	public void testSequentialHint() throws Throwable {
+		writeRun();
+		Page pg = new Page();
+		Minibase.BufferManager.pinPage(first_pid, pg, PIN_DISKIO, true);
+		assertEquals(first_pid.pid, Convert.getIntValue(0, pg.getpage()));
+		for (int i = 1; i <= LAH_SIZE; i++) {
+			assertTrue("Failed: page " + i + " of the run not read ahead", residentUnpinned(first_pid.pid + i));
+		}
+		assertTrue("Failed: read too far ahead",
+				Minibase.BufferManager.getFrameFromPage(new PageId(first_pid.pid + LAH_SIZE + 1)) == null);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+
+		// the pages read ahead hold what was written to them
+		for (int i = 1; i <= LAH_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+
+	@Test
+	public void testDetectsScan() throws Throwable {
+		writeRun();
+		Page pg = new Page();
+		boolean readAhead = false;
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			// a page the scan has not pinned yet can only be in the pool if it was read ahead
+			if (i + 1 < NUM_PAGES && residentUnpinned(pid.pid + 1)) {
+				readAhead = true;
+			}
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		assertTrue("Failed: scan was not detected", readAhead);
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testDirtyVictimsHandedBack() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "ARC", false);
+		ARCReplacer arc = (ARCReplacer) Minibase.BufferManager.getReplacer();
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, 2 * BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_DIRTY);
+		for (int i = 1; i < BUF_SIZE - 1; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+
+		// the victims for read-ahead are dirty, so none is taken; they are not referenced either
+		PageId pid = new PageId(first_pid.pid + BUF_SIZE);
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, true);
+		assertTrue("Failed: read ahead into a dirty frame",
+				Minibase.BufferManager.getFrameFromPage(new PageId(pid.pid + 1)) == null);
+		assertTrue("Failed: handing a victim back counted as a ghost hit",
+				arc.getB1Hits() == 0 && arc.getB2Hits() == 0 && arc.getTargetT1Size() == 0);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+	}
+
+	@Test
+	public void testNoReadAheadForRandomPins() throws Throwable {
+		writeRun();
+		Page pg = new Page();
+		for (int i = 0; i < NUM_PAGES; i += 2) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+			assertTrue(Minibase.BufferManager.getFrameFromPage(new PageId(pid.pid + 1)) == null);
+		}
+	}
+
+	@Test
+	public void testConcurrentScans() throws Throwable {
+		writeRun();
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int start = t * NUM_PAGES / 8;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						Page pg = new Page();
+						for (int n = 0; n < 3; n++) {
+							for (int i = start; i < NUM_PAGES; i++) {
+								PageId pid = new PageId(first_pid.pid + i);
+								Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, true);
+								assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+								Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+							}
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testFlushCoalescesRuns() throws Throwable {
+		writeRun();
+		assertEquals(0, Minibase.BufferManager.flushDirtyPages().getPages());
+
+		// dirty two runs of adjacent pages, pinned out of order, and one page on its own
+		Page pg = new Page();
+		int[] offsets = { 12, 3, 10, 4, 11, 5, 13, 2, 30 };
+		for (int offset : offsets) {
+			PageId pid = new PageId(first_pid.pid + offset);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(-pid.pid, 0, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		Minibase.BufferManager.flushAllPages();
+		FlushReport report = Minibase.BufferManager.getLastFlushReport();
+		assertEquals(offsets.length, report.getPages());
+		assertEquals(3, report.getRuns());
+		assertEquals(0, Minibase.BufferManager.flushDirtyPages().getPages());
+
+		// push the pages out and read them back
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + NUM_PAGES + (i * 7) % BUF_SIZE);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		for (int offset : offsets) {
+			PageId pid = new PageId(first_pid.pid + offset);
+			assertTrue(Minibase.BufferManager.getFrameFromPage(pid) == null);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(-pid.pid, Convert.getIntValue(0, pg.getpage()));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+
+	/**
+	 * Returns how many of the pages written after the run, which writeRun leaves
+	 * in the pool, are still there.
+	 */
+	private static int fillerResident() {
+		int resident = 0;
+		for (int i = 0; i < BUF_SIZE; i++) {
+			if (Minibase.BufferManager.getFrameFromPage(new PageId(first_pid.pid + NUM_PAGES + i)) != null) {
+				resident++;
+			}
+		}
+		return resident;
+	}
+
+	@Test
+	public void testRingScanKeepsPool() throws Throwable {
+		writeRun();
+		Page pg = new Page();
+		BufferRing ring = Minibase.BufferManager.newBufferRing(16);
+		assertEquals(BUF_SIZE / 8, ring.size());
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, ring);
+			assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		assertTrue("Failed: scan took more than its ring", fillerResident() >= BUF_SIZE - ring.size());
+
+		// the same scan without a ring pushes everything out, but for the pages read
+		// ahead past its end
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		assertTrue(fillerResident() <= LAH_SIZE);
+	}
+
+	@Test
+	public void testRingLeavesReplacerAlone() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, 0, "ARC", false);
+		ARCReplacer arc = (ARCReplacer) Minibase.BufferManager.getReplacer();
+		Page pg = new Page();
+		int scanned = 16;
+		int hot = BUF_SIZE - 10;
+		first_pid = Minibase.BufferManager.newPage(pg, scanned + hot);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+
+		// read the pages to be scanned once, then push most of them out into B1 with hot pages
+		for (int i = 0; i < scanned + hot; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		for (int i = scanned; i < scanned + hot; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		long b1Hits = arc.getB1Hits();
+		long b2Hits = arc.getB2Hits();
+		int p = arc.getTargetT1Size();
+
+		// a scan through a ring reads them back without ARC taking them for ghost hits
+		BufferRing ring = Minibase.BufferManager.newBufferRing(16);
+		for (int i = 0; i < scanned; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, ring);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		assertEquals("Failed: ring misses counted as B1 hits", b1Hits, arc.getB1Hits());
+		assertEquals("Failed: ring misses counted as B2 hits", b2Hits, arc.getB2Hits());
+		assertEquals("Failed: ring scan moved p", p, arc.getTargetT1Size());
+
+		// freeing the ring hands its pages over to the pool
+		Minibase.BufferManager.freeBufferRing(ring);
+		for (int i = scanned - ring.size(); i < scanned; i++) {
+			assertTrue("Failed: page of a freed ring dropped", residentUnpinned(first_pid.pid + i));
+		}
+		for (int i = scanned; i < scanned + hot; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+
+	@Test
+	public void testRingWrite() throws Throwable {
+		writeRun();
+		Page pg = new Page();
+		BufferRing ring = Minibase.BufferManager.newBufferRing(32);
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO, ring);
+			Convert.setIntValue(-pid.pid, 0, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		assertTrue(fillerResident() >= BUF_SIZE - ring.size());
+		Minibase.BufferManager.flushAllPages();
+
+		// the pages written out as the ring came round hold what was written to them
+		for (int i = 0; i < NUM_PAGES; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(-pid.pid, Convert.getIntValue(0, pg.getpage()));
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+}
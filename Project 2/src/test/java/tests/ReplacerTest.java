@@ -0,0 +1,266 @@
+package tests;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bufmgr.ARCReplacer;
+import bufmgr.BufMgr;
+import bufmgr.UnpinHint;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that the replacementPolicy argument of the BufMgr constructor selects
+ * the matching victim on a pool full of pages from one run, and that every
+ * policy follows the hints given to unpinPage.
+ */
+public class ReplacerTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages); small so the pool fills quickly */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so that the pool holds exactly the pages pinned */
+	private final static int LAH_SIZE = 0;
+
+	private static PageId first_pid;
+
+	public ReplacerTest() {
+		super("replacer");
+	}
+
+	/**
+	 * Starts Minibase with the given policy and fills every frame with a pinned
+	 * page of one run. Page first_pid + i is pinned i-th; one more page of the
+	 * run is left on disk to force a replacement.
+	 */
+	private void fillPool(String policy) throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, policy, false);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, BUF_SIZE + 1);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+		assertTrue("Failed: pool not full after pinning a run", Minibase.BufferManager.getNumUnpinned() == 0);
+	}
+
+	/**
+	 * Pins page first_pid again so it is the most recently referenced one, then
+	 * unpins the whole run starting with it.
+	 */
+	private void repinFirstAndUnpinAll() throws Throwable {
+		Page pg = new Page();
+		Minibase.BufferManager.pinPage(first_pid, pg, PIN_DISKIO);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.unpinPage(new PageId(first_pid.pid + i), UNPIN_CLEAN);
+		}
+	}
+
+	/** POLICIES: every replacement policy, for the tests that hold for all of them */
+	private final static String[] POLICIES = { "FIFO", "LRU", "MRU", "Clock", "ARC", "LRU-2" };
+
+	/** Pins the last page of the run and returns the frame it was read into. */
+	private Integer pinLastPage() throws Throwable {
+		PageId last_pid = new PageId(first_pid.pid + BUF_SIZE);
+		Minibase.BufferManager.pinPage(last_pid, new Page(), PIN_DISKIO);
+		return Minibase.BufferManager.getFrameFromPage(last_pid);
+	}
+
+	@Test
+	public void testFIFOEvictsFirstUnpinned() throws Throwable {
+		fillPool("FIFO");
+		Integer f0 = Minibase.BufferManager.getFrameFromPage(first_pid);
+		repinFirstAndUnpinAll();
+		assertTrue("Failed: FIFO should evict the page unpinned first", f0.equals(pinLastPage()));
+	}
+
+	@Test
+	public void testLRUEvictsLeastRecentlyPinned() throws Throwable {
+		fillPool("LRU");
+		PageId second = new PageId(first_pid.pid + 1);
+		Integer f1 = Minibase.BufferManager.getFrameFromPage(second);
+		repinFirstAndUnpinAll();
+		assertTrue("Failed: LRU should evict page " + second.pid, f1.equals(pinLastPage()));
+	}
+
+	@Test
+	public void testMRUEvictsMostRecentlyPinned() throws Throwable {
+		fillPool("MRU");
+		Integer f0 = Minibase.BufferManager.getFrameFromPage(first_pid);
+		repinFirstAndUnpinAll();
+		assertTrue("Failed: MRU should evict page " + first_pid.pid, f0.equals(pinLastPage()));
+	}
+
+	@Test
+	public void testClockSkipsPinnedFrames() throws Throwable {
+		fillPool("clock");
+		PageId middle = new PageId(first_pid.pid + BUF_SIZE / 2);
+		Integer fm = Minibase.BufferManager.getFrameFromPage(middle);
+		Minibase.BufferManager.unpinPage(middle, UNPIN_CLEAN);
+		assertTrue("Failed: Clock should evict the only unpinned page " + middle.pid, fm.equals(pinLastPage()));
+	}
+
+	@Test
+	public void testLRUKEvictsPagesReferencedOnce() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU-2", false);
+		Page pg = new Page();
+		first_pid = Minibase.BufferManager.newPage(pg, BUF_SIZE + 1);
+		for (int i = 1; i < 6; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+		// Second reference to the first page, outside its correlated reference period
+		Minibase.BufferManager.pinPage(first_pid, pg, PIN_DISKIO);
+		for (int i = 6; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+
+		// The first page was referenced twice but longest ago; LRU would evict it,
+		// LRU-2 evicts the page referenced only once
+		PageId once = new PageId(first_pid.pid + BUF_SIZE - 1);
+		Integer fonce = Minibase.BufferManager.getFrameFromPage(once);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		Minibase.BufferManager.unpinPage(once, UNPIN_CLEAN);
+
+		// Move past the correlated reference period of the last pin using a page that stays pinned
+		PageId other = new PageId(first_pid.pid + 1);
+		for (int i = 0; i < 5; i++) {
+			Minibase.BufferManager.pinPage(other, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(other, UNPIN_CLEAN);
+		}
+		assertTrue("Failed: LRU-2 should evict page " + once.pid, fonce.equals(pinLastPage()));
+	}
+
+	/**
+	 * Pins and unpins a page, then moves past the correlated reference period
+	 * of that pin by pinning a page that stays pinned.
+	 */
+	private void referenceAndWait(PageId pid, PageId pinned) throws Throwable {
+		Page pg = new Page();
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		for (int i = 0; i < 5; i++) {
+			Minibase.BufferManager.pinPage(pinned, pg, PIN_DISKIO);
+		}
+	}
+
+	@Test
+	public void testLRUKForgetsFreedPages() throws Throwable {
+		// A database small enough for one space map page
+		new Minibase(dbpath, 1000, 5, LAH_SIZE, "LRU-2", false);
+		Page pg = new Page();
+		PageId pinned = Minibase.BufferManager.newPage(pg, 5);
+
+		// The directory and space map pages stay pinned, so that the pool holds one page besides a and b
+		Minibase.BufferManager.pinPage(new PageId(0), pg, PIN_DISKIO);
+		Minibase.BufferManager.pinPage(new PageId(1), pg, PIN_DISKIO);
+		PageId a = new PageId(pinned.pid + 1);
+		PageId b = new PageId(pinned.pid + 2);
+
+		// Two references to b, then two later ones to a
+		referenceAndWait(b, pinned);
+		referenceAndWait(b, pinned);
+		referenceAndWait(a, pinned);
+		referenceAndWait(a, pinned);
+		Minibase.BufferManager.pinPage(b, pg, PIN_DISKIO);
+		Minibase.BufferManager.unpinPage(b, UNPIN_CLEAN);
+
+		// Evict a while b is within its correlated reference period, then free it
+		Minibase.BufferManager.pinPage(new PageId(pinned.pid + 3), pg, PIN_DISKIO);
+		Minibase.BufferManager.unpinPage(new PageId(pinned.pid + 3), UNPIN_CLEAN);
+		assertTrue("Failed: page " + a.pid + " still resident", Minibase.BufferManager.getFrameFromPage(a) == null);
+		Minibase.BufferManager.freePage(a);
+
+		// The page allocated under a's number has been referenced once, so it goes before b
+		PageId reused = Minibase.BufferManager.newPage(pg, 1);
+		assertTrue("Failed: freed page " + a.pid + " not allocated again", reused.pid == a.pid);
+		Minibase.BufferManager.unpinPage(reused, UNPIN_DIRTY);
+		referenceAndWait(pinned, pinned);
+		Minibase.BufferManager.pinPage(new PageId(pinned.pid + 4), pg, PIN_DISKIO);
+		assertTrue("Failed: LRU-2 should evict the new page " + a.pid + ", not the one referenced twice",
+				Minibase.BufferManager.getFrameFromPage(a) == null && Minibase.BufferManager.getFrameFromPage(b) != null);
+	}
+
+	@Test
+	public void testARCAdaptsOnGhostHit() throws Throwable {
+		fillPool("ARC");
+		ARCReplacer arc = (ARCReplacer) Minibase.BufferManager.getReplacer();
+		Page pg = new Page();
+
+		// Evict a page referenced once; it moves from T1 to the ghost list B1
+		PageId ghost = new PageId(first_pid.pid + 5);
+		Minibase.BufferManager.unpinPage(ghost, UNPIN_CLEAN);
+		pinLastPage();
+		assertTrue("Failed: page " + ghost.pid + " still resident", Minibase.BufferManager.getFrameFromPage(ghost) == null);
+
+		// Bring it back: a B1 hit grows the target size of T1 and takes a T1 victim
+		PageId next = new PageId(first_pid.pid + 6);
+		Integer fnext = Minibase.BufferManager.getFrameFromPage(next);
+		Minibase.BufferManager.unpinPage(next, UNPIN_CLEAN);
+		int p = arc.getTargetT1Size();
+		Minibase.BufferManager.pinPage(ghost, pg, PIN_DISKIO);
+		assertTrue("Failed: B1 hit not counted", arc.getB1Hits() == 1 && arc.getB2Hits() == 0);
+		assertTrue("Failed: target size of T1 did not grow", arc.getTargetT1Size() > p);
+		assertTrue("Failed: ARC should evict page " + next.pid, fnext.equals(Minibase.BufferManager.getFrameFromPage(ghost)));
+	}
+
+	@Test
+	public void testHatedPageEvictedFirst() throws Throwable {
+		for (String policy : POLICIES) {
+			fillPool(policy);
+			PageId middle = new PageId(first_pid.pid + BUF_SIZE / 2);
+			Integer fm = Minibase.BufferManager.getFrameFromPage(middle);
+			for (int i = 0; i < BUF_SIZE; i++) {
+				PageId pid = new PageId(first_pid.pid + i);
+				Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN, i == BUF_SIZE / 2 ? UnpinHint.HATE : UnpinHint.NONE);
+			}
+			assertTrue("Failed: " + policy + " should evict the hated page " + middle.pid, fm.equals(pinLastPage()));
+		}
+	}
+
+	@Test
+	public void testLovedPagesPassedOver() throws Throwable {
+		for (String policy : POLICIES) {
+			fillPool(policy);
+			PageId middle = new PageId(first_pid.pid + BUF_SIZE / 2);
+			Integer fm = Minibase.BufferManager.getFrameFromPage(middle);
+			for (int i = 0; i < BUF_SIZE; i++) {
+				PageId pid = new PageId(first_pid.pid + i);
+				Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN, i == BUF_SIZE / 2 ? UnpinHint.NONE : UnpinHint.LOVE);
+			}
+			assertTrue("Failed: " + policy + " should evict the only page not loved " + middle.pid,
+					fm.equals(pinLastPage()));
+		}
+	}
+
+	@Test
+	public void testOnlyLovedPageEvicted() throws Throwable {
+		// LRU passes over the least recently used end, MRU over the other, so try a loved page at each
+		for (String policy : POLICIES) {
+			for (int i : new int[] { 0, BUF_SIZE - 1 }) {
+				fillPool(policy);
+				PageId loved = new PageId(first_pid.pid + i);
+				Integer fl = Minibase.BufferManager.getFrameFromPage(loved);
+				Minibase.BufferManager.unpinPage(loved, UNPIN_CLEAN, UnpinHint.LOVE);
+				assertTrue("Failed: " + policy + " should evict the only unpinned page " + loved.pid
+						+ " though it is loved", fl.equals(pinLastPage()));
+			}
+		}
+	}
+
+	@Test
+	public void testUnknownPolicyRejected() {
+		try {
+			new BufMgr(BUF_SIZE, LAH_SIZE, "NoSuchPolicy");
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		assertTrue("Failed: unknown replacement policy accepted", false);
+	}
+}
@@ -0,0 +1,282 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bufmgr.BufferPoolExceededException;
+import global.Convert;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Grows and shrinks the buffer pool while it is in use, checking that pages
+ * evicted by a shrink reach the disk, that pinned pages hold a shrink up, and
+ * that no update is lost while threads keep pinning during resizes.
+ */
+public class ResizeTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so that only the pages pinned are in the pool */
+	private final static int LAH_SIZE = 0;
+
+	private final static int NUM_THREADS = 4;
+
+	private final static int OPS_PER_THREAD = 4000;
+
+	public ResizeTest() {
+		super("resize");
+	}
+
+	/**
+	 * Allocates a run of pages, each holding its own page number followed by a
+	 * zero counter per thread.
+	 */
+	private static PageId writeRun(int count) throws Throwable {
+		Page pg = new Page();
+		PageId first_pid = Minibase.BufferManager.newPage(pg, count);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+		for (int i = 0; i < count; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(pid.pid, 0, pg.getpage());
+			for (int t = 0; t < NUM_THREADS; t++) {
+				Convert.setIntValue(0, 4 + 4 * t, pg.getpage());
+			}
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		return first_pid;
+	}
+
+	@Test
+	public void testGrow() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Page pg = new Page();
+		PageId first_pid = writeRun(3 * BUF_SIZE);
+
+		// pin a full pool, then make room for as many pages again
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+		try {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + BUF_SIZE), pg, PIN_DISKIO);
+			assertTrue("Failed: pool should be full", false);
+		} catch (BufferPoolExceededException e) {
+		}
+		Minibase.BufferManager.resize(2 * BUF_SIZE);
+		assertEquals(2 * BUF_SIZE, Minibase.BufferManager.getNumBuffers());
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+		for (int i = BUF_SIZE; i < 2 * BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+		}
+		assertEquals(0, Minibase.BufferManager.getNumUnpinned());
+		for (int i = 0; i < 2 * BUF_SIZE; i++) {
+			Minibase.BufferManager.unpinPage(new PageId(first_pid.pid + i), UNPIN_CLEAN);
+		}
+		assertEquals(2 * BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testShrinkWritesDirtyPages() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "ARC", false);
+		Page pg = new Page();
+		PageId first_pid = writeRun(BUF_SIZE);
+
+		// change every page, then shrink the pool to a quarter of its size
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Convert.setIntValue(-pid.pid, 0, pg.getpage());
+			Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		}
+		Minibase.BufferManager.resize(BUF_SIZE / 4);
+		assertEquals(BUF_SIZE / 4, Minibase.BufferManager.getNumBuffers());
+		for (int i = BUF_SIZE / 4; i < BUF_SIZE; i++) {
+			assertEquals(-1, Minibase.BufferManager.getFrameDesc(i).pageno);
+			assertTrue(Minibase.BufferManager.getPageFromFrame(i) == null);
+		}
+
+		// the changes made it to disk and the smaller pool still works
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			assertEquals(-pid.pid, Convert.getIntValue(0, pg.getpage()));
+			assertTrue(Minibase.BufferManager.getFrameFromPage(pid) < BUF_SIZE / 4);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+
+		// and grows back
+		Minibase.BufferManager.resize(BUF_SIZE);
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+		assertEquals(0, Minibase.BufferManager.getNumUnpinned());
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.unpinPage(new PageId(first_pid.pid + i), UNPIN_CLEAN);
+		}
+	}
+
+	@Test
+	public void testShrinkWaitsForPinnedPages() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "Clock", false);
+		Page pg = new Page();
+		PageId first_pid = writeRun(BUF_SIZE);
+
+		// pin every page, so that the frames to drop all hold pinned ones
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread resizer = new Thread() {
+			public void run() {
+				try {
+					Minibase.BufferManager.resize(BUF_SIZE / 2);
+				} catch (Throwable e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			}
+		};
+		resizer.start();
+		resizer.join(100);
+		assertTrue("Failed: shrink did not wait for pinned pages", resizer.isAlive());
+
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.unpinPage(new PageId(first_pid.pid + i), UNPIN_CLEAN);
+		}
+		resizer.join();
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		assertEquals(BUF_SIZE / 2, Minibase.BufferManager.getNumBuffers());
+		assertEquals(BUF_SIZE / 2, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	@Test
+	public void testShrinkInterrupted() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "FIFO", false);
+		Page pg = new Page();
+		PageId first_pid = writeRun(2 * BUF_SIZE);
+
+		// pin every other page; the shrink evicts the rest and then waits
+		for (int i = 0; i < BUF_SIZE; i += 2) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + i), pg, PIN_DISKIO);
+		}
+
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread resizer = new Thread() {
+			public void run() {
+				try {
+					Minibase.BufferManager.resize(1);
+				} catch (Throwable e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			}
+		};
+		resizer.start();
+		resizer.join(100);
+		resizer.interrupt();
+		resizer.join();
+		assertEquals(1, failures.size());
+		assertTrue(failures.get(0) instanceof InterruptedException);
+
+		// the pool kept its size, and the frames emptied meanwhile are usable again
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumBuffers());
+		for (int i = 0; i < BUF_SIZE; i += 2) {
+			PageId pid = new PageId(first_pid.pid + i);
+			assertTrue(Minibase.BufferManager.getFrameFromPage(pid) != null);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		for (int i = 0; i < BUF_SIZE; i++) {
+			Minibase.BufferManager.pinPage(new PageId(first_pid.pid + BUF_SIZE + i), pg, PIN_DISKIO);
+		}
+		assertEquals(0, Minibase.BufferManager.getNumUnpinned());
+	}
+
+	private static boolean anyAlive(Thread[] threads) {
+		for (Thread thread : threads) {
+			if (thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testResizeUnderLoad() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		final PageId first_pid = writeRun(4 * BUF_SIZE);
+		final int numPages = 4 * BUF_SIZE;
+
+		// each thread counts its own pins of each page in the page, at an offset of its own
+		final int[][] expected = new int[NUM_THREADS][numPages];
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						Random random = new Random(id);
+						Page pg = new Page();
+						for (int n = 0; n < OPS_PER_THREAD; n++) {
+							int i = random.nextInt(numPages);
+							PageId pid = new PageId(first_pid.pid + i);
+							Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+							assertEquals(pid.pid, Convert.getIntValue(0, pg.getpage()));
+							int offset = 4 + 4 * id;
+							Convert.setIntValue(Convert.getIntValue(offset, pg.getpage()) + 1, offset, pg.getpage());
+							expected[id][i]++;
+							Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		// grow past the arrays and shrink below where the pool started, while the threads run
+		int[] sizes = { 3 * BUF_SIZE, BUF_SIZE / 2, 5 * BUF_SIZE, 2 * NUM_THREADS, BUF_SIZE };
+		for (int n = 0; n < sizes.length || anyAlive(threads); n++) {
+			Minibase.BufferManager.resize(sizes[n % sizes.length]);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		Minibase.BufferManager.resize(BUF_SIZE);
+		assertEquals(BUF_SIZE, Minibase.BufferManager.getNumUnpinned());
+
+		Page pg = new Page();
+		for (int i = 0; i < numPages; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			for (int t = 0; t < NUM_THREADS; t++) {
+				assertEquals("Failed: lost update", expected[t][i], Convert.getIntValue(4 + 4 * t, pg.getpage()));
+			}
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+	}
+}
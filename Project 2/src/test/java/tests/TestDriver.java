@@ -6,7 +6,12 @@ import org.junit.runner.notification.Failure;
 
 public class TestDriver {
 	public static void main(String[] args) {
-		Result result = JUnitCore.runClasses(tests.BMTest.class);
+		Result result = JUnitCore.runClasses(tests.BMTest.class, tests.ReplacerTest.class, tests.ConcurrentBMTest.class,
+				tests.PinAllocationTest.class, tests.ReadAheadTest.class,
+				tests.MetricsTest.class, tests.ResizeTest.class, tests.PinWaitTest.class,
+				tests.AsyncPinTest.class, tests.OptimisticReadTest.class, tests.TraceTest.class,
+				tests.PageSizeTest.class, tests.CompressedTierTest.class, tests.NewPageTest.class,
+				tests.PartitionTest.class, tests.WalTest.class, tests.CheckpointTest.class);
 
 		for (Failure failure : result.getFailures()) {
 			System.out.println(failure.toString());
@@ -0,0 +1,120 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bufmgr.TraceReader;
+import bufmgr.TraceRecorder;
+import bufmgr.TraceSimulator;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Checks that a page trace records the page accesses made while it is taken,
+ * and that replaying it with the pool's own size and policy misses as often
+ * as the pool did.
+ */
+public class TraceTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, which the simulator does not do either */
+	private final static int LAH_SIZE = 0;
+
+	private final String tracepath = scratchFile(".minibase-trace");
+
+	public TraceTest() {
+		super("trace");
+	}
+
+	@Test
+	public void testRecordsAccesses() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Minibase.BufferManager.startTrace(tracepath);
+		Page pg = new Page();
+		PageId first_pid = Minibase.BufferManager.newPage(pg, 3);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_DIRTY);
+		PageId pid = new PageId(first_pid.pid + 1);
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		Minibase.BufferManager.freePage(new PageId(first_pid.pid + 2));
+		long events = Minibase.BufferManager.stopTrace();
+
+		// the disk manager pins pages of its own when allocating, so only look at the run
+		int[][] expected = { { TraceRecorder.NEW, 0 }, { TraceRecorder.PIN, 0 }, { TraceRecorder.UNPIN, 0 },
+				{ TraceRecorder.PIN, 1 }, { TraceRecorder.UNPIN, 1 }, { TraceRecorder.FREE, 2 } };
+		List<int[]> seen = new ArrayList<int[]>();
+		long read = 0;
+		long time = 0;
+		try (TraceReader reader = new TraceReader(tracepath)) {
+			while (reader.next()) {
+				read++;
+				assertTrue(reader.getTimeNanos() >= time);
+				time = reader.getTimeNanos();
+				int offset = reader.getPageno() - first_pid.pid;
+				if (offset >= 0 && offset < 3) {
+					seen.add(new int[] { reader.getOp(), offset });
+					assertEquals(reader.getOp() == TraceRecorder.UNPIN && offset == 0, reader.isDirty());
+				}
+			}
+		}
+		assertEquals(events, read);
+		assertEquals(expected.length, seen.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], seen.get(i)[0]);
+			assertEquals(expected[i][1], seen.get(i)[1]);
+		}
+
+		// nothing is recorded once the trace is stopped
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		assertEquals(0, Minibase.BufferManager.stopTrace());
+	}
+
+	@Test
+	public void testSimulatorMatchesPool() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		Page pg = new Page();
+		PageId first_pid = Minibase.BufferManager.newPage(pg, 4 * BUF_SIZE);
+		Minibase.BufferManager.unpinPage(first_pid, UNPIN_CLEAN);
+
+		// push the pages traced below out of the pool, so that they miss the first time
+		// there as well as in the simulated pool, which starts out empty
+		for (int i = 3 * BUF_SIZE; i < 4 * BUF_SIZE; i++) {
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		}
+		Minibase.BufferManager.getMetrics().reset();
+
+		// a skewed workload over three times as many pages as frames
+		Minibase.BufferManager.startTrace(tracepath);
+		Random random = new Random(448);
+		for (int n = 0; n < 2000; n++) {
+			int i = random.nextInt(4) == 0 ? random.nextInt(3 * BUF_SIZE) : random.nextInt(BUF_SIZE / 2);
+			PageId pid = new PageId(first_pid.pid + i);
+			Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+			Minibase.BufferManager.unpinPage(pid, n % 3 == 0);
+		}
+		Minibase.BufferManager.stopTrace();
+
+		TraceSimulator simulator = new TraceSimulator(tracepath);
+		assertEquals(2000, simulator.getPins());
+		assertEquals(Minibase.BufferManager.getMetrics().getMisses(), simulator.countMisses("LRU", BUF_SIZE));
+
+		// a pool holding every page only misses each page once; a bigger one never misses more
+		assertEquals(simulator.getDistinctPages(), simulator.countMisses("Clock", 3 * BUF_SIZE));
+		assertTrue(simulator.missRatio("LRU", 2 * BUF_SIZE) <= simulator.missRatio("LRU", BUF_SIZE));
+	}
+}
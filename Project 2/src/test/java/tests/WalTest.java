@@ -0,0 +1,189 @@
+package tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import logmgr.LogMgr;
+import logmgr.LogReader;
+import logmgr.LogRecord;
+
+/**
+ * Checks the write-ahead log: commits are durable when they return, commits
+ * arriving together share forces, no page is written ahead of its log
+ * records, and a record torn at the end of the log is dropped.
+ */
+public class WalTest extends MinibaseFixture {
+
+	/** Default database size (in pages). */
+	private final static int DB_SIZE = 10000;
+
+	/** Buffer pool size (in pages) */
+	private final static int BUF_SIZE = 20;
+
+	/** No read-ahead, so that each miss is one page */
+	private final static int LAH_SIZE = 0;
+
+	private final String logpath = scratchFile(".minibase-wal-db.log");
+
+	public WalTest() {
+		super("wal");
+	}
+
+	@Test
+	public void testCommitIsDurable() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		LogMgr log = new LogMgr(logpath);
+		Minibase.BufferManager.setLogManager(log);
+		Page pg = new Page();
+		PageId pid = Minibase.BufferManager.newPage(pg, 1);
+
+		long first = Minibase.BufferManager.updatePage(7, pid, 0, new byte[] { 1, 2, 3 });
+		long second = Minibase.BufferManager.updatePage(7, pid, 10, new byte[] { 4 });
+		assertEquals("Failed: change not made to the page", 2, pg.getpage()[1]);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		assertEquals(0, log.getForces());
+
+		long commit = log.commit(7);
+		assertTrue("Failed: commit returned before it was durable", log.getFlushedLsn() > commit);
+		assertEquals(1, log.getForces());
+		log.close();
+		Minibase.BufferManager.setLogManager(null);
+
+		try (LogReader reader = new LogReader(logpath, LogMgr.FIRST_LSN)) {
+			LogRecord r = reader.next();
+			assertEquals(first, r.getLsn());
+			assertEquals(LogRecord.UPDATE, r.getType());
+			assertEquals(pid.pid, r.getPageno());
+			assertEquals(0, r.getPrevLsn());
+			byte[] bytes = new byte[4];
+			r.redo(bytes);
+			assertArrayEquals(new byte[] { 1, 2, 3, 0 }, bytes);
+			r.undo(bytes);
+			assertArrayEquals(new byte[4], bytes);
+
+			r = reader.next();
+			assertEquals(second, r.getLsn());
+			assertEquals("Failed: records of a transaction not chained", first, r.getPrevLsn());
+			r = reader.next();
+			assertEquals(LogRecord.COMMIT, r.getType());
+			assertEquals(second, r.getPrevLsn());
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testGroupCommit() throws Throwable {
+		final LogMgr log = new LogMgr(logpath, 5, TimeUnit.MILLISECONDS);
+		final int threads = 8;
+		final int commits = 20;
+		Thread[] workers = new Thread[threads];
+		final Throwable[] error = new Throwable[1];
+		for (int t = 0; t < threads; t++) {
+			final int tx = t * commits;
+			workers[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < commits; i++) {
+						log.logUpdate(tx + i, i, 0, new byte[8], new byte[] { 1, 1, 1, 1, 1, 1, 1, 1 });
+						log.commit(tx + i);
+					}
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread w : workers) {
+			w.join();
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+		assertEquals(threads * commits, log.getCommits());
+		assertTrue("Failed: commits did not share forces, " + log.getForces() + " forces",
+				log.getForces() < threads * commits);
+		log.close();
+	}
+
+	@Test
+	public void testPageNotWrittenAheadOfLog() throws Throwable {
+		new Minibase(dbpath, DB_SIZE, BUF_SIZE, LAH_SIZE, "LRU", false);
+		LogMgr log = new LogMgr(logpath);
+		Minibase.BufferManager.setLogManager(log);
+		Page pg = new Page();
+		PageId pid = Minibase.BufferManager.newPage(pg, 1);
+		long lsn = Minibase.BufferManager.updatePage(1, pid, 0, new byte[] { 42 });
+		Minibase.BufferManager.unpinPage(pid, UNPIN_DIRTY);
+		assertTrue("Failed: log forced before it had to be", log.getFlushedLsn() <= lsn);
+
+		// push the dirty page out of the pool without committing
+		for (int i = 0; i < BUF_SIZE; i++) {
+			PageId other = Minibase.BufferManager.newPage(pg, 1);
+			Minibase.BufferManager.unpinPage(other, UNPIN_CLEAN);
+		}
+		assertTrue("Failed: page written before its log record was durable", log.getFlushedLsn() > lsn);
+
+		Minibase.BufferManager.pinPage(pid, pg, PIN_DISKIO);
+		assertEquals("Failed: stolen page not written", 42, pg.getpage()[0]);
+		Minibase.BufferManager.unpinPage(pid, UNPIN_CLEAN);
+		Minibase.BufferManager.setLogManager(null);
+		log.close();
+	}
+
+	@Test
+	public void testTornTailDropped() throws Throwable {
+		LogMgr log = new LogMgr(logpath);
+		log.logUpdate(1, 5, 0, new byte[] { 0 }, new byte[] { 1 });
+		log.commit(1);
+		long end = log.getEndLsn();
+		log.close();
+
+		// half a record, as a crash in the middle of a write leaves it
+		try (FileOutputStream out = new FileOutputStream(logpath, true)) {
+			out.write(new byte[] { 0, 0, 0, 40, LogRecord.UPDATE, 0, 0 });
+		}
+		log = new LogMgr(logpath);
+		assertEquals("Failed: torn record not dropped", end, log.getEndLsn());
+		long lsn = log.commit(2);
+		assertEquals(end, lsn);
+		log.close();
+
+		int n = 0;
+		try (LogReader reader = new LogReader(logpath, LogMgr.FIRST_LSN)) {
+			while (reader.next() != null) {
+				n++;
+			}
+		}
+		assertEquals(3, n);
+	}
+
+	@Test
+	public void testTornLengthNotAllocated() throws Throwable {
+		LogMgr log = new LogMgr(logpath);
+		log.commit(1);
+		long end = log.getEndLsn();
+		log.close();
+
+		// a length torn into something huge is the end of the log, not a record to read in
+		try (FileOutputStream out = new FileOutputStream(logpath, true)) {
+			out.write(new byte[] { 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, LogRecord.UPDATE, 0, 0 });
+		}
+		try (LogReader reader = new LogReader(logpath, LogMgr.FIRST_LSN)) {
+			assertTrue(reader.next() != null);
+			assertNull(reader.next());
+			assertEquals(end, reader.getNextLsn());
+		}
+		log = new LogMgr(logpath);
+		assertEquals("Failed: torn record not dropped", end, log.getEndLsn());
+		log.close();
+	}
+}